@@ -29,6 +29,7 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.NumberFormat;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -38,13 +39,24 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.cli.CommandLine;
@@ -56,10 +68,14 @@ import org.apache.commons.cli.Options;
 import rnabloom.bloom.BloomFilter;
 import rnabloom.bloom.CountingBloomFilter;
 import rnabloom.bloom.PairedKeysBloomFilter;
+import rnabloom.bloom.buffer.MappedLargeByteBuffer;
 import rnabloom.bloom.hash.NTHashIterator;
 import rnabloom.bloom.hash.PairedNTHashIterator;
 import rnabloom.graph.BloomFilterDeBruijnGraph;
 import rnabloom.graph.Kmer;
+import rnabloom.graph.PairedKmerSupport;
+import rnabloom.graph.ScreeningFeatures;
+import rnabloom.graph.UnitigIndex;
 import static rnabloom.io.Constants.FASTA_EXT;
 import rnabloom.io.FastaFilteredSequenceIterator;
 import rnabloom.io.FastaReader;
@@ -71,20 +87,32 @@ import rnabloom.io.FastqReader;
 import rnabloom.io.FastqRecord;
 import rnabloom.io.FastxPairSequenceIterator;
 import rnabloom.io.FastxSequenceIterator;
+import rnabloom.io.FragmentStrataSource;
 import rnabloom.io.FileFormatException;
 import rnabloom.io.NucleotideBitsReader;
 import rnabloom.io.NucleotideBitsWriter;
+import rnabloom.olc.ContainmentFilter;
+import rnabloom.olc.PoaConsensus;
+import static rnabloom.olc.OverlapLayoutConcensus.concensusWithPoa;
 import static rnabloom.olc.OverlapLayoutConcensus.hasMinimap2;
 import static rnabloom.olc.OverlapLayoutConcensus.hasRacon;
 import static rnabloom.olc.OverlapLayoutConcensus.overlapLayout;
 import static rnabloom.olc.OverlapLayoutConcensus.overlapLayoutConcensus;
-import rnabloom.util.BitSequence;
+import rnabloom.util.AtomicUnionFind;
+import rnabloom.util.ClusterMembershipLog;
+import rnabloom.util.ConnectionCache;
 import rnabloom.util.GraphUtils;
+import rnabloom.util.LongHashSet;
+import rnabloom.util.MeteredBlockingQueue;
+import rnabloom.util.MinimizerSketcher;
 import static rnabloom.util.GraphUtils.*;
 import rnabloom.util.NTCardHistogram;
+import rnabloom.util.PackedReadStore;
 import static rnabloom.util.SeqUtils.*;
 import static rnabloom.io.Constants.NBITS_EXT;
 import rnabloom.io.SequenceFileIteratorInterface;
+import rnabloom.io.SortedLongReadsReader;
+import rnabloom.io.SortedLongReadsWriter;
 
 /**
  *
@@ -112,6 +140,7 @@ public class RNABloom {
     private Pattern polyASignalPattern;
     private BloomFilterDeBruijnGraph graph = null;
     private BloomFilter screeningBf = null;
+    private ConnectionCache connectionCache = null;
 
     private int maxTipLength;
     private int lookahead;
@@ -121,6 +150,7 @@ public class RNABloom {
     private float percentIdentity;
     private int minNumKmerPairs;
     private int longFragmentLengthThreshold = -1;
+    private boolean removeContainedTranscripts = true;
     
     private int qDBG = -1;
     private int qFrag = -1;
@@ -229,6 +259,10 @@ public class RNABloom {
         }
     }
     
+    public void setRemoveContainedTranscripts(boolean removeContainedTranscripts) {
+        this.removeContainedTranscripts = removeContainedTranscripts;
+    }
+    
     private static void exitOnError(String msg) {
         System.out.println("ERROR: " + msg);
         System.exit(1);
@@ -582,7 +616,290 @@ public class RNABloom {
             return numReads;
         }
     }
+    
+    private class ReadSegmentsWorker implements Runnable {
+        private final int id;
+        private final String path;
+        private final boolean reverseComplement;
+        private final Consumer<String> segmentConsumer;
+        
+        public ReadSegmentsWorker(int id, String path, boolean reverseComplement, Consumer<String> segmentConsumer) {
+            this.id = id;
+            this.path = path;
+            this.reverseComplement = reverseComplement;
+            this.segmentConsumer = segmentConsumer;
+        }
+        
+        private void accept(String seq) {
+            segmentConsumer.accept(reverseComplement ? reverseComplement(seq) : seq);
+        }
+        
+        @Override
+        public void run() {
+            System.out.println("[" + id + "] Parsing `" + path + "`...");
+            
+            try {
+                Matcher mSeq = seqPattern.matcher("");
+                
+                if (FastqReader.isCorrectFormat(path)) {
+                    FastqReader fr = new FastqReader(path);
+                    FastqRecord record = new FastqRecord();
+                    
+                    while (fr.hasNext()) {
+                        fr.nextWithoutName(record);
+                        mSeq.reset(record.seq);
+                        while (mSeq.find()) {
+                            accept(mSeq.group());
+                        }
+                    }
+                    
+                    fr.close();
+                }
+                else if (FastaReader.isCorrectFormat(path)) {
+                    FastaReader fr = new FastaReader(path);
+                    
+                    while (fr.hasNext()) {
+                        mSeq.reset(fr.next());
+                        while (mSeq.find()) {
+                            accept(mSeq.group());
+                        }
+                    }
+                    
+                    fr.close();
+                }
+                else {
+                    throw new RuntimeException("Unsupported file format detected in input file `" + path + "`. Only FASTA and FASTQ formats are supported.");
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+    
+    private void parseReadSegments(Collection<String> forwardReadPaths,
+                                Collection<String> reverseReadPaths,
+                                Collection<String> longReadPaths,
+                                boolean reverseComplementLong,
+                                int numThreads,
+                                Consumer<String> segmentConsumer) throws InterruptedException {
+        ExecutorService service = Executors.newFixedThreadPool(numThreads);
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        int threadId = 0;
+        
+        for (String path : forwardReadPaths) {
+            futures.add(service.submit(new ReadSegmentsWorker(++threadId, path, false, segmentConsumer)));
+        }
+        
+        for (String path : reverseReadPaths) {
+            futures.add(service.submit(new ReadSegmentsWorker(++threadId, path, true, segmentConsumer)));
+        }
+        
+        for (String path : longReadPaths) {
+            futures.add(service.submit(new ReadSegmentsWorker(++threadId, path, reverseComplementLong, segmentConsumer)));
+        }
+        
+        service.shutdown();
+        service.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            }
+            catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+    
+    private long getExpectedNumDistinctKmers() {
+        // pop count of the counting Bloom filter is an upper bound of the number of distinct k-mers times the number of hash functions
+        return Math.max(graph.getCbf().getPopCount() / graph.getCbfNumHash(), 1);
+    }
+    
+    public void buildUnitigIndex(Collection<String> forwardReadPaths,
+                                Collection<String> reverseReadPaths,
+                                Collection<String> longReadPaths,
+                                boolean reverseComplementLong,
+                                int numThreads) throws InterruptedException {
         
+        BloomFilter visitedBf = new BloomFilter(BloomFilter.getExpectedSize(getExpectedNumDistinctKmers(), 0.01f, 3), 3, graph.getHashFunction());
+        Set<Long> claimedUnitigs = ConcurrentHashMap.newKeySet();
+        ConcurrentLinkedQueue<String> unitigs = new ConcurrentLinkedQueue<>();
+        boolean stranded = graph.isStranded();
+        
+        parseReadSegments(forwardReadPaths, reverseReadPaths, longReadPaths, reverseComplementLong, numThreads, seq -> {
+            for (Kmer seed : graph.getKmers(seq)) {
+                if (seed.count <= 0 || visitedBf.lookup(seed.getHash())) {
+                    continue;
+                }
+
+                ArrayList<Kmer> unitig = getUnitig(seed, graph);
+
+                for (Kmer kmer : unitig) {
+                    visitedBf.lookupThenAdd(kmer.getHash());
+                }
+
+                if (unitig.size() < 2) {
+                    // no edges to skip
+                    continue;
+                }
+
+                long firstHash = unitig.get(0).getHash();
+                long lastHash = unitig.get(unitig.size()-1).getHash();
+
+                // a unitig and its reverse complement share the same canonical end k-mers
+                long claim = stranded ? firstHash : Math.min(firstHash, lastHash) * 31 + Math.max(firstHash, lastHash);
+
+                if (claimedUnitigs.add(claim)) {
+                    String unitigSeq = graph.assemble(unitig);
+                    unitigs.add(unitigSeq);
+
+                    if (!stranded) {
+                        unitigs.add(reverseComplement(unitigSeq));
+                    }
+                }
+            }
+        });
+        
+        visitedBf.destroy();
+        
+        long numKmers = 0;
+        for (String seq : unitigs) {
+            numKmers += seq.length() - k + 1;
+        }
+        
+        if (numKmers > UnitigIndex.MAX_NUM_KMERS) {
+            System.out.println("WARNING: Too many k-mers in unitigs (" + NumberFormat.getInstance().format(numKmers) + ") to index! Unitig index is disabled.");
+            return;
+        }
+        
+        graph.setUnitigIndex(new UnitigIndex(graph, unitigs));
+        
+        System.out.println("Indexed " + NumberFormat.getInstance().format(unitigs.size()) + " unitigs.");
+    }
+    
+    public void buildCriticalFalsePositives(Collection<String> forwardReadPaths,
+                                Collection<String> reverseReadPaths,
+                                Collection<String> longReadPaths,
+                                Collection<String> refTranscriptsPaths,
+                                boolean reverseComplementLong,
+                                int numThreads) throws InterruptedException {
+        
+        MyTimer timer = new MyTimer();
+        timer.start();
+        
+        // reference transcripts are in the graph too
+        ArrayList<String> forwardPaths = new ArrayList<>(forwardReadPaths);
+        forwardPaths.addAll(refTranscriptsPaths);
+        
+        int numHash = graph.getMaxNumHash();
+        long expNumKmers = getExpectedNumDistinctKmers();
+        
+        /** collect all distinct k-mers in reads and reference transcripts */
+        LongHashSet trueKmers = new LongHashSet(expNumKmers * 2);
+        
+        try {
+            parseReadSegments(forwardPaths, reverseReadPaths, longReadPaths, reverseComplementLong, numThreads, seq -> {
+                for (Kmer kmer : graph.getKmers(seq)) {
+                    trueKmers.add(kmer.getHash());
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            System.out.println("WARNING: Critical false positives not computed: " + e.getMessage());
+            return;
+        }
+        
+        /** neighbors of true k-mers that are present in the graph but absent in reads and references are critical false positives */
+        LongHashSet cfp = new LongHashSet(Math.max(1024, (long) (8 * trueKmers.size() * graph.getDbgbfFPR()) * 2));
+        BloomFilter visitedBf = new BloomFilter(BloomFilter.getExpectedSize(expNumKmers, 0.01f, 3), 3, graph.getHashFunction());
+        AtomicLong numNeighbors = new AtomicLong(0);
+        
+        try {
+            parseReadSegments(forwardPaths, reverseReadPaths, longReadPaths, reverseComplementLong, numThreads, seq -> {
+                ArrayDeque<Kmer> neighbors = new ArrayDeque<>(8);
+                for (Kmer kmer : graph.getKmers(seq)) {
+                    if (!visitedBf.lookupThenAdd(kmer.getHash())) {
+                        kmer.getPredecessors(k, numHash, graph, neighbors, 1);
+                        kmer.getSuccessors(k, numHash, graph, neighbors, 1);
+                        numNeighbors.addAndGet(neighbors.size());
+                        
+                        for (Kmer n : neighbors) {
+                            if (!trueKmers.contains(n.getHash())) {
+                                cfp.add(n.getHash());
+                            }
+                        }
+                        
+                        neighbors.clear();
+                    }
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            System.out.println("WARNING: Critical false positives not computed: " + e.getMessage());
+            return;
+        }
+        finally {
+            visitedBf.destroy();
+        }
+        
+        graph.setCriticalFalsePositives(cfp);
+        
+        System.out.println("DBG Bloom filter FPR:                 " + graph.getDbgbfFPR() * 100 + " %");
+        System.out.println("Distinct k-mers in reads:             " + NumberFormat.getInstance().format(trueKmers.size()));
+        System.out.println("Critical false positives:             " + NumberFormat.getInstance().format(cfp.size()) + 
+                " (" + cfp.size() * 100f / Math.max(1, numNeighbors.get()) + "% of neighbors of read k-mers)");
+        System.out.println("Critical false positives found in " + MyTimer.hmsFormat(timer.elapsedMillis()));
+    }
+    
+    public void buildBranchingKmersBloomFilter(Collection<String> forwardReadPaths,
+                                Collection<String> reverseReadPaths,
+                                Collection<String> longReadPaths,
+                                Collection<String> refTranscriptsPaths,
+                                boolean reverseComplementLong,
+                                int numThreads) throws InterruptedException {
+        
+        // reference transcripts are in the graph too
+        ArrayList<String> forwardPaths = new ArrayList<>(forwardReadPaths);
+        forwardPaths.addAll(refTranscriptsPaths);
+        
+        long expNumKmers = getExpectedNumDistinctKmers();
+        graph.initializeBranchingKmersBloomFilter(BloomFilter.getExpectedSize(expNumKmers/4, 0.01f, 3), 3);
+        
+        // k-mers are checked once; a missed branching k-mer would be reported as non-branching,
+        // so the visited k-mers are kept in an exact set rather than a Bloom filter
+        LongHashSet visited = new LongHashSet(expNumKmers);
+        AtomicBoolean visitedFull = new AtomicBoolean(false);
+        
+        parseReadSegments(forwardPaths, reverseReadPaths, longReadPaths, reverseComplementLong, numThreads, seq -> {
+            for (Kmer kmer : graph.getKmers(seq)) {
+                if (kmer.count > 0) {
+                    boolean isNew = true;
+                    if (!visitedFull.get()) {
+                        try {
+                            isNew = visited.add(kmer.getHash());
+                        }
+                        catch (RuntimeException e) {
+                            // too many distinct k-mers; check the remaining k-mers every time they are seen
+                            visitedFull.set(true);
+                        }
+                    }
+                    
+                    if (isNew && (kmer.getNumPredecessors(k, graph.getMaxNumHash(), graph) > 1 ||
+                            kmer.getNumSuccessors(k, graph.getMaxNumHash(), graph) > 1)) {
+                        graph.addBranchingKmer(kmer.getHash());
+                    }
+                }
+            }
+        });
+        
+        if (visitedFull.get()) {
+            System.out.println("WARNING: Expected number of distinct k-mers was underestimated; some k-mers were checked for branching more than once.");
+        }
+        
+        System.out.println("Branching k-mers Bloom filter FPR: " + graph.getBbf().getFPR() * 100 + " %");
+    }
+    
     public int getMaxReadLength(String path) throws FileFormatException, IOException{
         int max = -1;
 
@@ -893,12 +1210,16 @@ public class RNABloom {
     public class FragmentsToGraphWorker implements Runnable {
         private final int id;
         private final String path;
+        private final long start;
+        private final long end;
         private final boolean loadPairedKmers;
         private long numSeqs = 0;
         
-        public FragmentsToGraphWorker(int id, String path, boolean loadPairedKmers) {
+        public FragmentsToGraphWorker(int id, String path, long start, long end, boolean loadPairedKmers) {
             this.id= id;
             this.path = path;
+            this.start = start;
+            this.end = end;
             this.loadPairedKmers = loadPairedKmers;
         }
         
@@ -916,7 +1237,7 @@ public class RNABloom {
                 PairedNTHashIterator fragItr = graph.getPairedHashIterator(graph.getFragPairedKmerDistance());
                 long[] fragHashValsP = fragItr.hVals3;
 
-                NucleotideBitsReader fin = new NucleotideBitsReader(path);
+                NucleotideBitsReader fin = new NucleotideBitsReader(path, start, end);
 
                 if (loadPairedKmers) {
                     String seq = null;
@@ -973,8 +1294,25 @@ public class RNABloom {
         
         int threadId = 0;
         
+        long totalBytes = 0;
         for (String path : fastas) {
-            service.submit(new FragmentsToGraphWorker(++threadId, path, loadPairedKmers));
+            totalBytes += new File(path).length();
+        }
+        
+        for (String path : fastas) {
+            // split large files so that no single file holds back the other threads
+            int numSplits = (int) Math.min(numThreads, Math.ceil((double) new File(path).length() * numThreads / Math.max(1, totalBytes)));
+            long[] splits = new long[]{0, Long.MAX_VALUE};
+            try {
+                splits = NucleotideBitsReader.getSplits(path, numSplits);
+            }
+            catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            
+            for (int i=0; i<splits.length-1; ++i) {
+                service.submit(new FragmentsToGraphWorker(++threadId, path, splits[i], splits[i+1], loadPairedKmers));
+            }
         }
                 
         service.shutdown();
@@ -1048,7 +1386,11 @@ public class RNABloom {
         private final int maxTipLength;
         private final boolean writeUracil;
         private String prefix = "";
-        private long cid = 0;
+        private volatile long cid = 0;
+        
+        // hash values of the k-mers of the most recently committed transcripts, indexed by `cid`
+        private final static int COMMIT_LOG_SIZE = 256;
+        private final long[][] commitLog = new long[COMMIT_LOG_SIZE][];
         
         public TranscriptWriter(FastaWriter fout,
                                 FastaWriter foutShort,
@@ -1066,7 +1408,21 @@ public class RNABloom {
             this.prefix = prefix;
         }
                 
-        public synchronized void write(String fragment, ArrayList<Kmer> transcriptKmers) throws IOException {            
+        public TranscriptBuffer newBuffer() {
+            return new TranscriptBuffer();
+        }
+        
+        /**
+         * Screen and write a transcript. Screening runs without any lock against
+         * the current screening Bloom filter; only the final commit is serialized.
+         */
+        public void write(String fragment, ArrayList<Kmer> transcriptKmers, TranscriptBuffer buffer) throws IOException {
+            write(prefix, fragment, transcriptKmers, buffer);
+        }
+        
+        public void write(String prefix, String fragment, ArrayList<Kmer> transcriptKmers, TranscriptBuffer buffer) throws IOException {
+            long snapshot = cid;
+            
             if (!represented(transcriptKmers,
                                 graph,
                                 screeningBf,
@@ -1106,15 +1462,16 @@ public class RNABloom {
                     }
                 }
                                 
-                for (Kmer kmer : transcriptKmers) {
-                    screeningBf.add(kmer.getHash());
+                String name = commit(prefix, transcriptKmers, snapshot);
+                if (name == null) {
+                    // a transcript committed in the meantime already represents this one
+                    return;
                 }
                 
                 int len = transcript.length();
                 
                 StringBuilder headerBuilder = new StringBuilder();
-                headerBuilder.append(prefix);
-                headerBuilder.append(++cid);
+                headerBuilder.append(name);
                 headerBuilder.append(" l=");
                 headerBuilder.append(len);
                 if (!fragment.isEmpty()) {
@@ -1200,13 +1557,119 @@ public class RNABloom {
                     transcript = transcript.replace('T', 'U');
                 }
                 
-                if (len >= minTranscriptLength) {
-                    fout.write(headerBuilder.toString(), transcript);
+                buffer.add(len >= minTranscriptLength, headerBuilder.toString(), transcript);
+            }
+        }
+        
+        /**
+         * Add the transcript k-mers to the screening Bloom filter, unless a
+         * transcript committed after `snapshot` shares k-mers with it and now
+         * represents it.
+         * 
+         * @return the transcript name, or null if the transcript is now represented
+         */
+        private synchronized String commit(String prefix, ArrayList<Kmer> transcriptKmers, long snapshot) {
+            int numKmers = transcriptKmers.size();
+            long[] hashVals = new long[numKmers];
+            for (int i=0; i<numKmers; ++i) {
+                hashVals[i] = transcriptKmers.get(i).getHash();
+            }
+            
+            if (cid != snapshot &&
+                    sharesKmersWithCommitsSince(hashVals, snapshot) &&
+                    represented(transcriptKmers,
+                                graph,
+                                screeningBf,
+                                lookahead,
+                                maxIndelSize,
+                                maxTipLength,
+                                percentIdentity)) {
+                return null;
+            }
+            
+            for (long h : hashVals) {
+                screeningBf.add(h);
+            }
+            
+            long id = cid + 1;
+            commitLog[(int) (id % COMMIT_LOG_SIZE)] = hashVals;
+            cid = id;
+            
+            return prefix + id;
+        }
+        
+        public long getCommitId() {
+            return cid;
+        }
+        
+        /**
+         * @return whether any transcript committed after `snapshot` may share k-mers with `kmers`
+         */
+        public synchronized boolean hasSharedCommitsSince(ArrayList<Kmer> kmers, long snapshot) {
+            if (cid == snapshot) {
+                return false;
+            }
+            
+            int numKmers = kmers.size();
+            long[] hashVals = new long[numKmers];
+            for (int i=0; i<numKmers; ++i) {
+                hashVals[i] = kmers.get(i).getHash();
+            }
+            
+            return sharesKmersWithCommitsSince(hashVals, snapshot);
+        }
+        
+        private boolean sharesKmersWithCommitsSince(long[] hashVals, long snapshot) {
+            if (cid - snapshot > COMMIT_LOG_SIZE) {
+                // too many commits to check individually
+                return true;
+            }
+            
+            long[] sorted = Arrays.copyOf(hashVals, hashVals.length);
+            Arrays.sort(sorted);
+            
+            for (long id=snapshot+1; id<=cid; ++id) {
+                for (long h : commitLog[(int) (id % COMMIT_LOG_SIZE)]) {
+                    if (Arrays.binarySearch(sorted, h) >= 0) {
+                        return true;
+                    }
                 }
-                else {
-                    foutShort.write(headerBuilder.toString(), transcript);
+            }
+            
+            return false;
+        }
+        
+        /**
+         * Transcripts written by one worker, flushed to the output files in blocks.
+         */
+        private class TranscriptBuffer {
+            private final static int MAX_BUFFERED = 64;
+            
+            private final ArrayList<String[]> longTranscripts = new ArrayList<>();
+            private final ArrayList<String[]> shortTranscripts = new ArrayList<>();
+            
+            public void add(boolean isLong, String header, String seq) throws IOException {
+                ArrayList<String[]> list = isLong ? longTranscripts : shortTranscripts;
+                list.add(new String[]{header, seq});
+                
+                if (list.size() >= MAX_BUFFERED) {
+                    flush(list, isLong ? fout : foutShort);
                 }
             }
+            
+            public void flush() throws IOException {
+                flush(longTranscripts, fout);
+                flush(shortTranscripts, foutShort);
+            }
+            
+            private void flush(ArrayList<String[]> list, FastaWriter writer) throws IOException {
+                synchronized (writer) {
+                    for (String[] entry : list) {
+                        writer.write(entry[0], entry[1]);
+                    }
+                }
+                list.clear();
+            }
         }
     }
     
@@ -1219,7 +1682,9 @@ public class RNABloom {
     
     private class TranscriptAssemblyWorker implements Runnable {
         private TranscriptWriter writer;
+        private final TranscriptWriter.TranscriptBuffer buffer;
         private final SequenceFileIteratorInterface fin;
+        private final FragmentStrataSource strata;
         private boolean extendBranchFreeFragmentsOnly = false;
         private boolean keepArtifact = false;
         private boolean keepChimera = false;
@@ -1236,115 +1701,218 @@ public class RNABloom {
                                         boolean haveFragKmers,
                                         float minKmerCov) {
             this.fin = fin;
+            this.strata = null;
             this.extendBranchFreeFragmentsOnly = extendBranchFreeFragmentsOnly;
             this.keepArtifact = keepArtifact;
             this.keepChimera = keepChimera;
             this.haveFragKmers = haveFragKmers;
             this.minKmerCov = minKmerCov;
             this.writer = writer;
+            this.buffer = writer.newBuffer();
+        }
+        
+        public TranscriptAssemblyWorker(FragmentStrataSource strata,
+                                        TranscriptWriter writer,
+                                        boolean keepArtifact,
+                                        boolean keepChimera,
+                                        boolean haveFragKmers,
+                                        float minKmerCov) {
+            this.fin = null;
+            this.strata = strata;
+            this.keepArtifact = keepArtifact;
+            this.keepChimera = keepChimera;
+            this.haveFragKmers = haveFragKmers;
+            this.minKmerCov = minKmerCov;
+            this.writer = writer;
+            this.buffer = writer.newBuffer();
         }
         
         @Override
         public void run() {
             try {
-                int fragKmersDist = graph.getFragPairedKmerDistance();
-                int maxEdgeClipLength = minPolyATailLengthRequired > 0 ? 0 : maxTipLength;
-                boolean keepBluntEndArtifact = keepArtifact;
-                
-                String fragment;
-                while ((fragment = fin.next()) != null) {
-                    ++numParsed;
-//                    String seq = "";
-//                    ArrayList<Kmer> kmers2 = graph.getKmers(seq);
-//                    printPairedKmersPositions(kmers2, graph);
-                    
-                    ArrayList<Kmer> kmers = graph.getKmers(fragment);
-
-                    if (!kmers.isEmpty()) {
-                        if ( (!extendBranchFreeFragmentsOnly || isBranchFree(kmers, graph, maxTipLength)) &&
-                             !represented(kmers,
-                                            graph,
-                                            screeningBf,
-                                            lookahead,
-                                            maxIndelSize,
-                                            maxEdgeClipLength,
-                                            percentIdentity) &&
-                             (keepChimera || !isChimera(kmers, graph, screeningBf, lookahead)) &&
-                             (keepBluntEndArtifact || !isBluntEndArtifact(kmers, graph, screeningBf, maxEdgeClipLength)) ) {
-
-                            int[] originalFragRange;
-
-                            if (haveFragKmers) {
-                                originalFragRange = extendPE(kmers, graph, maxTipLength, minKmerCov);
-                            }
-                            else {
-                                originalFragRange = extendSE(kmers, graph, maxTipLength, minKmerCov);
+                if (fin != null) {
+                    String fragment;
+                    while ((fragment = fin.next()) != null) {
+                        ++numParsed;
+                        assemble(fragment, extendBranchFreeFragmentsOnly, null);
+                    }
+                }
+                else {
+                    Exception error = null;
+                    FragmentStrataSource.Batch batch;
+                    while ((batch = strata.take()) != null) {
+                        try {
+                            if (error == null) {
+                                for (String fragment : batch.fragments) {
+                                    ++numParsed;
+                                    assemble(fragment, batch.stratum.extendBranchFreeOnly, batch);
+                                }
                             }
+                        }
+                        catch (Exception ex) {
+                            // keep draining so that the other workers are not blocked
+                            error = ex;
+                        }
+                        finally {
+                            strata.done(batch);
+                        }
+                    }
+                    
+                    if (error != null) {
+                        throw error;
+                    }
+                }
+                
+                buffer.flush();
+            }
+            catch (Exception ex) {
+                ex.printStackTrace();
+                throw new RuntimeException(ex);
+            }
+        }
+        
+        private boolean isArtifact(ScreeningFeatures features, int maxEdgeClipLength, boolean keepBluntEndArtifact) {
+            return (!keepChimera && isChimera(features, graph, lookahead)) ||
+                    (!keepBluntEndArtifact && isBluntEndArtifact(features, graph, maxEdgeClipLength));
+        }
+        
+        /**
+         * Screen the fragment against the current screening Bloom filter.
+         */
+        private boolean isScreenedOut(ArrayList<Kmer> kmers, int maxEdgeClipLength, boolean keepBluntEndArtifact) {
+            ScreeningFeatures features = new ScreeningFeatures(kmers, graph, screeningBf);
+            return represented(features,
+                                graph,
+                                lookahead,
+                                maxIndelSize,
+                                maxEdgeClipLength,
+                                percentIdentity) ||
+                    isArtifact(features, maxEdgeClipLength, keepBluntEndArtifact);
+        }
+        
+        private void assemble(String fragment, boolean extendBranchFreeFragmentsOnly, FragmentStrataSource.Batch batch) throws IOException, InterruptedException {
+            int fragKmersDist = graph.getFragPairedKmerDistance();
+            int maxEdgeClipLength = minPolyATailLengthRequired > 0 ? 0 : maxTipLength;
+            boolean keepBluntEndArtifact = keepArtifact;
+            
+//            String seq = "";
+//            ArrayList<Kmer> kmers2 = graph.getKmers(seq);
+//            printPairedKmersPositions(kmers2, graph);
+
+            ArrayList<Kmer> kmers = graph.getKmers(fragment);
+
+            if (!kmers.isEmpty()) {
+                // A fragment may be assembled while transcripts from higher priority strata are still being
+                // committed; its transcript is screened again once they are done (see below). Being represented
+                // only becomes more likely as transcripts are added, so that screen is final in either case.
+                boolean settled = batch == null || strata.isPreviousStrataDone(batch.stratumIndex);
+                long snapshot = writer.getCommitId();
+                
+                // `kmers` is extended in place, so keep the fragment for screening it again
+                ArrayList<Kmer> fragmentKmers = settled ? kmers : new ArrayList<>(kmers);
+                
+                // screening hits and branching status are looked up once and shared by all checks
+                ScreeningFeatures features = new ScreeningFeatures(fragmentKmers, graph, screeningBf);
+                
+                if ( (!extendBranchFreeFragmentsOnly || isBranchFree(features, graph, maxTipLength)) &&
+                     !represented(features,
+                                    graph,
+                                    lookahead,
+                                    maxIndelSize,
+                                    maxEdgeClipLength,
+                                    percentIdentity) &&
+                     (!settled || !isArtifact(features, maxEdgeClipLength, keepBluntEndArtifact)) ) {
+
+                    int[] originalFragRange;
+
+                    if (haveFragKmers) {
+                        originalFragRange = extendPE(kmers, graph, maxTipLength, minKmerCov);
+                    }
+                    else {
+                        originalFragRange = extendSE(kmers, graph, maxTipLength, minKmerCov);
+                    }
 
-                            int[] currentRange = new int[]{0, kmers.size()};
-
-                            if (haveFragKmers) {
-                                if (kmers.size() >= fragKmersDist) {
-                                    ArrayDeque<int[]> ranges = breakWithFragPairedKmers(kmers, graph, minNumKmerPairs);
-                                    int numFragSegs = ranges.size();
+                    int[] currentRange = new int[]{0, kmers.size()};
 
-                                    if (numFragSegs == 1) {
-                                        currentRange = ranges.peekFirst();
-                                    }
-                                    else if (numFragSegs > 1) {
-                                        int bestOverlap = 0;
-                                        int[] bestRange = null;
-                                        for (int[] range : ranges) {
-                                            int overlap = intervalOverlapSize(range, originalFragRange);
-                                            if (overlap > bestOverlap) {
-                                                bestOverlap = overlap;
-                                                bestRange = range;
-                                            }
-                                        }
+                    if (haveFragKmers) {
+                        if (kmers.size() >= fragKmersDist) {
+                            ArrayDeque<int[]> ranges = breakWithFragPairedKmers(kmers, graph, minNumKmerPairs);
+                            int numFragSegs = ranges.size();
 
-                                        currentRange = bestRange;
-                                    }
-                                    else {
-                                        currentRange = null;
+                            if (numFragSegs == 1) {
+                                currentRange = ranges.peekFirst();
+                            }
+                            else if (numFragSegs > 1) {
+                                int bestOverlap = 0;
+                                int[] bestRange = null;
+                                for (int[] range : ranges) {
+                                    int overlap = intervalOverlapSize(range, originalFragRange);
+                                    if (overlap > bestOverlap) {
+                                        bestOverlap = overlap;
+                                        bestRange = range;
                                     }
                                 }
-                                else {
-                                    currentRange = null;
-                                }
+
+                                currentRange = bestRange;
                             }
+                            else {
+                                currentRange = null;
+                            }
+                        }
+                        else {
+                            currentRange = null;
+                        }
+                    }
 
-                            if (currentRange != null) {
-                                ArrayDeque<int[]> ranges = breakWithReadPairedKmers(kmers, graph, minNumKmerPairs, currentRange[0], currentRange[1]);
-                                int numFragSegs = ranges.size();
+                    if (currentRange != null) {
+                        ArrayDeque<int[]> ranges = breakWithReadPairedKmers(kmers, graph, minNumKmerPairs, currentRange[0], currentRange[1]);
+                        int numFragSegs = ranges.size();
 
-                                if (numFragSegs > 0) {
-                                    if (numFragSegs == 1) {
-                                        currentRange = ranges.peekFirst();
+                        if (numFragSegs > 0) {
+                            if (numFragSegs == 1) {
+                                currentRange = ranges.peekFirst();
+                            }
+                            else if (numFragSegs > 1) {
+                                int bestOverlap = 0;
+                                int[] bestRange = null;
+                                for (int[] range : ranges) {
+                                    int overlap = intervalOverlapSize(range, originalFragRange);
+                                    if (overlap > bestOverlap) {
+                                        bestOverlap = overlap;
+                                        bestRange = range;
                                     }
-                                    else if (numFragSegs > 1) {
-                                        int bestOverlap = 0;
-                                        int[] bestRange = null;
-                                        for (int[] range : ranges) {
-                                            int overlap = intervalOverlapSize(range, originalFragRange);
-                                            if (overlap > bestOverlap) {
-                                                bestOverlap = overlap;
-                                                bestRange = range;
-                                            }
-                                        }
+                                }
 
-                                        currentRange = bestRange;
-                                    }
+                                currentRange = bestRange;
+                            }
 
-                                    if (currentRange != null) {
-                                        ArrayList<Kmer> txptKmers = new ArrayList<>(kmers.subList(currentRange[0], currentRange[1]));
+                            if (currentRange != null) {
+                                ArrayList<Kmer> txptKmers = new ArrayList<>(kmers.subList(currentRange[0], currentRange[1]));
 
-                                        String fragInfo = debug ? fragment : "";
+                                String fragInfo = debug ? fragment : "";
 
-                                        if (!keepArtifact) {
-                                            txptKmers = trimReverseComplementArtifact(txptKmers, maxTipLength, maxIndelSize, percentIdentity, graph);
-                                        }
+                                if (!keepArtifact) {
+                                    txptKmers = trimReverseComplementArtifact(txptKmers, maxTipLength, maxIndelSize, percentIdentity, graph);
+                                }
 
-                                        writer.write(fragInfo, txptKmers);
+                                if (batch == null) {
+                                    writer.write(fragInfo, txptKmers, buffer);
+                                }
+                                else {
+                                    if (!settled) {
+                                        // commit only after all transcripts from higher priority strata;
+                                        // the fragment is screened again only if they may have changed the outcome
+                                        strata.awaitPreviousStrata(batch.stratumIndex);
+                                        
+                                        if (writer.hasSharedCommitsSince(fragmentKmers, snapshot) ?
+                                                isScreenedOut(fragmentKmers, maxEdgeClipLength, keepBluntEndArtifact) :
+                                                isArtifact(features, maxEdgeClipLength, keepBluntEndArtifact)) {
+                                            return;
+                                        }
+                                    }
+                                    
+                                    writer.write(batch.stratum.outputPrefix, fragInfo, txptKmers, buffer);
+                                }
 //                                            if (!keepArtifact) {
 //                                                if (!isTemplateSwitch2(txptKmers, graph, screeningBf, lookahead, percentIdentity)) {
 //                                                    txptKmers = trimHairpinBySequenceMatching(txptKmers, k, percentIdentity, graph);
@@ -1354,17 +1922,11 @@ public class RNABloom {
 //                                            else {
 //                                            transcripts.put(new Transcript(fragInfo, txptKmers));
 //                                            }     
-                                    }
-                                }
                             }
                         }
                     }
                 }
             }
-            catch (Exception ex) {
-                ex.printStackTrace();
-                throw new RuntimeException(ex);
-            }
         }
     }
     
@@ -1571,6 +2133,8 @@ public class RNABloom {
         private boolean extendFragments;
         private int minKmerCov;
         private boolean trimArtifact;
+        private int pathSearchLimit;
+        private PathSearchBuffers pathSearchBuffers = null;
         private long numParsed = 0;
         private boolean done = false;
         
@@ -1584,7 +2148,8 @@ public class RNABloom {
                                 int rightReadLengthThreshold,
                                 boolean extendFragments,
                                 int minKmerCov,
-                                boolean keepArtifact) {
+                                boolean keepArtifact,
+                                int pathSearchLimit) {
             
             this.rin = rin;
             this.outList = outList;
@@ -1597,6 +2162,12 @@ public class RNABloom {
             this.extendFragments = extendFragments;
             this.minKmerCov = minKmerCov;
             this.trimArtifact = !keepArtifact;
+            this.pathSearchLimit = pathSearchLimit;
+            
+            if (pathSearchLimit > 0) {
+                // reused by every path search of this worker
+                this.pathSearchBuffers = new PathSearchBuffers(pathSearchLimit);
+            }
         }
         
         @Override
@@ -1668,7 +2239,7 @@ public class RNABloom {
                         }
 
                         fragmentKmers = overlapAndConnect(leftKmers, rightKmers, graph, bound,
-                                lookahead, minOverlap, maxCovGradient, maxTipLength, maxIndelSize, percentIdentity, minKmerCov);
+                                lookahead, minOverlap, maxCovGradient, maxTipLength, maxIndelSize, percentIdentity, minKmerCov, pathSearchLimit, connectionCache, pathSearchBuffers);
                     }
                     else if (!leftBad) {
                         if (errorCorrectionIterations > 0) {
@@ -1703,10 +2274,12 @@ public class RNABloom {
 
                     // check for read consistency if fragment is long enough
                     int preExtensionFragLen = -1;
+                    PairedKmerSupport readPairSupport = null;
 
                     if (fragmentKmers != null) {
                         if (graph.getReadPairedKmerDistance() < fragmentKmers.size()) {
-                            ArrayDeque<int[]> ranges = breakWithReadPairedKmers(fragmentKmers, graph, lookahead);
+                            readPairSupport = new PairedKmerSupport(fragmentKmers, graph, false);
+                            ArrayDeque<int[]> ranges = readPairSupport.getSegments(lookahead);
 
                             if (ranges.size() != 1) {
                                 fragmentKmers = null;
@@ -1737,7 +2310,14 @@ public class RNABloom {
 
                                 if (extendedFragmentKmers.size() != preExtensionFragLen) {
                                     // fragment was extended; check consistency with reads
-                                    ArrayDeque<int[]> ranges = breakWithReadPairedKmers(extendedFragmentKmers, graph, minNumKmerPairs);
+                                    ArrayDeque<int[]> ranges;
+                                    if (readPairSupport != null) {
+                                        // pairs within the original fragment were already looked up
+                                        ranges = readPairSupport.update(extendedFragmentKmers, fragmentKmers.get(0)).getSegments(minNumKmerPairs);
+                                    }
+                                    else {
+                                        ranges = breakWithReadPairedKmers(extendedFragmentKmers, graph, minNumKmerPairs);
+                                    }
 
                                     if (ranges.size() == 1) {
                                         // there is one consistent section in the extended fragment
@@ -1945,6 +2525,51 @@ public class RNABloom {
         graph.initializePairKmersBloomFilter(numBits, numHash);
     }
     
+    /**
+     * An assembler for one sample of a pool. It shares the graph and settings of this assembler,
+     * but it has its own screening and fragment paired k-mers Bloom filters.
+     * @param ownDbgbf  whether the sample needs its own DBG Bloom filter, ie. for rebuilding the graph from its fragments
+     */
+    public RNABloom newSampleAssembler(boolean ownDbgbf) {
+        RNABloom assembler = new RNABloom(k, qDBG, qFrag, debug);
+        assembler.setParams(strandSpecific, maxTipLength, lookahead, maxCovGradient, maxIndelSize,
+                percentIdentity, minNumKmerPairs, minPolyATailLengthRequired);
+        assembler.graph = graph.newSampleView(ownDbgbf);
+        // cached paths are only valid for the shared graph
+        assembler.connectionCache = ownDbgbf || connectionCache == null ? null : connectionCache.newSampleView();
+        assembler.removeContainedTranscripts = removeContainedTranscripts;
+        assembler.dbgFPR = dbgFPR;
+        assembler.covFPR = covFPR;
+        return assembler;
+    }
+    
+    public void destroySampleAssembler() {
+        if (screeningBf != null) {
+            screeningBf.destroy();
+            screeningBf = null;
+        }
+        
+        graph.destroySampleView();
+        graph = null;
+        connectionCache = null;
+    }
+    
+    public void setupConnectionCache(int maxNumEntries) {
+        if (maxNumEntries > 0) {
+            connectionCache = new ConnectionCache(maxNumEntries);
+        }
+        else {
+            connectionCache = null;
+        }
+    }
+    
+    public void clearConnectionCache() {
+        if (connectionCache != null) {
+            // cached paths are only valid for the current graph
+            connectionCache.clear();
+        }
+    }
+    
     public void updateFragmentKmerDistance(String graphFile) throws IOException {
         graph.updateFragmentKmerDistance(new File(graphFile));
     }
@@ -2363,211 +2988,171 @@ public class RNABloom {
         }
     }
     
-    private static void mergeClusterFastas(int target, int maxAltID, String clusteredLongReadsDirectory) throws IOException {
-        String path = clusteredLongReadsDirectory + File.separator + target + FASTA_EXT;
-        
-        FastaWriter writer = new FastaWriter(path, true);
-        for (int i=0; i<=maxAltID; ++i) {
-            path = clusteredLongReadsDirectory + File.separator + target + "_" + i + FASTA_EXT;
-            FastaReader reader = new FastaReader(path);
-            while (reader.hasNext()) {
-                String[] nameSeqPair = reader.nextWithName();
-                writer.write(nameSeqPair[0], nameSeqPair[1]);
-            }
-            reader.close();
-            
-            Files.deleteIfExists(FileSystems.getDefault().getPath(path));
-        }
-        writer.close();
-    }
-    
-    private static int aggregateClusterFastas(int target, HashSet<Integer> overlaps, ArrayList<Integer> altIDs, String clusteredLongReadsDirectory) throws IOException {
-        int altID = altIDs.get(target);
-        
-        for (int i : overlaps) {
-            Path source = Paths.get(clusteredLongReadsDirectory + File.separator + i + FASTA_EXT);
-            Path dest = Paths.get(clusteredLongReadsDirectory + File.separator + target + "_" + ++altID + FASTA_EXT);
-            Files.move(source, dest);
-            
-            int overlapAltID = altIDs.get(i);
-            for (int j=0; j<=overlapAltID; ++j) {
-                source = Paths.get(clusteredLongReadsDirectory + File.separator + i + "_" + j + FASTA_EXT);
-                dest = Paths.get(clusteredLongReadsDirectory + File.separator + target + "_" + ++altID + FASTA_EXT);
-                Files.move(source, dest);
-            }
-            
-        }
-        
-        return altID;
-    }
-    
-    public void clusterLongReads(String[][] correctedLongReadFileNames, String clusteredLongReadsDirectory,
+    public void clusterLongReads(String sortedLongReadsPath, String clusteredLongReadsDirectory,
             int minSketchSize, int numThreads, boolean useCompressedMinimizers,
             int minimizerSize, int minimizerWindowSize, float minSketchOverlapPercentage, int minSketchOverlapNumber) throws IOException, InterruptedException {
         
         minSketchSize = Math.max(minSketchSize, minSketchOverlapNumber);
         
         ArrayList<long[]> targetSketches = new ArrayList<>();
-        ArrayList<ArrayDeque<BitSequence>> targetSequences = new ArrayList<>();
+        ArrayList<Integer> targetClusterIDs = new ArrayList<>();
+        ClusterMembershipLog membership = new ClusterMembershipLog();
         ArrayDeque<Integer> targetSketchesNullIndexes = new ArrayDeque<>();
         NTHashIterator itr = graph.getHashIterator(1, minimizerSize);
+        MinimizerSketcher sketcher = new MinimizerSketcher();
         
         int maxClusterSize = 1; // each cluster has a minimum of 1 read
         int numDiscarded = 0;
         
-        //for (int l=LENGTH_STRATUM_NAMES.length-1; l>0; --l) {
-        for (int c=COVERAGE_ORDER.length-1; c>=0; --c) {
-
-            //for (int c=COVERAGE_ORDER.length-1; c>=0; --c) {
-            for (int l=LENGTH_STRATUM_NAMES.length-1; l>=0; --l) {
+        SortedLongReadsReader sr = new SortedLongReadsReader(sortedLongReadsPath);
+        System.out.println("Parsing file `" + sortedLongReadsPath + "`...");
+        
+        int[] strata = sr.getStrata();
+        long[] stratumCounts = sr.getStratumCounts();
+        for (int s=0; s<strata.length; ++s) {
+            System.out.println("Coverage stratum `" + COVERAGE_ORDER[strata[s]] + "`: " + NumberFormat.getInstance().format(stratumCounts[s]) + " reads");
+            
+            for (long r=0; r<stratumCounts[s]; ++r) {
+                String seq = sr.next();
                 
-                String readFile = correctedLongReadFileNames[c][l];
-                FastaReader fr = new FastaReader(readFile);
-                System.out.println("Parsing file `" + readFile + "`...");
+                int numMinimizers = getNumKmers(seq, minimizerSize);
+                long[] sortedHashVals = useCompressedMinimizers ? 
+                                        getAscendingHashValuesWithCompressedHomoPolymers(seq, itr, minimizerSize) : 
+                                        getAscendingHashValues(seq, itr, numMinimizers);
                 
-                while (fr.hasNext()) {
-                    String seq = fr.next();
+                int numHashVals = sortedHashVals.length;
+                
+                if (numHashVals < minSketchSize) {
+                    // not enough good kmers
+                    ++numDiscarded;
+                    continue;
+                }                   
+
+                int bestTargetSketchID = -1;
+                int numTargets = targetSketches.size();
+                
+                if (numTargets == 0) {
+                    long[] sketch = useCompressedMinimizers ?
+                                    getMinimizersWithCompressedHomoPolymers(seq, itr, minimizerWindowSize, sketcher) :
+                                    getMinimizers(seq, itr, minimizerWindowSize, sketcher);
+                    targetSketches.add(sketch);
                     
-                    int numMinimizers = getNumKmers(seq, minimizerSize);
-                    long[] sortedHashVals = useCompressedMinimizers ? 
-                                            getAscendingHashValuesWithCompressedHomoPolymers(seq, itr, minimizerSize) : 
-                                            getAscendingHashValues(seq, itr, numMinimizers);
+                    bestTargetSketchID = 0;
                     
-                    int numHashVals = sortedHashVals.length;
+                    int clusterID = membership.newCluster();
+                    membership.addRead(seq, clusterID);
+                    targetClusterIDs.add(clusterID);
+                }
+                else {
+                    int numNonOverlapMinimizers = (numMinimizers-minimizerWindowSize+1)/minimizerWindowSize;
+                    int minSketchOverlap = Math.max(minSketchOverlapNumber, (int) Math.ceil(minSketchOverlapPercentage * numNonOverlapMinimizers));
                     
-                    if (numHashVals < minSketchSize) {
-                        // not enough good kmers
-                        ++numDiscarded;
-                        continue;
-                    }                   
-
-                    int bestTargetSketchID = -1;
-                    int numTargets = targetSketches.size();
+                    /** start thread pool*/
+                    int numWorkers = Math.min(numThreads, numTargets);
+                    MyExecutorService service = new MyExecutorService(numWorkers, numWorkers);
                     
-                    if (numTargets == 0) {
-                        long[] sketch = useCompressedMinimizers ?
-                                        getMinimizersWithCompressedHomoPolymers(seq, minimizerSize, itr, minimizerWindowSize) :
-                                        getMinimizers(seq, numMinimizers, itr, minimizerWindowSize);
-                        targetSketches.add(sketch);
-                        
-                        bestTargetSketchID = 0;
-                        
-                        ArrayDeque<BitSequence> seqs = new ArrayDeque<>();
-                        seqs.add(new BitSequence(seq));
-                        targetSequences.add(seqs);
+                    ContainmentCalculator[] workers = new ContainmentCalculator[numWorkers];
+                    int step = numTargets/numWorkers;
+                    int startIndex = 0;
+                    int stopIndex = step;
+                    for (int i=0; i<numWorkers-1; ++i) {
+                        ContainmentCalculator worker = new ContainmentCalculator(sortedHashVals, targetSketches, startIndex, stopIndex, minSketchOverlap);
+                        workers[i] = worker;
+                        service.submit(worker);
+                        startIndex = stopIndex;
+                        stopIndex += step;
                     }
-                    else {
-                        int numNonOverlapMinimizers = (numMinimizers-minimizerWindowSize+1)/minimizerWindowSize;
-                        int minSketchOverlap = Math.max(minSketchOverlapNumber, (int) Math.ceil(minSketchOverlapPercentage * numNonOverlapMinimizers));
-                        
-                        /** start thread pool*/
-                        int numWorkers = Math.min(numThreads, numTargets);
-                        MyExecutorService service = new MyExecutorService(numWorkers, numWorkers);
-                        
-                        ContainmentCalculator[] workers = new ContainmentCalculator[numWorkers];
-                        int step = numTargets/numWorkers;
-                        int startIndex = 0;
-                        int stopIndex = step;
-                        for (int i=0; i<numWorkers-1; ++i) {
-                            ContainmentCalculator worker = new ContainmentCalculator(sortedHashVals, targetSketches, startIndex, stopIndex, minSketchOverlap);
-                            workers[i] = worker;
-                            service.submit(worker);
-                            startIndex = stopIndex;
-                            stopIndex += step;
-                        }
-                        
-                        ContainmentCalculator w = new ContainmentCalculator(sortedHashVals, targetSketches, startIndex, targetSketches.size(), minSketchOverlap);
-                        workers[numWorkers-1] = w;
-                        service.submit(w);
-                                                
-                        service.terminate();
-                        
-                        int bestIntersectionSize = -1;
-                        ArrayDeque<Integer> overlapSketchIDs = new ArrayDeque<>();
-                        for (ContainmentCalculator worker : workers) {
-                            int mc = worker.getMaxIntersection();
-                            if (mc > 0) {
-                                ArrayDeque<Integer> overlaps = worker.getOverlappingSketchIndexes();
-                                if (!overlaps.isEmpty()) {
-                                    overlapSketchIDs.addAll(overlaps);
-                                }
-                                
-                                if (mc > bestIntersectionSize) {
-                                    if (bestTargetSketchID >= 0) {
-                                        overlapSketchIDs.add(bestTargetSketchID);
-                                    }
-                                    bestIntersectionSize = mc;
-                                    bestTargetSketchID = worker.getBestTargetIndex();
+                    
+                    ContainmentCalculator w = new ContainmentCalculator(sortedHashVals, targetSketches, startIndex, targetSketches.size(), minSketchOverlap);
+                    workers[numWorkers-1] = w;
+                    service.submit(w);
+                                            
+                    service.terminate();
+                    
+                    int bestIntersectionSize = -1;
+                    ArrayDeque<Integer> overlapSketchIDs = new ArrayDeque<>();
+                    for (ContainmentCalculator worker : workers) {
+                        int mc = worker.getMaxIntersection();
+                        if (mc > 0) {
+                            ArrayDeque<Integer> overlaps = worker.getOverlappingSketchIndexes();
+                            if (!overlaps.isEmpty()) {
+                                overlapSketchIDs.addAll(overlaps);
+                            }
+                            
+                            if (mc > bestIntersectionSize) {
+                                if (bestTargetSketchID >= 0) {
+                                    overlapSketchIDs.add(bestTargetSketchID);
                                 }
+                                bestIntersectionSize = mc;
+                                bestTargetSketchID = worker.getBestTargetIndex();
                             }
                         }
-                        
-                        if (bestIntersectionSize < minSketchOverlap) {
-                            long[] sketch = useCompressedMinimizers ?
-                                    getMinimizersWithCompressedHomoPolymers(seq, minimizerSize, itr, minimizerWindowSize) :
-                                    getMinimizers(seq, numMinimizers, itr, minimizerWindowSize);
-                            // start a new cluster                            
-                            if (targetSketchesNullIndexes.isEmpty()) {
-                                targetSketches.add(sketch);
-                                
-                                ArrayDeque<BitSequence> seqs = new ArrayDeque<>();
-                                seqs.add(new BitSequence(seq));
-                                targetSequences.add(seqs);
-                            }
-                            else {
-                                bestTargetSketchID = targetSketchesNullIndexes.poll();
-                                targetSketches.set(bestTargetSketchID, sketch);
-                                
-                                ArrayDeque<BitSequence> seqs = new ArrayDeque<>();
-                                seqs.add(new BitSequence(seq));
-                                targetSequences.set(bestTargetSketchID, seqs);
-                            }
+                    }
+                    
+                    if (bestIntersectionSize < minSketchOverlap) {
+                        long[] sketch = useCompressedMinimizers ?
+                                getMinimizersWithCompressedHomoPolymers(seq, itr, minimizerWindowSize, sketcher) :
+                                getMinimizers(seq, itr, minimizerWindowSize, sketcher);
+                        // start a new cluster                            
+                        if (targetSketchesNullIndexes.isEmpty()) {
+                            targetSketches.add(sketch);
+                            
+                            int clusterID = membership.newCluster();
+                            membership.addRead(seq, clusterID);
+                            targetClusterIDs.add(clusterID);
                         }
                         else {
-                            ArrayDeque<BitSequence> seqs = targetSequences.get(bestTargetSketchID);
-                            seqs.add(new BitSequence(seq));
+                            bestTargetSketchID = targetSketchesNullIndexes.poll();
+                            targetSketches.set(bestTargetSketchID, sketch);
                             
-                            if (!overlapSketchIDs.isEmpty()) {
-                                // combine overlapping clusters
-                                
-                                ArrayDeque<long[]> overlappingSketches = new ArrayDeque<>();
-                                overlappingSketches.add(targetSketches.get(bestTargetSketchID));
-                                
-                                // add the sketches of other targets
-                                for (int i : overlapSketchIDs) {
-                                    overlappingSketches.add(targetSketches.get(i));
-                                    targetSketches.set(i, null);
-                                    targetSketchesNullIndexes.add(i);
-                                    
-                                    seqs.addAll(targetSequences.get(i));
-                                    targetSequences.set(i, null);
-                                }
-                                
-                                long[] sketch = useCompressedMinimizers ?
-                                        getMinimizersWithCompressedHomoPolymers(seq, minimizerSize, itr, minimizerWindowSize) :
-                                        getMinimizers(seq, numMinimizers, itr, minimizerWindowSize);
-                                overlappingSketches.add(sketch);
+                            int clusterID = membership.newCluster();
+                            membership.addRead(seq, clusterID);
+                            targetClusterIDs.set(bestTargetSketchID, clusterID);
+                        }
+                    }
+                    else {
+                        int clusterID = targetClusterIDs.get(bestTargetSketchID);
+                        membership.addRead(seq, clusterID);
+                        
+                        if (!overlapSketchIDs.isEmpty()) {
+                            // combine overlapping clusters
+                            
+                            ArrayDeque<long[]> overlappingSketches = new ArrayDeque<>();
+                            overlappingSketches.add(targetSketches.get(bestTargetSketchID));
+                            
+                            // add the sketches of other targets
+                            for (int i : overlapSketchIDs) {
+                                overlappingSketches.add(targetSketches.get(i));
+                                targetSketches.set(i, null);
+                                targetSketchesNullIndexes.add(i);
                                 
-                                targetSketches.set(bestTargetSketchID, combineSketches(overlappingSketches));
+                                clusterID = membership.merge(clusterID, targetClusterIDs.get(i));
+                                targetClusterIDs.set(i, null);
                             }
+                            
+                            long[] sketch = useCompressedMinimizers ?
+                                    getMinimizersWithCompressedHomoPolymers(seq, itr, minimizerWindowSize, sketcher) :
+                                    getMinimizers(seq, itr, minimizerWindowSize, sketcher);
+                            overlappingSketches.add(sketch);
+                            
+                            targetSketches.set(bestTargetSketchID, combineSketches(overlappingSketches));
+                        }
 //                            else if (numNonOverlapMinimizers-bestIntersectionSize > minSketchOverlapNumber) {
 //                                long[] sketch = useCompressedMinimizers ?
-//                                                getMinimizersWithCompressedHomoPolymers(seq, minimizerSize, itr, minimizerWindowSize) :
-//                                                getMinimizers(seq, numKmers, itr, minimizerWindowSize);
+//                                                getMinimizersWithCompressedHomoPolymers(seq, itr, minimizerWindowSize) :
+//                                                getMinimizers(seq, itr, minimizerWindowSize);
 //                                targetSketches.set(bestTargetSketchID, combineSketches(sketch, targetSketches.get(bestTargetSketchID)));
 //                            }
-                            
-                            maxClusterSize = Math.max(maxClusterSize, seqs.size());
-                        }
+                        
+                        targetClusterIDs.set(bestTargetSketchID, clusterID);
+                        maxClusterSize = Math.max(maxClusterSize, membership.getClusterSize(clusterID));
                     }
                 }
-                
-                fr.close();
-                
-                long numClusters = targetSketches.size() - targetSketchesNullIndexes.size();
-                if (numClusters > 0) {
-                    System.out.println("Num. clusters: " + numClusters + "\tmax. size: " + maxClusterSize);
-                }
+            }
+            
+            long numClusters = targetSketches.size() - targetSketchesNullIndexes.size();
+            if (numClusters > 0) {
+                System.out.println("Num. clusters: " + numClusters + "\tmax. size: " + maxClusterSize);
             }
             
             /*
@@ -2617,37 +3202,301 @@ public class RNABloom {
             */
         }
         
+        sr.close();
+        
         System.out.println(NumberFormat.getInstance().format(numDiscarded) + " reads were discarded.");
         
         System.out.println("Writing clustered reads to files...");
-        int clusterID = 0;
-        long seqID = 0;
-        ArrayList<Integer> clusterSizes = new ArrayList<>(targetSequences.size());
-        for (ArrayDeque<BitSequence> seqs : targetSequences) {
-            if (seqs != null) {
-                FastaWriter writer = new FastaWriter(clusteredLongReadsDirectory + File.separator + clusterID + FASTA_EXT, true);
-                
-                for (BitSequence b : seqs) {
-                    writer.write("r" + Long.toString(seqID++), b.toString());
+        int[] sizes = membership.writeClusters(clusteredLongReadsDirectory);
+        int numClusters = sizes.length;
+        long seqID = membership.getNumAssignments();
+        ArrayList<Integer> clusterSizes = new ArrayList<>(numClusters);
+        for (int clusterID=0; clusterID<numClusters; ++clusterID) {
+            clusterSizes.add(sizes[clusterID]);
+            
+            if (sizes[clusterID] == maxClusterSize) {
+                System.out.println("Largest cluster (" + maxClusterSize + ") at \"" + clusterID + "\"");
+            }
+        }
+        
+        System.out.println("Cluster Sizes Distribution");
+        int[] csd = getMinQ1MedianQ3Max(clusterSizes);
+        System.out.println("\tmin\tQ1\tM\tQ3\tmax");
+        System.out.println("\t" + csd[0] + "\t" + csd[1] + "\t" + csd[2] + "\t" + csd[3] + "\t" + csd[4]);
+        System.out.println(NumberFormat.getInstance().format(seqID) + " reads were assigned to " + NumberFormat.getInstance().format(numClusters) + " clusters.");
+    }
+    
+    private static final int PARALLEL_CHUNK_SIZE = 64;
+    private static final int POA_BAND_WIDTH = 100;
+    
+    /**
+     * Run `body` for every index in [0, n) on `numThreads` threads; indexes are handed out in ascending chunks.
+     */
+    private static void parallelFor(int n, int numThreads, IntConsumer body) throws InterruptedException {
+        parallelFor(n, numThreads, PARALLEL_CHUNK_SIZE, body);
+    }
+    
+    /**
+     * Run `body` for every index in [0, n) on `numThreads` threads; indexes are handed out in ascending chunks of `chunkSize`.
+     */
+    private static void parallelFor(int n, int numThreads, int chunkSize, IntConsumer body) throws InterruptedException {
+        AtomicInteger nextIndex = new AtomicInteger(0);
+        ExecutorService service = Executors.newFixedThreadPool(numThreads);
+        ArrayList<Future<?>> futures = new ArrayList<>(numThreads);
+        
+        for (int t=0; t<numThreads; ++t) {
+            futures.add(service.submit(() -> {
+                int start;
+                while ((start = nextIndex.getAndAdd(chunkSize)) < n) {
+                    int end = Math.min(n, start + chunkSize);
+                    for (int i=start; i<end; ++i) {
+                        body.accept(i);
+                    }
                 }
+            }));
+        }
+        
+        service.shutdown();
+        service.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            }
+            catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+    
+    private static int getMinimizerPartition(long minimizer, int partitionMask) {
+        return (int) (minimizer ^ (minimizer >>> 32)) & partitionMask;
+    }
+    
+    /**
+     * Parallel alternative to `clusterLongReads`.
+     * Reads are bucketed by their shared minimizers, local clusters are formed within each bucket concurrently,
+     * and clusters sharing enough minimizers are merged with a lock-free union-find.
+     * Reads are numbered in the same largest-first order as the serial mode and every cluster is
+     * represented by its earliest read, so ties are broken the same way.
+     */
+    public void clusterLongReadsParallel(String sortedLongReadsPath, String clusteredLongReadsDirectory,
+            int minSketchSize, int numThreads, boolean useCompressedMinimizers,
+            int minimizerSize, int minimizerWindowSize, float minSketchOverlapPercentage, int minSketchOverlapNumber) throws IOException, InterruptedException {
+        
+        final int minNumHashVals = Math.max(minSketchSize, minSketchOverlapNumber);
+        
+        // load reads in the same order as the serial mode
+        final PackedReadStore reads = new PackedReadStore();
+        SortedLongReadsReader sr = new SortedLongReadsReader(sortedLongReadsPath);
+        System.out.println("Parsing file `" + sortedLongReadsPath + "`...");
+        for (String seq; (seq = sr.next()) != null; ) {
+            reads.add(seq);
+        }
+        sr.close();
+        
+        final int numReads = reads.size();
+        
+        // phase 1: sketch all reads
+        System.out.println("Sketching " + NumberFormat.getInstance().format(numReads) + " reads...");
+        final long[][] sketches = new long[numReads][];
+        final int[] minOverlaps = new int[numReads];
+        final ThreadLocal<NTHashIterator> itrs = ThreadLocal.withInitial(() -> graph.getHashIterator(1, minimizerSize));
+        final ThreadLocal<MinimizerSketcher> sketchers = ThreadLocal.withInitial(MinimizerSketcher::new);
+        
+        parallelFor(numReads, numThreads, i -> {
+            String seq = reads.get(i);
+            NTHashIterator itr = itrs.get();
+            
+            int numMinimizers = getNumKmers(seq, minimizerSize);
+            int numHashVals = useCompressedMinimizers ?
+                                getAscendingHashValuesWithCompressedHomoPolymers(seq, itr, minimizerSize).length :
+                                getAscendingHashValues(seq, itr, numMinimizers).length;
+            
+            if (numHashVals >= minNumHashVals) {
+                sketches[i] = useCompressedMinimizers ?
+                                getMinimizersWithCompressedHomoPolymers(seq, itr, minimizerWindowSize, sketchers.get()) :
+                                getMinimizers(seq, itr, minimizerWindowSize, sketchers.get());
                 
-                clusterSizes.add(seqs.size());
-                
-                if (seqs.size() == maxClusterSize) {
-                    System.out.println("Largest cluster (" + maxClusterSize + ") at \"" + clusterID + "\"");
+                int numNonOverlapMinimizers = (numMinimizers-minimizerWindowSize+1)/minimizerWindowSize;
+                minOverlaps[i] = Math.max(minSketchOverlapNumber, (int) Math.ceil(minSketchOverlapPercentage * numNonOverlapMinimizers));
+            }
+        });
+        
+        // phase 2: scatter (minimizer, read) entries into partitions by minimizer
+        final int numPartitions = Integer.highestOneBit(Math.max(1, numThreads) * 16 - 1) << 1;
+        final int partitionMask = numPartitions - 1;
+        final int numRanges = Math.max(1, Math.min(numThreads, numReads));
+        final int rangeSize = (numReads + numRanges - 1) / Math.max(1, numRanges);
+        final long[][] rangeCounts = new long[numRanges][numPartitions];
+        
+        parallelFor(numRanges, numThreads, r -> {
+            long[] counts = rangeCounts[r];
+            int end = Math.min(numReads, (r+1) * rangeSize);
+            for (int i=r*rangeSize; i<end; ++i) {
+                if (sketches[i] != null) {
+                    for (long m : sketches[i]) {
+                        ++counts[getMinimizerPartition(m, partitionMask)];
+                    }
+                }
+            }
+        });
+        
+        final int[] partitionStarts = new int[numPartitions+1];
+        long numEntries = 0;
+        for (int p=0; p<numPartitions; ++p) {
+            partitionStarts[p] = (int) numEntries;
+            for (int r=0; r<numRanges; ++r) {
+                // convert counts to offsets
+                long count = rangeCounts[r][p];
+                rangeCounts[r][p] = numEntries;
+                numEntries += count;
+            }
+        }
+        
+        if (numEntries > Integer.MAX_VALUE - 8) {
+            throw new RuntimeException("Too many minimizers (" + numEntries + ") for parallel clustering");
+        }
+        partitionStarts[numPartitions] = (int) numEntries;
+        
+        final long[] entryMinimizers = new long[(int) numEntries];
+        final int[] entryReads = new int[(int) numEntries];
+        
+        parallelFor(numRanges, numThreads, r -> {
+            long[] offsets = rangeCounts[r];
+            int end = Math.min(numReads, (r+1) * rangeSize);
+            for (int i=r*rangeSize; i<end; ++i) {
+                if (sketches[i] != null) {
+                    for (long m : sketches[i]) {
+                        int e = (int) offsets[getMinimizerPartition(m, partitionMask)]++;
+                        entryMinimizers[e] = m;
+                        entryReads[e] = i;
+                    }
+                }
+            }
+        });
+        
+        // phase 3: form local clusters within each bucket and merge them
+        System.out.println("Clustering reads in " + numPartitions + " partitions...");
+        final AtomicUnionFind clusters = new AtomicUnionFind(numReads);
+        final AtomicLong numComparisons = new AtomicLong(0);
+        
+        parallelFor(numPartitions, numThreads, p -> {
+            int start = partitionStarts[p];
+            int numPartitionEntries = partitionStarts[p+1] - start;
+            if (numPartitionEntries < 2) {
+                return;
+            }
+            
+            // chain entries with the same minimizer; entries are inserted in reverse so chains are in ascending read order
+            int tableSize = Integer.highestOneBit(numPartitionEntries * 2 - 1) << 1;
+            int tableMask = tableSize - 1;
+            long[] tableKeys = new long[tableSize];
+            int[] tableHeads = new int[tableSize];
+            int[] tableSizes = new int[tableSize];
+            Arrays.fill(tableHeads, -1);
+            int[] next = new int[numPartitionEntries];
+            
+            for (int e=numPartitionEntries-1; e>=0; --e) {
+                long m = entryMinimizers[start + e];
+                int slot = ((int) (m * 0x9E3779B97F4A7C15L >>> 32)) & tableMask;
+                while (tableHeads[slot] >= 0 && tableKeys[slot] != m) {
+                    slot = (slot + 1) & tableMask;
+                }
+                tableKeys[slot] = m;
+                next[e] = tableHeads[slot];
+                tableHeads[slot] = e;
+                ++tableSizes[slot];
+            }
+            
+            int[] reps = new int[16];
+            long comparisons = 0;
+            
+            for (int slot=0; slot<tableSize; ++slot) {
+                if (tableSizes[slot] < 2) {
+                    continue;
                 }
                 
-                writer.close();
-                
-                ++clusterID;
+                int numReps = 0;
+                for (int e=tableHeads[slot]; e>=0; e=next[e]) {
+                    int read = entryReads[start + e];
+                    int root = clusters.find(read);
+                    boolean assigned = false;
+                    
+                    for (int j=0; j<numReps; ++j) {
+                        if (clusters.find(reps[j]) == root) {
+                            assigned = true;
+                            break;
+                        }
+                    }
+                    
+                    if (!assigned) {
+                        long[] sketch = sketches[read];
+                        for (int j=0; j<numReps; ++j) {
+                            int rep = reps[j];
+                            ++comparisons;
+                            if (hasNumIntersection(sketch, sketches[rep], Math.min(minOverlaps[read], minOverlaps[rep]))) {
+                                clusters.union(rep, read);
+                                assigned = true;
+                                break;
+                            }
+                        }
+                    }
+                    
+                    if (!assigned) {
+                        if (numReps == reps.length) {
+                            reps = Arrays.copyOf(reps, numReps * 2);
+                        }
+                        reps[numReps++] = read;
+                    }
+                }
+            }
+            
+            numComparisons.addAndGet(comparisons);
+        });
+        
+        System.out.println(NumberFormat.getInstance().format(numComparisons.get()) + " sketch comparisons were made.");
+        
+        // phase 4: log each read under the cluster of its earliest read and write them
+        System.out.println("Writing clustered reads to files...");
+        ClusterMembershipLog membership = new ClusterMembershipLog(reads);
+        int[] readClusterIDs = new int[numReads];
+        int numDiscarded = 0;
+        for (int i=0; i<numReads; ++i) {
+            if (sketches[i] == null) {
+                ++numDiscarded;
+                continue;
+            }
+            
+            int root = clusters.find(i);
+            readClusterIDs[i] = root == i ? membership.newCluster() : readClusterIDs[root];
+            membership.assign(i, readClusterIDs[i]);
+        }
+        
+        int[] clusterSizes = membership.writeClusters(clusteredLongReadsDirectory);
+        int numClusters = clusterSizes.length;
+        long seqID = membership.getNumAssignments();
+        
+        int maxClusterSize = 0;
+        for (int c=0; c<numClusters; ++c) {
+            maxClusterSize = Math.max(maxClusterSize, clusterSizes[c]);
+        }
+        
+        ArrayList<Integer> clusterSizesList = new ArrayList<>(numClusters);
+        for (int c=0; c<numClusters; ++c) {
+            clusterSizesList.add(clusterSizes[c]);
+            
+            if (clusterSizes[c] == maxClusterSize) {
+                System.out.println("Largest cluster (" + maxClusterSize + ") at \"" + c + "\"");
             }
         }
         
+        System.out.println(NumberFormat.getInstance().format(numDiscarded) + " reads were discarded.");
         System.out.println("Cluster Sizes Distribution");
-        int[] csd = getMinQ1MedianQ3Max(clusterSizes);
+        int[] csd = getMinQ1MedianQ3Max(clusterSizesList);
         System.out.println("\tmin\tQ1\tM\tQ3\tmax");
         System.out.println("\t" + csd[0] + "\t" + csd[1] + "\t" + csd[2] + "\t" + csd[3] + "\t" + csd[4]);
-        System.out.println(NumberFormat.getInstance().format(seqID) + " reads were assigned to " + NumberFormat.getInstance().format(clusterID) + " clusters.");
+        System.out.println(NumberFormat.getInstance().format(seqID) + " reads were assigned to " + NumberFormat.getInstance().format(numClusters) + " clusters.");
     }
     
     public boolean assembleLongReads(String clusteredLongReadsDirectory, 
@@ -2661,7 +3510,8 @@ public class RNABloom {
                                     boolean stranded,
                                     int minTranscriptLength,
                                     boolean removeArtifacts,
-                                    boolean usePacBioPreset) throws IOException {
+                                    boolean usePacBioPreset,
+                                    int maxPoaClusterSize) throws IOException, InterruptedException {
         
         ArrayList<Integer> clusterIDs = new ArrayList<>();
         
@@ -2675,8 +3525,57 @@ public class RNABloom {
         Collections.sort(clusterIDs);
         System.out.println("Total of " + clusterIDs.size() + " clusters to be assembled");
         
-        ArrayList<Integer> errors = new ArrayList<>();
-        for (int clusterID : clusterIDs) {
+        ConcurrentLinkedQueue<Integer> errorsQueue = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Integer> raconClusterIDs = new ConcurrentLinkedQueue<>();
+        
+        if (maxPoaClusterSize > 0) {
+            // small clusters are assembled in-process on a shared thread pool
+            ThreadLocal<PoaConsensus> poas = ThreadLocal.withInitial(() -> new PoaConsensus(POA_BAND_WIDTH));
+            
+            parallelFor(clusterIDs.size(), numThreads, i -> {
+                int clusterID = clusterIDs.get(i);
+                File stampFile = new File(assembledLongReadsDirectory + File.separator + clusterID + ".DONE");
+                
+                if (stampFile.exists()) {
+                    return;
+                }
+                
+                try {
+                    String readsPath = clusteredLongReadsDirectory + File.separator + clusterID + FASTA_EXT;
+                    ArrayList<String> reads = new ArrayList<>();
+                    FastaReader fr = new FastaReader(readsPath);
+                    while (fr.hasNext() && reads.size() <= maxPoaClusterSize) {
+                        reads.add(fr.next());
+                    }
+                    fr.close();
+                    
+                    if (reads.size() > maxPoaClusterSize) {
+                        raconClusterIDs.add(clusterID);
+                        return;
+                    }
+                    
+                    String concensusPath = assembledLongReadsDirectory + File.separator + clusterID + "_transcripts" + FASTA_EXT;
+                    if (concensusWithPoa(reads, concensusPath, stranded, poas.get())) {
+                        touch(stampFile);
+                    }
+                    else {
+                        System.out.println("*** Error assembling cluster `" + clusterID + "`!!! ***");
+                        errorsQueue.add(clusterID);
+                    }
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            
+            System.out.println(NumberFormat.getInstance().format(raconClusterIDs.size()) + " clusters have more than " + maxPoaClusterSize + " reads");
+        }
+        else {
+            raconClusterIDs.addAll(clusterIDs);
+        }
+        
+        ArrayList<Integer> errors = new ArrayList<>(errorsQueue);
+        for (int clusterID : raconClusterIDs) {
             String stampPath = assembledLongReadsDirectory + File.separator + clusterID + ".DONE";
             File stampFile = new File(stampPath);
             
@@ -2805,22 +3704,23 @@ public class RNABloom {
     private static final String[] LENGTH_STRATUM_NAMES = new String[]{"min_q1", "q1_med", "med_q3", "q3_max"};
     
     public class CorrectedLongReadsWriterWorker implements Runnable {
-        private final ArrayBlockingQueue<Sequence> inputQueue;
+        private final MeteredBlockingQueue<ArrayList<Sequence>> inputQueue;
+        private final int numProducers;
+        private int numProducersDone = 0;
         private final int maxSampleSize;
         private final int minSeqLen;
-        private final FastaWriter[][] writers;
+        private final SortedLongReadsWriter sortedWriter;
         private final FastaWriter repeatsWriter;
         private LengthStats sampleLengthStats = null;
-        private boolean terminateWhenInputExhausts = false;
         private long numCorrected = 0;
         private boolean successful = false;
         private Exception exception = null;
-        private LongReadCorrectionWorker[] workersToWait = null;
         
-        public CorrectedLongReadsWriterWorker(ArrayBlockingQueue<Sequence> inputQueue, 
-                FastaWriter[][] writers, FastaWriter repeatsWriter, int maxSampleSize, int minSeqLen) {
+        public CorrectedLongReadsWriterWorker(MeteredBlockingQueue<ArrayList<Sequence>> inputQueue, int numProducers,
+                SortedLongReadsWriter sortedWriter, FastaWriter repeatsWriter, int maxSampleSize, int minSeqLen) {
             this.inputQueue = inputQueue;
-            this.writers = writers;
+            this.numProducers = numProducers;
+            this.sortedWriter = sortedWriter;
             this.repeatsWriter = repeatsWriter;
             this.maxSampleSize = maxSampleSize;
             this.minSeqLen = minSeqLen;
@@ -2830,17 +3730,26 @@ public class RNABloom {
         public void run() {
             try {
                 ArrayDeque<Sequence> sample = new ArrayDeque<>(maxSampleSize);
+                ArrayList<Sequence> pending = new ArrayList<>();
 
-                while(!(terminateWhenInputExhausts && inputQueue.isEmpty())) {
-                    Sequence seq = inputQueue.poll(1, TimeUnit.MILLISECONDS);
-                    if (seq == null || seq.length < minSeqLen) {
+                while (numProducersDone < numProducers && sample.size() < maxSampleSize) {
+                    ArrayList<Sequence> batch = inputQueue.take();
+                    if (batch == END_OF_CORRECTED_READS) {
+                        ++numProducersDone;
                         continue;
                     }
-
-                    sample.add(seq);
-
-                    if (sample.size() == maxSampleSize) {
-                        break;
+                    
+                    for (Sequence seq : batch) {
+                        if (seq.length < minSeqLen) {
+                            continue;
+                        }
+                        
+                        if (sample.size() < maxSampleSize) {
+                            sample.add(seq);
+                        }
+                        else {
+                            pending.add(seq);
+                        }
                     }
                 }
 
@@ -2863,40 +3772,25 @@ public class RNABloom {
 
                 /** write the sample sequences to file */
                 for (Sequence seq : sample) {
-                    int lengthStratumIndex = getLongReadLengthStratumIndex(sampleLengthStats, seq.length);
-                    int covStatumIndex = getCoverageOrderOfMagnitude(seq.coverage);
-
-                    //String header = Long.toString(++numCorrected) + " l=" + Integer.toString(seq.length) + " c=" + Float.toString(seq.coverage);
-                    ++numCorrected;
-                    String header = seq.name + " l=" + Integer.toString(seq.length) + " c=" + Float.toString(seq.coverage);
-
-                    if (seq.isRepeat) {
-                        repeatsWriter.write(header, seq.seq);
-                    }
-                    else {
-                        writers[covStatumIndex][lengthStratumIndex].write(header, seq.seq);
-                    }
+                    write(seq);
                 }
 
                 /** write the remaining sequences to file */
-                while(!(terminateWhenInputExhausts && areDependentWorkersDone() && inputQueue.isEmpty())) {
-                    Sequence seq = inputQueue.poll(1, TimeUnit.MILLISECONDS);
-                    if (seq == null || seq.length < minSeqLen) {
+                for (Sequence seq : pending) {
+                    write(seq);
+                }
+                
+                while (numProducersDone < numProducers) {
+                    ArrayList<Sequence> batch = inputQueue.take();
+                    if (batch == END_OF_CORRECTED_READS) {
+                        ++numProducersDone;
                         continue;
                     }
-
-                    int lengthStratumIndex = getLongReadLengthStratumIndex(sampleLengthStats, seq.length);
-                    int covStatumIndex = getCoverageOrderOfMagnitude(seq.coverage);
-
-                    //String header = Long.toString(++numCorrected) + " l=" + Integer.toString(seq.length) + " c=" + Float.toString(seq.coverage);
-                    ++numCorrected;
-                    String header = seq.name + " l=" + Integer.toString(seq.length) + " c=" + Float.toString(seq.coverage);
-
-                    if (seq.isRepeat) {
-                        repeatsWriter.write(header, seq.seq);
-                    }
-                    else {
-                        writers[covStatumIndex][lengthStratumIndex].write(header, seq.seq);
+                    
+                    for (Sequence seq : batch) {
+                        if (seq.length >= minSeqLen) {
+                            write(seq);
+                        }
                     }
                 }
                 
@@ -2906,27 +3800,29 @@ public class RNABloom {
                 System.out.println(ex.getMessage());
                 exception = ex;
                 successful = false;
+                
+                // drain the queue so that the correction workers do not block
+                try {
+                    while (numProducersDone < numProducers) {
+                        if (inputQueue.take() == END_OF_CORRECTED_READS) {
+                            ++numProducersDone;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
             }
         }
         
-        public void terminateWhenInputExhausts(LongReadCorrectionWorker[] workersToWait) {
-            terminateWhenInputExhausts = true;
-            this.workersToWait = workersToWait;
-        }
-        
-        public boolean areDependentWorkersDone() {
-            if (workersToWait == null) {
-                return false;
+        private void write(Sequence seq) throws IOException {
+            ++numCorrected;
+
+            if (seq.isRepeat) {
+                String header = seq.name + " l=" + Integer.toString(seq.length) + " c=" + Float.toString(seq.coverage);
+                repeatsWriter.write(header, seq.seq);
             }
             else {
-                int numRemaining = workersToWait.length;
-                for (LongReadCorrectionWorker worker : workersToWait) {
-                    if (worker.successful || worker.exception != null) {
-                        --numRemaining;
-                    }
-                }
-                
-                return numRemaining <= 0;
+                sortedWriter.write(getCoverageOrderOfMagnitude(seq.coverage), seq.coverage, seq.seq);
             }
         }
         
@@ -2948,24 +3844,25 @@ public class RNABloom {
     }
     
     public class CorrectedLongReadsWriterWorker2 implements Runnable {
-        private final ArrayBlockingQueue<Sequence> inputQueue;
+        private final MeteredBlockingQueue<ArrayList<Sequence>> inputQueue;
+        private final int numProducers;
+        private int numProducersDone = 0;
         private final int maxSampleSize;
         private final int minSeqLen;
         private final FastaWriter longWriter;
         private final FastaWriter shortWriter;
         private final FastaWriter repeatsWriter;
         private LengthStats sampleLengthStats = null;
-        private boolean terminateWhenInputExhausts = false;
         private long numCorrected = 0;
         private boolean successful = false;
         private Exception exception = null;
-        private LongReadCorrectionWorker[] workersToWait = null;
         private final boolean writeUracil;
         
-        public CorrectedLongReadsWriterWorker2(ArrayBlockingQueue<Sequence> inputQueue, 
+        public CorrectedLongReadsWriterWorker2(MeteredBlockingQueue<ArrayList<Sequence>> inputQueue, int numProducers,
                 FastaWriter longSeqWriter, FastaWriter shortSeqWriter, FastaWriter repeatsSeqWriter,
                 int maxSampleSize, int minSeqLen, boolean writeUracil) {
             this.inputQueue = inputQueue;
+            this.numProducers = numProducers;
             this.longWriter = longSeqWriter;
             this.shortWriter = shortSeqWriter;
             this.repeatsWriter = repeatsSeqWriter;
@@ -2978,17 +3875,26 @@ public class RNABloom {
         public void run() {
             try {
                 ArrayDeque<Sequence> sample = new ArrayDeque<>(maxSampleSize);
+                ArrayList<Sequence> pending = new ArrayList<>();
 
-                while(!(terminateWhenInputExhausts && inputQueue.isEmpty())) {
-                    Sequence seq = inputQueue.poll(1, TimeUnit.MILLISECONDS);
-                    if (seq == null || seq.length < minSeqLen) {
+                while (numProducersDone < numProducers && sample.size() < maxSampleSize) {
+                    ArrayList<Sequence> batch = inputQueue.take();
+                    if (batch == END_OF_CORRECTED_READS) {
+                        ++numProducersDone;
                         continue;
                     }
-
-                    sample.add(seq);
-
-                    if (sample.size() == maxSampleSize) {
-                        break;
+                    
+                    for (Sequence seq : batch) {
+                        if (seq.length < minSeqLen) {
+                            continue;
+                        }
+                        
+                        if (sample.size() < maxSampleSize) {
+                            sample.add(seq);
+                        }
+                        else {
+                            pending.add(seq);
+                        }
                     }
                 }
 
@@ -3011,47 +3917,25 @@ public class RNABloom {
 
                 /** write the sample sequences to file */
                 for (Sequence seq : sample) {
-                    ++numCorrected;
-                    String header = seq.name + " l=" + Integer.toString(seq.length) + " c=" + Float.toString(seq.coverage);
-
-                    if (writeUracil) {
-                        seq.seq = seq.seq.replace('T', 'U');
-                    }
-                    
-                    if (seq.isRepeat) {
-                        repeatsWriter.write(header, seq.seq);
-                    }
-                    else if (seq.length >= minSeqLen) {
-                        longWriter.write(header, seq.seq);
-                    }
-                    else {
-                        shortWriter.write(header, seq.seq);
-                    }
+                    write(seq);
                 }
 
                 /** write the remaining sequences to file */
-                while(!(terminateWhenInputExhausts && areDependentWorkersDone() && inputQueue.isEmpty())) {
-                    Sequence seq = inputQueue.poll(1, TimeUnit.MILLISECONDS);
-                    if (seq == null || seq.length < minSeqLen) {
+                for (Sequence seq : pending) {
+                    write(seq);
+                }
+                
+                while (numProducersDone < numProducers) {
+                    ArrayList<Sequence> batch = inputQueue.take();
+                    if (batch == END_OF_CORRECTED_READS) {
+                        ++numProducersDone;
                         continue;
                     }
-
-                    //String header = Long.toString(++numCorrected) + " l=" + Integer.toString(seq.length) + " c=" + Float.toString(seq.coverage);
-                    ++numCorrected;
-                    String header = seq.name + " l=" + Integer.toString(seq.length) + " c=" + Float.toString(seq.coverage);
-
-                    if (writeUracil) {
-                        seq.seq = seq.seq.replace('T', 'U');
-                    }
                     
-                    if (seq.isRepeat) {
-                        repeatsWriter.write(header, seq.seq);
-                    }
-                    else if (seq.length >= minSeqLen) {
-                        longWriter.write(header, seq.seq);
-                    }
-                    else {
-                        shortWriter.write(header, seq.seq);
+                    for (Sequence seq : batch) {
+                        if (seq.length >= minSeqLen) {
+                            write(seq);
+                        }
                     }
                 }
                 
@@ -3061,27 +3945,36 @@ public class RNABloom {
                 System.out.println(ex.getMessage());
                 exception = ex;
                 successful = false;
+                
+                // drain the queue so that the correction workers do not block
+                try {
+                    while (numProducersDone < numProducers) {
+                        if (inputQueue.take() == END_OF_CORRECTED_READS) {
+                            ++numProducersDone;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
             }
         }
         
-        public void terminateWhenInputExhausts(LongReadCorrectionWorker[] workersToWait) {
-            terminateWhenInputExhausts = true;
-            this.workersToWait = workersToWait;
-        }
-        
-        public boolean areDependentWorkersDone() {
-            if (workersToWait == null) {
-                return false;
+        private void write(Sequence seq) throws IOException {
+            ++numCorrected;
+            String header = seq.name + " l=" + Integer.toString(seq.length) + " c=" + Float.toString(seq.coverage);
+
+            if (writeUracil) {
+                seq.seq = seq.seq.replace('T', 'U');
+            }
+            
+            if (seq.isRepeat) {
+                repeatsWriter.write(header, seq.seq);
+            }
+            else if (seq.length >= minSeqLen) {
+                longWriter.write(header, seq.seq);
             }
             else {
-                int numRemaining = workersToWait.length;
-                for (LongReadCorrectionWorker worker : workersToWait) {
-                    if (worker.successful || worker.exception != null) {
-                        --numRemaining;
-                    }
-                }
-                
-                return numRemaining <= 0;
+                shortWriter.write(header, seq.seq);
             }
         }
         
@@ -3119,9 +4012,9 @@ public class RNABloom {
     }
     
     public class LongReadCorrectionWorker implements Runnable {
-        private final ArrayBlockingQueue<String[]> inputQueue;
-        private final ArrayBlockingQueue<Sequence> outputQueue;
-        private boolean terminateWhenInputExhausts = false;
+        private final MeteredBlockingQueue<ArrayList<String[]>> inputQueue;
+        private final MeteredBlockingQueue<ArrayList<Sequence>> outputQueue;
+        private final boolean stranded;
         private boolean successful = false;
         private Exception exception = null;
         private final int maxErrCorrItr;
@@ -3131,12 +4024,13 @@ public class RNABloom {
         private boolean trimArtifact = false;
         private long numArtifacts = 0;
 
-        public LongReadCorrectionWorker(ArrayBlockingQueue<String[]> inputQueue,
-                                        ArrayBlockingQueue<Sequence> outputQueue,
+        public LongReadCorrectionWorker(MeteredBlockingQueue<ArrayList<String[]>> inputQueue,
+                                        MeteredBlockingQueue<ArrayList<Sequence>> outputQueue,
                                         int maxErrCorrItr, int minKmerCov, int minNumSolidKmers,
                                         boolean reverseComplement, boolean trimArtifact) {
             this.inputQueue = inputQueue;
             this.outputQueue = outputQueue;
+            this.stranded = graph.isStranded();
             this.maxErrCorrItr = maxErrCorrItr;
             this.minKmerCov = minKmerCov;
             this.minNumSolidKmers = minNumSolidKmers;
@@ -3146,150 +4040,172 @@ public class RNABloom {
         
         @Override
         public void run() {
-            boolean stranded = graph.isStranded();
-            
-            while(!terminateWhenInputExhausts || !inputQueue.isEmpty()) {
-                try {                    
-                    String[] nameSeqPair = inputQueue.poll(1, TimeUnit.SECONDS);
-                    if (nameSeqPair == null) {
+            try {
+                while (true) {
+                    ArrayList<String[]> batch = inputQueue.take();
+                    if (batch == END_OF_READS) {
+                        // pass the marker on to the other workers
+                        inputQueue.put(batch);
+                        break;
+                    }
+                    
+                    if (exception != null) {
+                        // keep draining so that the reader does not block
                         continue;
                     }
                     
-                    String seq = reverseComplement ? reverseComplement(nameSeqPair[1]) : nameSeqPair[1];
+                    try {
+                        ArrayList<Sequence> corrected = new ArrayList<>(batch.size());
+                        for (String[] nameSeqPair : batch) {
+                            Sequence seq = correct(nameSeqPair);
+                            if (seq != null) {
+                                corrected.add(seq);
+                            }
+                        }
+
+                        if (!corrected.isEmpty()) {
+                            outputQueue.put(corrected);
+                        }
+                    } catch (Exception ex) {
+                        System.out.println(ex.getMessage());
+                        ex.printStackTrace();
+                        exception = ex;
+                    }
+                }
+                
+                outputQueue.put(END_OF_CORRECTED_READS);
+            } catch (InterruptedException ex) {
+                ex.printStackTrace();
+                exception = ex;
+            }
+            
+            successful = exception == null;
+        }
+        
+        private Sequence correct(String[] nameSeqPair) {
+            String seq = reverseComplement ? reverseComplement(nameSeqPair[1]) : nameSeqPair[1];
+            
+            ArrayList<Kmer> kmers = graph.getKmers(seq);
+            
+            ArrayList<Kmer> correctedKmers = correctLongSequence(kmers, 
+                                                                graph, 
+                                                                maxErrCorrItr, 
+                                                                maxCovGradient, 
+                                                                lookahead, 
+                                                                maxIndelSize, 
+                                                                percentIdentity, 
+                                                                minKmerCov,
+                                                                minNumSolidKmers,
+                                                                true);
+                                
+            if (correctedKmers != null && !correctedKmers.isEmpty()) {
+                if (trimArtifact) {
+                    ArrayList<Kmer> trimmed = trimReverseComplementArtifact(correctedKmers,
+                                        graph, strandSpecific, 150, maxIndelSize, percentIdentity, maxCovGradient);
+                    if (!trimmed.isEmpty() && trimmed.size() < correctedKmers.size()) {
+                        ++numArtifacts;
+                        correctedKmers = trimmed;
+                    }
+                }
+                
+                if (!correctedKmers.isEmpty()) {
+                    float cov = getMinMedianKmerCoverage(correctedKmers, 200);
+                    boolean isRepeat = isRepeatSequence(correctedKmers, k, 1f/3f) || isLowComplexity(correctedKmers, k, 1f/3f);
                     
-                    ArrayList<Kmer> kmers = graph.getKmers(seq);
+                    seq = graph.assemble(correctedKmers);
                     
-                    ArrayList<Kmer> correctedKmers = correctLongSequence(kmers, 
-                                                                        graph, 
-                                                                        maxErrCorrItr, 
-                                                                        maxCovGradient, 
-                                                                        lookahead, 
-                                                                        maxIndelSize, 
-                                                                        percentIdentity, 
-                                                                        minKmerCov,
-                                                                        minNumSolidKmers,
-                                                                        true);
-                                        
-                    if (correctedKmers != null && !correctedKmers.isEmpty()) {
-                        if (trimArtifact) {
-                            ArrayList<Kmer> trimmed = trimReverseComplementArtifact(correctedKmers,
-                                                graph, strandSpecific, 150, maxIndelSize, percentIdentity, maxCovGradient);
-                            if (!trimmed.isEmpty() && trimmed.size() < correctedKmers.size()) {
-                                ++numArtifacts;
-                                correctedKmers = trimmed;
+                    int seqLength = seq.length();
+                    if (!isRepeat && compressHomoPolymers(seq).length() < 1f/3f * seqLength) {
+                        isRepeat = true;
+                    }
+                    
+                    int halflen = seqLength/2;
+                    
+                    String prefix = "";
+                    
+                    if (!isRepeat) {
+                        if (stranded) {
+                            // find polyA tail and trim trailing sequence
+                            int[] region = getPolyATailRegion(seq, 100, 17, 15, 2);
+                            if (region != null) {
+                                int start = region[0];
+                                int end = region[1];
+                                if (start >= halflen) {
+                                    seq = seq.substring(0, start) + "A".repeat(end-start+1);
+                                }
                             }
                         }
-                        
-                        if (!correctedKmers.isEmpty()) {
-                            float cov = getMinMedianKmerCoverage(correctedKmers, 200);
-                            boolean isRepeat = isRepeatSequence(correctedKmers, k, 1f/3f) || isLowComplexity(correctedKmers, k, 1f/3f);
-                            
-                            seq = graph.assemble(correctedKmers);
-                            
-                            int seqLength = seq.length();
-                            if (!isRepeat && compressHomoPolymers(seq).length() < 1f/3f * seqLength) {
-                                isRepeat = true;
+                        else {
+                            // find polyA tail and trim trailing sequence
+                            int[] regionA = getPolyATailRegion(seq, 100, 17, 15, 2);
+                            int[] regionT = getPolyTHeadRegion(seq, 100, 17, 15, 2);
+                            if (regionA != null && regionT == null) {
+                                int start = regionA[0];
+                                int end = regionA[1];
+                                if (start >= halflen) {
+                                    seq = seq.substring(0, start) + "A".repeat(end-start+1);
+                                }
                             }
-                            
-                            int halflen = seqLength/2;
-                            
-                            String prefix = "";
-                            
-                            if (!isRepeat) {
-                                if (stranded) {
-                                    // find polyA tail and trim trailing sequence
-                                    int[] region = getPolyATailRegion(seq, 100, 17, 15, 2);
-                                    if (region != null) {
-                                        int start = region[0];
-                                        int end = region[1];
-                                        if (start >= halflen) {
-                                            seq = seq.substring(0, start) + "A".repeat(end-start+1);
-                                        }
-                                    }
+                            else if (regionT != null && regionA == null) {
+                                int start = regionT[0];
+                                int end = regionT[1];
+                                if (start >= 0 && end <= halflen) {
+                                    seq = reverseComplement(seq.substring(end+1)) + "A".repeat(end-start+1);
                                 }
-                                else {
-                                    // find polyA tail and trim trailing sequence
-                                    int[] regionA = getPolyATailRegion(seq, 100, 17, 15, 2);
-                                    int[] regionT = getPolyTHeadRegion(seq, 100, 17, 15, 2);
-                                    if (regionA != null && regionT == null) {
-                                        int start = regionA[0];
-                                        int end = regionA[1];
-                                        if (start >= halflen) {
-                                            seq = seq.substring(0, start) + "A".repeat(end-start+1);
-                                        }
+                            }
+                            else if (regionA != null && regionT != null) {
+                                int startA = regionA[0];
+                                int endA = regionA[1];
+                                int startT = regionT[0];
+                                int endT = regionT[1];
+                                boolean isPolyA = startA >= halflen;
+                                boolean isPolyT = startT >= 0 && endT <= halflen;
+                                if (isPolyA && !isPolyT) {
+                                    seq = seq.substring(0, startA) + "A".repeat(endA-startA+1);
+                                }
+                                else if (isPolyT && !isPolyA) {
+                                    seq = reverseComplement(seq.substring(endT+1)) + "A".repeat(endT-startT+1);
+                                }
+                                else if (isPolyA && isPolyT){
+                                    int midIndex = (endT+1+startA)/2;
+                                    String left = reverseComplement(seq.substring(endT+1, midIndex));
+                                    String right = seq.substring(midIndex, startA);
+                                    if (getPercentIdentity(left, right) >= percentIdentity) {
+                                        seq = right + "A".repeat(Math.min(endA-startA+1, endT-startT+1));
+                                        prefix = "TSA_";
                                     }
-                                    else if (regionT != null && regionA == null) {
-                                        int start = regionT[0];
-                                        int end = regionT[1];
-                                        if (start >= 0 && end <= halflen) {
-                                            seq = reverseComplement(seq.substring(end+1)) + "A".repeat(end-start+1);
+                                    else {
+                                        int numA = 0;
+                                        for (int i=startA; i<=endA; ++i) {
+                                            if (seq.charAt(i) == 'A') {
+                                                ++numA;
+                                            }
                                         }
-                                    }
-                                    else if (regionA != null && regionT != null) {
-                                        int startA = regionA[0];
-                                        int endA = regionA[1];
-                                        int startT = regionT[0];
-                                        int endT = regionT[1];
-                                        boolean isPolyA = startA >= halflen;
-                                        boolean isPolyT = startT >= 0 && endT <= halflen;
-                                        if (isPolyA && !isPolyT) {
+
+                                        int numT = 0;
+                                        for (int i=startT; i<=endT; ++i) {
+                                            if (seq.charAt(i) == 'T') {
+                                                ++numT;
+                                            }
+                                        }
+
+                                        if (numA >= numT) {
                                             seq = seq.substring(0, startA) + "A".repeat(endA-startA+1);
                                         }
-                                        else if (isPolyT && !isPolyA) {
+                                        else {
                                             seq = reverseComplement(seq.substring(endT+1)) + "A".repeat(endT-startT+1);
                                         }
-                                        else if (isPolyA && isPolyT){
-                                            int midIndex = (endT+1+startA)/2;
-                                            String left = reverseComplement(seq.substring(endT+1, midIndex));
-                                            String right = seq.substring(midIndex, startA);
-                                            if (getPercentIdentity(left, right) >= percentIdentity) {
-                                                seq = right + "A".repeat(Math.min(endA-startA+1, endT-startT+1));
-                                                prefix = "TSA_";
-                                            }
-                                            else {
-                                                int numA = 0;
-                                                for (int i=startA; i<=endA; ++i) {
-                                                    if (seq.charAt(i) == 'A') {
-                                                        ++numA;
-                                                    }
-                                                }
-
-                                                int numT = 0;
-                                                for (int i=startT; i<=endT; ++i) {
-                                                    if (seq.charAt(i) == 'T') {
-                                                        ++numT;
-                                                    }
-                                                }
-
-                                                if (numA >= numT) {
-                                                    seq = seq.substring(0, startA) + "A".repeat(endA-startA+1);
-                                                }
-                                                else {
-                                                    seq = reverseComplement(seq.substring(endT+1)) + "A".repeat(endT-startT+1);
-                                                }
-                                            }
-                                        }
                                     }
                                 }
                             }
-                            
-                            outputQueue.put(new Sequence(prefix + nameSeqPair[0], seq, seq.length(), cov, isRepeat));
                         }
                     }
-                } catch (Exception ex) {
-                    System.out.println(ex.getMessage());
-                    ex.printStackTrace();
-                    exception = ex;
-                    successful = false;
-                    return;
+                    
+                    return new Sequence(prefix + nameSeqPair[0], seq, seq.length(), cov, isRepeat);
                 }
             }
             
-            successful = true;
-        }
-        
-        public void terminateWhenInputExhausts() {
-            terminateWhenInputExhausts = true;
+            return null;
         }
         
         public boolean isSucessful() {
@@ -3301,8 +4217,92 @@ public class RNABloom {
         }
     }
     
+    private final static ArrayList<String[]> END_OF_READS = new ArrayList<>(0);
+    private final static ArrayList<Sequence> END_OF_CORRECTED_READS = new ArrayList<>(0);
+    private final static int READ_BATCH_MAX_READS = 32;
+    private final static int READ_BATCH_MAX_BASES = 256 * 1024;
+    
+    private final static int LONGEST_FIRST_BATCH_READS = 10000;
+    private final static long LONGEST_FIRST_BATCH_BASES = 64 * NUM_BYTES_1MB;
+    
+    /**
+     * Queue reads in batches, each sorted by decreasing length, so that the
+     * longest reads start early and the last reads to be corrected are short.
+     * The first `numInputOrder` reads are queued in input order ahead of the sorted
+     * batches, so that the writer's length sample is not biased towards long reads.
+     * `END_OF_READS` is queued after the last batch.
+     * @return number of reads parsed
+     */
+    private static long queueLongestFirst(String[] inputFastxPaths, int minSeqLen, int numInputOrder,
+            MeteredBlockingQueue<ArrayList<String[]>> queue) throws IOException, InterruptedException {
+        long numReads = 0;
+        ArrayList<String[]> batch = new ArrayList<>();
+        long batchBases = 0;
+        boolean inputOrder = numInputOrder > 0;
+        
+        for (FastxSequenceIterator itr = new FastxSequenceIterator(inputFastxPaths); itr.hasNext() ; ++numReads) {
+            String[] seq = itr.nextWithName();
+            int len = seq[1].length();
+            if (len >= minSeqLen) {
+                batch.add(seq);
+                batchBases += len;
+                
+                if (inputOrder) {
+                    if (batch.size() >= numInputOrder) {
+                        putInWorkUnits(batch, queue);
+                        batchBases = 0;
+                        inputOrder = false;
+                    }
+                }
+                else if (batch.size() >= LONGEST_FIRST_BATCH_READS || batchBases >= LONGEST_FIRST_BATCH_BASES) {
+                    putLongestFirst(batch, queue);
+                    batchBases = 0;
+                }
+            }
+        }
+        
+        putLongestFirst(batch, queue);
+        queue.put(END_OF_READS);
+        
+        return numReads;
+    }
+    
+    private static void putLongestFirst(ArrayList<String[]> reads, MeteredBlockingQueue<ArrayList<String[]>> queue) throws InterruptedException {
+        Collections.sort(reads, (a, b) -> Integer.compare(b[1].length(), a[1].length()));
+        
+        // cut into work units of similar lengths
+        putInWorkUnits(reads, queue);
+    }
+    
+    private static void putInWorkUnits(ArrayList<String[]> reads, MeteredBlockingQueue<ArrayList<String[]>> queue) throws InterruptedException {
+        ArrayList<String[]> batch = new ArrayList<>(READ_BATCH_MAX_READS);
+        int batchBases = 0;
+        for (String[] seq : reads) {
+            batch.add(seq);
+            batchBases += seq[1].length();
+            
+            if (batch.size() >= READ_BATCH_MAX_READS || batchBases >= READ_BATCH_MAX_BASES) {
+                queue.put(batch);
+                batch = new ArrayList<>(READ_BATCH_MAX_READS);
+                batchBases = 0;
+            }
+        }
+        
+        if (!batch.isEmpty()) {
+            queue.put(batch);
+        }
+        
+        reads.clear();
+    }
+    
+    private static void printQueueMetrics(String name, MeteredBlockingQueue<?> queue, String producers, String consumers) {
+        System.out.println("\t" + name + ": mean occupancy " + String.format("%.1f", queue.getMeanOccupancy()) + "/" + queue.getCapacity() + 
+                ", " + producers + " stalled " + String.format("%.1f", queue.getPutStallSeconds()) + "s" +
+                ", " + consumers + " stalled " + String.format("%.1f", queue.getTakeStallSeconds()) + "s");
+    }
+    
     public void correctLongReadsMultithreaded(String[] inputFastxPaths,
-                                                FastaWriter[][] outFastaWriters,
+                                                SortedLongReadsWriter sortedReadsWriter,
                                                 FastaWriter repeatsOutFastaWriter,
                                                 int minKmerCov,
                                                 int maxErrCorrItr,
@@ -3313,11 +4313,14 @@ public class RNABloom {
                                                 boolean trimArtifact) throws InterruptedException, IOException, Exception {
         long numReads = 0;
         
-        MyExecutorService service = new MyExecutorService(numThreads+1, numThreads+1);
+        // correction workers run in a fork-join pool so that idle workers
+        // help correct the windows of the long reads still in progress
+        ForkJoinPool correctionPool = new ForkJoinPool(numThreads);
+        MyExecutorService service = new MyExecutorService(1, 1);
         
-        int maxQueueSize = 100;
-        ArrayBlockingQueue<String[]> inputQueue = new ArrayBlockingQueue<>(maxQueueSize);
-        ArrayBlockingQueue<Sequence> outputQueue = new ArrayBlockingQueue<>(maxQueueSize);
+        int maxQueueSize = 2 * numThreads + 2;
+        MeteredBlockingQueue<ArrayList<String[]>> inputQueue = new MeteredBlockingQueue<>(maxQueueSize);
+        MeteredBlockingQueue<ArrayList<Sequence>> outputQueue = new MeteredBlockingQueue<>(maxQueueSize);
                 
         int numCorrectionWorkers = numThreads;
         LongReadCorrectionWorker[] correctionWorkers = new LongReadCorrectionWorker[numCorrectionWorkers];
@@ -3326,26 +4329,17 @@ public class RNABloom {
         for (int i=0; i<numCorrectionWorkers; ++i) {
             LongReadCorrectionWorker worker = new LongReadCorrectionWorker(inputQueue, outputQueue, maxErrCorrItr, minKmerCov, minNumSolidKmers, reverseComplement, trimArtifact);
             correctionWorkers[i] = worker;
-            service.submit(worker);
+            correctionPool.execute(worker);
         }
         
         //FastaWriter writer = new FastaWriter(outFasta, true);
-        CorrectedLongReadsWriterWorker writerWorker = new CorrectedLongReadsWriterWorker(outputQueue, outFastaWriters, repeatsOutFastaWriter, maxSampleSize, minSeqLen);
+        CorrectedLongReadsWriterWorker writerWorker = new CorrectedLongReadsWriterWorker(outputQueue, numCorrectionWorkers, sortedReadsWriter, repeatsOutFastaWriter, maxSampleSize, minSeqLen);
         service.submit(writerWorker);
         
-        for (FastxSequenceIterator itr = new FastxSequenceIterator(inputFastxPaths); itr.hasNext() ; ++numReads) {
-            String[] seq = itr.nextWithName();
-            if (seq[1].length() >= minSeqLen) {
-                inputQueue.put(seq);
-            }
-        }
-        
-        for (LongReadCorrectionWorker worker : correctionWorkers) {
-            worker.terminateWhenInputExhausts();
-        }
-        
-        writerWorker.terminateWhenInputExhausts(correctionWorkers);
+        numReads = queueLongestFirst(inputFastxPaths, minSeqLen, maxSampleSize, inputQueue);
         
+        correctionPool.shutdown();
+        correctionPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
         service.terminate();
         
         // check for errors
@@ -3361,7 +4355,7 @@ public class RNABloom {
             numArtifacts += worker.numArtifacts;
         }
         
-        assert inputQueue.isEmpty() && outputQueue.isEmpty();
+        assert outputQueue.isEmpty();
         
         System.out.println("Parsed " + NumberFormat.getInstance().format(numReads) + " sequences.");
         long numCorrected = writerWorker.getNumCorrected();
@@ -3372,6 +4366,9 @@ public class RNABloom {
         if (numArtifacts > 0) { 
             System.out.println("\tArtifacts: " + NumberFormat.getInstance().format(numArtifacts) + "(" + numArtifacts * 100f/numReads + "%)");
         }
+        
+        printQueueMetrics("Read queue", inputQueue, "reader", "correctors");
+        printQueueMetrics("Output queue", outputQueue, "correctors", "writer");
     }
     
     public void correctLongReadsMultithreaded(String[] inputFastxPaths,
@@ -3389,11 +4386,14 @@ public class RNABloom {
 
         long numReads = 0;
         
-        MyExecutorService service = new MyExecutorService(numThreads+1, numThreads+1);
+        // correction workers run in a fork-join pool so that idle workers
+        // help correct the windows of the long reads still in progress
+        ForkJoinPool correctionPool = new ForkJoinPool(numThreads);
+        MyExecutorService service = new MyExecutorService(1, 1);
         
-        int maxQueueSize = 100;
-        ArrayBlockingQueue<String[]> inputQueue = new ArrayBlockingQueue<>(maxQueueSize);
-        ArrayBlockingQueue<Sequence> outputQueue = new ArrayBlockingQueue<>(maxQueueSize);
+        int maxQueueSize = 2 * numThreads + 2;
+        MeteredBlockingQueue<ArrayList<String[]>> inputQueue = new MeteredBlockingQueue<>(maxQueueSize);
+        MeteredBlockingQueue<ArrayList<Sequence>> outputQueue = new MeteredBlockingQueue<>(maxQueueSize);
                 
         int numCorrectionWorkers = numThreads;
         LongReadCorrectionWorker[] correctionWorkers = new LongReadCorrectionWorker[numCorrectionWorkers];
@@ -3402,27 +4402,18 @@ public class RNABloom {
         for (int i=0; i<numCorrectionWorkers; ++i) {
             LongReadCorrectionWorker worker = new LongReadCorrectionWorker(inputQueue, outputQueue, maxErrCorrItr, minKmerCov, minNumSolidKmers, reverseComplement, trimArtifact);
             correctionWorkers[i] = worker;
-            service.submit(worker);
+            correctionPool.execute(worker);
         }
         
-        CorrectedLongReadsWriterWorker2 writerWorker = new CorrectedLongReadsWriterWorker2(outputQueue, 
+        CorrectedLongReadsWriterWorker2 writerWorker = new CorrectedLongReadsWriterWorker2(outputQueue, numCorrectionWorkers,
                 longSeqWriter, shortSeqWriter, repeatsSeqWriter,
                 maxSampleSize, minSeqLen, writeUracil);
         service.submit(writerWorker);
         
-        for (FastxSequenceIterator itr = new FastxSequenceIterator(inputFastxPaths); itr.hasNext() ; ++numReads) {
-            String[] seq = itr.nextWithName();
-            if (seq[1].length() >= minSeqLen) {
-                inputQueue.put(seq);
-            }
-        }
-        
-        for (LongReadCorrectionWorker worker : correctionWorkers) {
-            worker.terminateWhenInputExhausts();
-        }
-        
-        writerWorker.terminateWhenInputExhausts(correctionWorkers);
+        numReads = queueLongestFirst(inputFastxPaths, minSeqLen, maxSampleSize, inputQueue);
         
+        correctionPool.shutdown();
+        correctionPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
         service.terminate();
         
         // check for errors
@@ -3438,7 +4429,7 @@ public class RNABloom {
             numArtifacts += worker.numArtifacts;
         }
         
-        assert inputQueue.isEmpty() && outputQueue.isEmpty();
+        assert outputQueue.isEmpty();
         
         System.out.println("Parsed " + NumberFormat.getInstance().format(numReads) + " sequences.");
         long numCorrected = writerWorker.getNumCorrected();
@@ -3449,6 +4440,9 @@ public class RNABloom {
         if (numArtifacts > 0) { 
             System.out.println("\tArtifacts: " + NumberFormat.getInstance().format(numArtifacts) + "(" + numArtifacts * 100f/numReads + "%)");
         }
+        
+        printQueueMetrics("Read queue", inputQueue, "reader", "correctors");
+        printQueueMetrics("Output queue", outputQueue, "correctors", "writer");
     }
     
     public String polishSequence(String seq, int maxErrCorrItr, int minKmerCov, int minNumSolidKmers) {
@@ -3824,35 +4818,40 @@ public class RNABloom {
             FileSystem sys = FileSystems.getDefault();
             
             for (String path : longFragmentsPaths) {
-                Files.deleteIfExists(sys.getPath(path));
+                deleteIfExists(sys, path);
             }
             
             for (String path : shortFragmentsPaths) {
-                Files.deleteIfExists(sys.getPath(path));
+                deleteIfExists(sys, path);
             }
             
             for (String path : unconnectedReadsPaths) {
-                Files.deleteIfExists(sys.getPath(path));
+                deleteIfExists(sys, path);
             }
             
             for (String path : longPolyaFragmentsPaths) {
-                Files.deleteIfExists(sys.getPath(path));
+                deleteIfExists(sys, path);
             }
             
             for (String path : shortPolyaFragmentsPaths) {
-                Files.deleteIfExists(sys.getPath(path));
+                deleteIfExists(sys, path);
             }
             
             for (String path : unconnectedPolyaReadsPaths) {
-                Files.deleteIfExists(sys.getPath(path));
+                deleteIfExists(sys, path);
             }
             
-            Files.deleteIfExists(sys.getPath(longSingletonsPath));
-            Files.deleteIfExists(sys.getPath(shortSingletonsPath));
-            Files.deleteIfExists(sys.getPath(unconnectedSingletonsPath));
-            Files.deleteIfExists(sys.getPath(longPolyaSingletonsPath));
-            Files.deleteIfExists(sys.getPath(shortPolyaSingletonsPath));
-            Files.deleteIfExists(sys.getPath(unconnectedPolyaSingletonsPath));
+            deleteIfExists(sys, longSingletonsPath);
+            deleteIfExists(sys, shortSingletonsPath);
+            deleteIfExists(sys, unconnectedSingletonsPath);
+            deleteIfExists(sys, longPolyaSingletonsPath);
+            deleteIfExists(sys, shortPolyaSingletonsPath);
+            deleteIfExists(sys, unconnectedPolyaSingletonsPath);
+        }
+        
+        private static void deleteIfExists(FileSystem sys, String path) throws IOException {
+            Files.deleteIfExists(sys.getPath(path));
+            Files.deleteIfExists(sys.getPath(path + NucleotideBitsWriter.INDEX_EXT));
         }
     }
     
@@ -3897,7 +4896,8 @@ public class RNABloom {
                                                 int maxErrCorrIterations,
                                                 boolean extendFragments,
                                                 int minKmerCov,
-                                                boolean keepArtifact) throws FileFormatException, IOException, InterruptedException {
+                                                boolean keepArtifact,
+                                                int pathSearchLimit) throws FileFormatException, IOException, InterruptedException {
         
         if (dbgFPR <= 0) {
             dbgFPR = graph.getDbgbf().getFPR();
@@ -3913,6 +4913,11 @@ public class RNABloom {
         
         boolean assemblePolyaTails = this.minPolyATailLengthRequired > 0;
         
+        if (connectionCache != null) {
+            // cached paths are kept, but hits and misses are reported for these reads only
+            connectionCache.resetStats();
+        }
+        
         FastxPairSequenceIterator rin = new FastxPairSequenceIterator(fastxPairs, seqPattern, qualPatternFrag);
         
         ArrayBlockingQueue<Fragment> fragments = new ArrayBlockingQueue<>(sampleSize);
@@ -3930,7 +4935,8 @@ public class RNABloom {
                                                 rightReadLengthThreshold,
                                                 extendFragments,
                                                 minKmerCov,
-                                                keepArtifact
+                                                keepArtifact,
+                                                pathSearchLimit
                                                );
             threads[i] = new Thread(workers[i]);
             threads[i].start();
@@ -4016,6 +5022,13 @@ public class RNABloom {
         System.out.println("\tdiscarded:\t" + NumberFormat.getInstance().format(numDiscarded) + "\t(" + numDiscarded*100f/numParsed + "%)");
         System.out.println("Fragments paired kmers Bloom filter FPR: " + graph.getPkbfFPR() * 100   + " %");
         System.out.println("Screening Bloom filter FPR:              " + screeningBf.getFPR() * 100 + " %");
+        
+        if (connectionCache != null) {
+            long numHits = connectionCache.getNumHits();
+            long numLookups = numHits + connectionCache.getNumMisses();
+            System.out.println("Connection cache hits:                   " + NumberFormat.getInstance().format(numHits) + 
+                    " of " + NumberFormat.getInstance().format(numLookups) + " lookups (" + (numLookups > 0 ? numHits*100f/numLookups : 0) + "%)");
+        }
 
         return fragLengthsStats;
     }
@@ -4034,23 +5047,23 @@ public class RNABloom {
         graph.updateFragmentKmerDistance(graphFile);
     }
     
-    private long assembleTranscriptsMultiThreadedHelper(String fragmentsPath, 
+    private long assembleTranscriptsMultiThreadedHelper(ArrayList<FragmentStrataSource.Stratum> strata,
                                                     TranscriptWriter writer, 
-                                                    int sampleSize, 
                                                     int numThreads, 
-                                                    boolean includeNaiveExtensions,
-                                                    boolean extendBranchFreeFragmentsOnly,
                                                     boolean keepArtifact,
                                                     boolean keepChimera,
                                                     boolean reqFragKmersConsistency,
                                                     float minKmerCov) throws InterruptedException, IOException {
         
-        NucleotideBitsReader fin = new NucleotideBitsReader(fragmentsPath);
+        // one pool of workers for all strata; the next stratum is read while the current one drains
+        FragmentStrataSource source = new FragmentStrataSource(strata, numThreads);
+        Thread sourceThread = new Thread(source);
+        sourceThread.start();
         
         TranscriptAssemblyWorker[] workers = new TranscriptAssemblyWorker[numThreads];
         Thread[] threads = new Thread[numThreads];
         for (int i=0; i<numThreads; ++i) {
-            workers[i] = new TranscriptAssemblyWorker(fin, writer, includeNaiveExtensions, extendBranchFreeFragmentsOnly, keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+            workers[i] = new TranscriptAssemblyWorker(source, writer, keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
             threads[i] = new Thread(workers[i]);
             threads[i].start();
         }
@@ -4059,7 +5072,7 @@ public class RNABloom {
             t.join();
         }
         
-        fin.close();
+        sourceThread.join();
         
         long numFragmentsParsed = 0;
         for (TranscriptAssemblyWorker w : workers) {
@@ -4192,8 +5205,6 @@ public class RNABloom {
                                                 String branchFreeExtensionThreshold,
                                                 boolean writeUracil) throws IOException, InterruptedException {
         
-        long numFragmentsParsed = 0;
-
         boolean assemblePolya = minPolyATailLengthRequired > 0;
 
         FastaWriter fout = new FastaWriter(outFasta, false);
@@ -4202,123 +5213,73 @@ public class RNABloom {
         TranscriptWriter writer = new TranscriptWriter(fout, foutShort, minTranscriptLength, maxTipLength, writeUracil);
 
 
-        boolean allowNaiveExtension = true;
+        // all strata in the order in which they are screened
+        ArrayList<FragmentStrataSource.Stratum> strata = new ArrayList<>();
         boolean extendBranchFreeOnly;
 
         if (assemblePolya) {
             // extend LONG fragments
             for (int mag=fragPaths.longPolyaFragmentsPaths.length-1; mag>=0; --mag) {
-                writer.setOutputPrefix(txptNamePrefix + "E" + mag + ".L.");
-                String fragmentsFasta = fragPaths.longPolyaFragmentsPaths[mag];
-                System.out.println("Parsing `" + fragmentsFasta + "`...");
                 extendBranchFreeOnly = isLowerStratum(COVERAGE_ORDER[mag], branchFreeExtensionThreshold);
-                numFragmentsParsed += assembleTranscriptsMultiThreadedHelper(fragmentsFasta, writer, sampleSize, numThreads,
-                                                                        allowNaiveExtension, extendBranchFreeOnly, 
-                                                                        keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+                strata.add(new FragmentStrataSource.Stratum(fragPaths.longPolyaFragmentsPaths[mag], txptNamePrefix + "E" + mag + ".L.", extendBranchFreeOnly));
             }
 
             // extend SHORT fragments
             for (int mag=fragPaths.shortPolyaFragmentsPaths.length-1; mag>=0; --mag) {
-                writer.setOutputPrefix(txptNamePrefix + "E" + mag + ".S.");
-                String fragmentsFasta = fragPaths.shortPolyaFragmentsPaths[mag];
-                System.out.println("Parsing `" + fragmentsFasta + "`...");
                 extendBranchFreeOnly = isLowerStratum(COVERAGE_ORDER[mag], branchFreeExtensionThreshold);
-                numFragmentsParsed += assembleTranscriptsMultiThreadedHelper(fragmentsFasta, writer, sampleSize, numThreads,
-                                                                        allowNaiveExtension, extendBranchFreeOnly,
-                                                                        keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+                strata.add(new FragmentStrataSource.Stratum(fragPaths.shortPolyaFragmentsPaths[mag], txptNamePrefix + "E" + mag + ".S.", extendBranchFreeOnly));
             }
 
             // extend UNCONNECTED reads
             for (int mag=fragPaths.unconnectedPolyaReadsPaths.length-1; mag>=0; --mag) {
-                writer.setOutputPrefix(txptNamePrefix + "E" + mag + ".U.");
-                String fragmentsFasta = fragPaths.unconnectedPolyaReadsPaths[mag];
-                System.out.println("Parsing `" + fragmentsFasta + "`...");
                 extendBranchFreeOnly = isLowerStratum(COVERAGE_ORDER[mag], branchFreeExtensionThreshold);
-                numFragmentsParsed += assembleTranscriptsMultiThreadedHelper(fragmentsFasta, writer, sampleSize, numThreads,
-                                                                        allowNaiveExtension, extendBranchFreeOnly,
-                                                                        keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+                strata.add(new FragmentStrataSource.Stratum(fragPaths.unconnectedPolyaReadsPaths[mag], txptNamePrefix + "E" + mag + ".U.", extendBranchFreeOnly));
             }
 
             extendBranchFreeOnly = isLowerStratum(STRATUM_01, branchFreeExtensionThreshold);
 
             // extend LONG singleton fragments
-            writer.setOutputPrefix(txptNamePrefix + "01.L.");
-            System.out.println("Parsing `" + fragPaths.longPolyaSingletonsPath + "`...");
-            numFragmentsParsed += assembleTranscriptsMultiThreadedHelper(fragPaths.longPolyaSingletonsPath, writer, sampleSize, numThreads,
-                                                                    allowNaiveExtension, extendBranchFreeOnly,
-                                                                    keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+            strata.add(new FragmentStrataSource.Stratum(fragPaths.longPolyaSingletonsPath, txptNamePrefix + "01.L.", extendBranchFreeOnly));
 
             // extend SHORT singleton fragments
-            writer.setOutputPrefix(txptNamePrefix + "01.S.");
-            System.out.println("Parsing `" + fragPaths.shortPolyaSingletonsPath + "`...");
-            numFragmentsParsed += assembleTranscriptsMultiThreadedHelper(fragPaths.shortPolyaSingletonsPath, writer, sampleSize, numThreads,
-                                                                    allowNaiveExtension, extendBranchFreeOnly,
-                                                                    keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+            strata.add(new FragmentStrataSource.Stratum(fragPaths.shortPolyaSingletonsPath, txptNamePrefix + "01.S.", extendBranchFreeOnly));
 
             // extend UNCONNECTED reads
-            writer.setOutputPrefix(txptNamePrefix + "01.U.");
-            System.out.println("Parsing `" + fragPaths.unconnectedPolyaSingletonsPath + "`...");
-            numFragmentsParsed += assembleTranscriptsMultiThreadedHelper(fragPaths.unconnectedPolyaSingletonsPath, writer, sampleSize, numThreads,
-                                                                    allowNaiveExtension, extendBranchFreeOnly,
-                                                                    keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+            strata.add(new FragmentStrataSource.Stratum(fragPaths.unconnectedPolyaSingletonsPath, txptNamePrefix + "01.U.", extendBranchFreeOnly));
         }
 
 
         // extend LONG fragments
         for (int mag=fragPaths.longFragmentsPaths.length-1; mag>=0; --mag) {
-            writer.setOutputPrefix(txptNamePrefix + "E" + mag + ".L.");
-            String fragmentsFasta = fragPaths.longFragmentsPaths[mag];
-            System.out.println("Parsing `" + fragmentsFasta + "`...");
             extendBranchFreeOnly = isLowerStratum(COVERAGE_ORDER[mag], branchFreeExtensionThreshold);
-            numFragmentsParsed += assembleTranscriptsMultiThreadedHelper(fragmentsFasta, writer, sampleSize, numThreads,
-                                                                    allowNaiveExtension, extendBranchFreeOnly, 
-                                                                    keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+            strata.add(new FragmentStrataSource.Stratum(fragPaths.longFragmentsPaths[mag], txptNamePrefix + "E" + mag + ".L.", extendBranchFreeOnly));
         }          
 
         // extend SHORT fragments
         for (int mag=fragPaths.shortFragmentsPaths.length-1; mag>=0; --mag) {
-            writer.setOutputPrefix(txptNamePrefix + "E" + mag + ".S.");
-            String fragmentsFasta = fragPaths.shortFragmentsPaths[mag];
-            System.out.println("Parsing `" + fragmentsFasta + "`...");
             extendBranchFreeOnly = isLowerStratum(COVERAGE_ORDER[mag], branchFreeExtensionThreshold);
-            numFragmentsParsed += assembleTranscriptsMultiThreadedHelper(fragmentsFasta, writer, sampleSize, numThreads,
-                                                                    allowNaiveExtension, extendBranchFreeOnly,
-                                                                    keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+            strata.add(new FragmentStrataSource.Stratum(fragPaths.shortFragmentsPaths[mag], txptNamePrefix + "E" + mag + ".S.", extendBranchFreeOnly));
         }
 
         // extend UNCONNECTED reads
         for (int mag=fragPaths.unconnectedReadsPaths.length-1; mag>=0; --mag) {
-            writer.setOutputPrefix(txptNamePrefix + "E" + mag + ".U.");
-            String fragmentsFasta = fragPaths.unconnectedReadsPaths[mag];
-            System.out.println("Parsing `" + fragmentsFasta + "`...");
             extendBranchFreeOnly = isLowerStratum(COVERAGE_ORDER[mag], branchFreeExtensionThreshold);
-            numFragmentsParsed += assembleTranscriptsMultiThreadedHelper(fragmentsFasta, writer, sampleSize, numThreads,
-                                                                    allowNaiveExtension, extendBranchFreeOnly,
-                                                                    keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+            strata.add(new FragmentStrataSource.Stratum(fragPaths.unconnectedReadsPaths[mag], txptNamePrefix + "E" + mag + ".U.", extendBranchFreeOnly));
         }
 
         extendBranchFreeOnly = isLowerStratum(STRATUM_01, branchFreeExtensionThreshold);
 
         // extend LONG singleton fragments
-        writer.setOutputPrefix(txptNamePrefix + "01.L.");
-        System.out.println("Parsing `" + fragPaths.longSingletonsPath + "`...");
-        numFragmentsParsed += assembleTranscriptsMultiThreadedHelper(fragPaths.longSingletonsPath, writer, sampleSize, numThreads,
-                                                                allowNaiveExtension, extendBranchFreeOnly,
-                                                                keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+        strata.add(new FragmentStrataSource.Stratum(fragPaths.longSingletonsPath, txptNamePrefix + "01.L.", extendBranchFreeOnly));
 
         // extend SHORT singleton fragments
-        writer.setOutputPrefix(txptNamePrefix + "01.S.");
-        System.out.println("Parsing `" + fragPaths.shortSingletonsPath + "`...");
-        numFragmentsParsed += assembleTranscriptsMultiThreadedHelper(fragPaths.shortSingletonsPath, writer, sampleSize, numThreads,
-                                                                allowNaiveExtension, extendBranchFreeOnly,
-                                                                keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+        strata.add(new FragmentStrataSource.Stratum(fragPaths.shortSingletonsPath, txptNamePrefix + "01.S.", extendBranchFreeOnly));
 
         // extend UNCONNECTED reads
-        writer.setOutputPrefix(txptNamePrefix + "01.U.");
-        System.out.println("Parsing `" + fragPaths.unconnectedSingletonsPath + "`...");
-        numFragmentsParsed += assembleTranscriptsMultiThreadedHelper(fragPaths.unconnectedSingletonsPath, writer, sampleSize, numThreads,
-                                                                allowNaiveExtension, extendBranchFreeOnly,
-                                                                keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
+        strata.add(new FragmentStrataSource.Stratum(fragPaths.unconnectedSingletonsPath, txptNamePrefix + "01.U.", extendBranchFreeOnly));
+
+        long numFragmentsParsed = assembleTranscriptsMultiThreadedHelper(strata, writer, numThreads,
+                                                                    keepArtifact, keepChimera, reqFragKmersConsistency, minKmerCov);
 
         fout.close();
         foutShort.close();
@@ -4467,30 +5428,20 @@ public class RNABloom {
         return true;
     }
     
+    private final static long LONG_READ_SORT_MEMORY = 256 * NUM_BYTES_1MB;
+    
     private static void correctLongReads(RNABloom assembler, 
-            String[] readFastxPaths, String[][] correctedLongReadFileNames, String repeatReadsFileName,
+            String[] readFastxPaths, String sortedLongReadsPath, String repeatReadsFileName,
             int maxErrCorrItr, int minKmerCov, int numThreads, int sampleSize, int minSeqLen, boolean reverseComplement, boolean trimArtifact) throws InterruptedException, IOException, Exception {
         
         /* set up the file writers */
-        final int numCovStrata = COVERAGE_ORDER.length;
-        final int numLenStrata = LENGTH_STRATUM_NAMES.length;
-        FastaWriter[][] writers = new FastaWriter[numCovStrata][numLenStrata];
-        for (int c=0; c<numCovStrata; ++c) {
-            for (int l=0; l<numLenStrata; ++l) {
-                writers[c][l] = new FastaWriter(correctedLongReadFileNames[c][l], true);
-            }
-        }
-        
+        SortedLongReadsWriter sortedWriter = new SortedLongReadsWriter(sortedLongReadsPath, LONG_READ_SORT_MEMORY);
         FastaWriter repeatReadsWriter = new FastaWriter(repeatReadsFileName, true);
         
-        assembler.correctLongReadsMultithreaded(readFastxPaths, writers, repeatReadsWriter, minKmerCov, maxErrCorrItr, numThreads, sampleSize, minSeqLen, reverseComplement, trimArtifact);
-        
-        for (int i=0; i<writers.length; ++i) {
-            for (int j=0; j<writers[i].length; ++j) {
-                writers[i][j].close();
-            }
-        }
+        assembler.correctLongReadsMultithreaded(readFastxPaths, sortedWriter, repeatReadsWriter, minKmerCov, maxErrCorrItr, numThreads, sampleSize, minSeqLen, reverseComplement, trimArtifact);
         
+        // merge the sorted runs
+        sortedWriter.close();
         repeatReadsWriter.close();
     }
     
@@ -4520,9 +5471,10 @@ public class RNABloom {
     }
     
     private static void clusterLongReads(RNABloom assembler, 
-            String[][] correctedLongReadFileNames, String clusteredLongReadsDirectory,
+            String sortedLongReadsPath, String clusteredLongReadsDirectory,
             int sketchSize, int numThreads, boolean useCompressedMinimizers,
-            int minimizerSize, int minimizerWindowSize, float minSketchOverlapPercentage, int minSketchOverlapNumber) throws IOException, InterruptedException {
+            int minimizerSize, int minimizerWindowSize, float minSketchOverlapPercentage, int minSketchOverlapNumber,
+            boolean parallel) throws IOException, InterruptedException {
         
         File outdir = new File(clusteredLongReadsDirectory);
         if (outdir.exists()) {
@@ -4536,8 +5488,14 @@ public class RNABloom {
         
         assembler.destroyAllBf();
         
-        assembler.clusterLongReads(correctedLongReadFileNames, clusteredLongReadsDirectory, sketchSize, numThreads, useCompressedMinimizers,
-                minimizerSize, minimizerWindowSize, minSketchOverlapPercentage, minSketchOverlapNumber);
+        if (parallel) {
+            assembler.clusterLongReadsParallel(sortedLongReadsPath, clusteredLongReadsDirectory, sketchSize, numThreads, useCompressedMinimizers,
+                    minimizerSize, minimizerWindowSize, minSketchOverlapPercentage, minSketchOverlapNumber);
+        }
+        else {
+            assembler.clusterLongReads(sortedLongReadsPath, clusteredLongReadsDirectory, sketchSize, numThreads, useCompressedMinimizers,
+                    minimizerSize, minimizerWindowSize, minSketchOverlapPercentage, minSketchOverlapNumber);
+        }
     }
     
     private static boolean assembleLongReads(RNABloom assembler, 
@@ -4545,7 +5503,8 @@ public class RNABloom {
             String assembledLongReadsCombined,
             int numThreads, boolean forceOverwrite,
             boolean writeUracil, String minimapOptions, int minKmerCov, String txptNamePrefix, 
-            boolean stranded, int minTranscriptLength, boolean removeArtifacts, boolean usePacBioPreset) throws IOException {
+            boolean stranded, int minTranscriptLength, boolean removeArtifacts, boolean usePacBioPreset,
+            int maxPoaClusterSize) throws IOException, InterruptedException {
         
         File outdir = new File(assembledLongReadsDirectory);
         if (outdir.exists()) {
@@ -4560,7 +5519,8 @@ public class RNABloom {
         }
         
         return assembler.assembleLongReads(clusteredLongReadsDirectory, assembledLongReadsDirectory, assembledLongReadsCombined,
-                numThreads, writeUracil, minimapOptions, minKmerCov, txptNamePrefix, stranded, minTranscriptLength, removeArtifacts, usePacBioPreset);
+                numThreads, writeUracil, minimapOptions, minKmerCov, txptNamePrefix, stranded, minTranscriptLength, removeArtifacts, usePacBioPreset,
+                maxPoaClusterSize);
     }
     
     private static boolean assembleUnclusteredLongReads(RNABloom assembler,
@@ -4591,11 +5551,109 @@ public class RNABloom {
                                     usePacBioPreset);
     }
     
+    private interface PooledSampleTask {
+        void run(String sampleName, int numThreads) throws Exception;
+    }
+    
+    private static long getPooledSampleVolume(ArrayList<String> lefts, ArrayList<String> rights) {
+        long volume = 0;
+        for (String path : lefts) {
+            volume += new File(path).length();
+        }
+        for (String path : rights) {
+            volume += new File(path).length();
+        }
+        return volume;
+    }
+    
+    /**
+     * Run `task` for every sample with up to `numJobs` samples at a time.
+     * Samples are started largest first, and every sample gets a share of `numThreads` in
+     * proportion to its volume; a sample only starts once its threads are free.
+     */
+    /**
+     * Concurrent samples have their own screening and fragment paired k-mers Bloom filters, and also their own
+     * DBG and read paired k-mers Bloom filters if `ownDbgbf`, on top of the Bloom filters of the pooled graph.
+     * @return the number of samples that fit within `maxBfMem` (at most `numJobs`)
+     */
+    private static int getNumPoolJobsWithinMemory(int numJobs, float maxBfMem, float dbgGB, float cbfGB, float pkbfGB, float sbfGB, boolean ownDbgbf) {
+        if (numJobs <= 1) {
+            return numJobs;
+        }
+        
+        float sharedGB = dbgGB + cbfGB + pkbfGB;
+        float sampleGB = sbfGB + pkbfGB + (ownDbgbf ? dbgGB + pkbfGB : 0);
+        
+        // one sample at a time reuses the filters of the pooled graph, which is always allowed
+        float budgetGB = Math.max(maxBfMem, sharedGB + sbfGB + pkbfGB);
+        int numJobsFit = (int) Math.max(1, Math.floor((budgetGB - sharedGB) / sampleGB));
+        
+        if (numJobs > numJobsFit) {
+            System.out.println("WARNING: Bloom filters of " + numJobs + " concurrent samples need " + (sharedGB + numJobs * sampleGB) + 
+                    " GB, which exceeds " + budgetGB + " GB! Assembling " + numJobsFit + " sample(s) at a time.");
+            return numJobsFit;
+        }
+        
+        return numJobs;
+    }
+    
+    private static void runPooledSamples(String[] sampleNames, long[] sampleVolumes, 
+            int numThreads, int numJobs, PooledSampleTask task) throws InterruptedException {
+        
+        int numSamples = sampleNames.length;
+        numJobs = Math.max(1, Math.min(numJobs, numSamples));
+        
+        long totalVolume = 0;
+        for (long v : sampleVolumes) {
+            totalVolume += v;
+        }
+        
+        Integer[] order = new Integer[numSamples];
+        for (int i=0; i<numSamples; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(sampleVolumes[b], sampleVolumes[a]));
+        
+        final Semaphore threadPermits = new Semaphore(numThreads, true);
+        ExecutorService service = Executors.newFixedThreadPool(numJobs);
+        ArrayList<Future<?>> futures = new ArrayList<>(numSamples);
+        
+        for (int i : order) {
+            // an average sample gets `numThreads/numJobs` threads
+            double share = totalVolume > 0 ? (double) sampleVolumes[i] * numSamples / totalVolume : 1;
+            final int sampleNumThreads = (int) Math.max(1, Math.min(numThreads, Math.round(share * numThreads / numJobs)));
+            final String sampleName = sampleNames[i];
+            
+            futures.add(service.submit(() -> {
+                threadPermits.acquire(sampleNumThreads);
+                try {
+                    task.run(sampleName, sampleNumThreads);
+                }
+                finally {
+                    threadPermits.release(sampleNumThreads);
+                }
+                return null;
+            }));
+        }
+        
+        service.shutdown();
+        service.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            }
+            catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+    
     private static void assembleFragments(RNABloom assembler, boolean forceOverwrite,
             String outdir, String name, FastxFilePair[] fqPairs,
             long sbfSize, long pkbfSize, int sbfNumHash, int pkbfNumHash, int numThreads,
             int bound, int minOverlap, int sampleSize, int maxErrCorrItr, boolean extendFragments,
-            int minKmerCoverage, boolean keepArtifact) throws FileFormatException, IOException, InterruptedException {
+            int minKmerCoverage, boolean keepArtifact, int pathSearchLimit) throws FileFormatException, IOException, InterruptedException {
 
         final File fragsDoneStamp = new File(outdir + File.separator + STAMP_FRAGMENTS_DONE);
         
@@ -4615,7 +5673,8 @@ public class RNABloom {
                                                                         maxErrCorrItr,
                                                                         extendFragments,
                                                                         minKmerCoverage,
-                                                                        keepArtifact);
+                                                                        keepArtifact,
+                                                                        pathSearchLimit);
 
             String fragStatsFile = outdir + File.separator + name + ".fragstats";
             String graphFile = outdir + File.separator + name + ".graph";
@@ -4648,48 +5707,52 @@ public class RNABloom {
                 foutLong.write(header, seq);
             }
             else {
-                foutShort.write(header, seq);
-            }
-        }
-        foutLong.close();
-        foutShort.close();
-        fin.close();
-    }
-    
-    private static boolean mergePooledAssemblies(String outdir, String assemblyName, String[] sampleNames,
-            String txptFileExt, String shortTxptFileExt, String txptNamePrefix,
-            int k, int numThreads, boolean stranded, int maxIndelSize, int maxTipLength,
-            float percentIdentity, boolean removeArtifacts, int txptLengthThreshold, boolean writeUracil,
-            boolean usePacBioPreset) throws IOException {
-        
-        String concatenatedFasta = outdir + File.separator + assemblyName + ".all" + FASTA_EXT;
-        String reducedFasta      = outdir + File.separator + assemblyName + ".all_nr" + FASTA_EXT;
-        String tmpPrefix         = outdir + File.separator + assemblyName + ".tmp";
-        String outLongFasta      = outdir + File.separator + assemblyName + ".transcripts" + FASTA_EXT;
-        String outShortFasta     = outdir + File.separator + assemblyName + ".transcripts.short" + FASTA_EXT;
-
-        // combine assembly files
-        FastaWriter fout = new FastaWriter(concatenatedFasta, false);
-        FastaReader fin;
-        for (String sampleName : sampleNames) {
-            String longTxptsPath  = outdir + File.separator + sampleName + File.separator + sampleName + ".transcripts" + txptFileExt;
-            String shortTxptsPath = outdir + File.separator + sampleName + File.separator + sampleName + ".transcripts" + shortTxptFileExt;
-            
-            fin = new FastaReader(longTxptsPath);
-            while(fin.hasNext()) {
-                String[] nameCommentSeq = fin.nextWithComment();
-                //String comment = nameCommentSeq[1];
-                String seq = nameCommentSeq[2];
-
-                if (writeUracil) {
-                    seq = seq.replace('T', 'U');
-                }
-
-                fout.write(txptNamePrefix + sampleName + "_" + nameCommentSeq[0], seq);
+                foutShort.write(header, seq);
+            }
+        }
+        foutLong.close();
+        foutShort.close();
+        fin.close();
+    }
+    
+    private static final int POOLED_MERGE_GROUP_SIZE = 8;
+    
+    /**
+     * Reduce the concatenation of several FASTA files into one non-redundant FASTA file.
+     * The node is skipped if its stamp exists and records the same inputs, ie. it had completed previously.
+     * @param inFastas
+     * @param namePrefixes  prefix for sequence names from each input, or null to keep names as is
+     * @param writeUracil
+     * @param mergeDir      directory of intermediate files
+     * @param nodeName
+     * @param nodeInputs    description of all samples merged in this node
+     * @return path of the reduced FASTA file, or null if the merge failed
+     */
+    private static String reduceMergeNode(String[] inFastas, String[] namePrefixes, boolean writeUracil,
+            String mergeDir, String nodeName, String nodeInputs,
+            int k, int numThreads, boolean stranded, int maxIndelSize, int maxTipLength,
+            float percentIdentity, boolean removeArtifacts, boolean usePacBioPreset) throws IOException {
+        
+        String nodeFasta = mergeDir + File.separator + nodeName + FASTA_EXT;
+        File nodeDoneStamp = new File(mergeDir + File.separator + nodeName + ".done");
+        
+        if (nodeDoneStamp.exists()) {
+            String stampInputs = new String(Files.readAllBytes(nodeDoneStamp.toPath()));
+            if (stampInputs.equals(nodeInputs)) {
+                return nodeFasta;
             }
-            fin.close();
             
-            fin = new FastaReader(shortTxptsPath);
+            // the samples have changed since this node was merged
+            nodeDoneStamp.delete();
+        }
+        
+        String concatenatedFasta = mergeDir + File.separator + nodeName + ".all" + FASTA_EXT;
+        String reducedFasta      = mergeDir + File.separator + nodeName + ".all_nr" + FASTA_EXT;
+        String tmpPrefix         = mergeDir + File.separator + nodeName + ".tmp";
+        
+        FastaWriter fout = new FastaWriter(concatenatedFasta, false);
+        for (int i=0; i<inFastas.length; ++i) {
+            FastaReader fin = new FastaReader(inFastas[i]);
             while(fin.hasNext()) {
                 String[] nameCommentSeq = fin.nextWithComment();
                 //String comment = nameCommentSeq[1];
@@ -4699,26 +5762,159 @@ public class RNABloom {
                     seq = seq.replace('T', 'U');
                 }
 
-                fout.write(txptNamePrefix + sampleName + "_" + nameCommentSeq[0], seq);
+                fout.write(namePrefixes == null ? nameCommentSeq[0] : namePrefixes[i] + nameCommentSeq[0], seq);
             }
             fin.close();
         }
         fout.close();
-
+        
         boolean ok = overlapLayout(concatenatedFasta, tmpPrefix, reducedFasta, numThreads,
                         stranded, "-r " + Integer.toString(maxIndelSize), maxTipLength, percentIdentity, 2*k,
                         maxIndelSize, removeArtifacts, 1, usePacBioPreset);
         
-        splitFastaByLength(reducedFasta, outLongFasta, outShortFasta, txptLengthThreshold);
+        if (!ok) {
+            System.out.println("ERROR: Cannot merge `" + nodeName + "`");
+            return null;
+        }
+        
+        // the layout may be a symbolic link to the concatenated sequences
+        Files.copy(FileSystems.getDefault().getPath(reducedFasta), FileSystems.getDefault().getPath(nodeFasta), 
+                StandardCopyOption.REPLACE_EXISTING);
         
         Files.deleteIfExists(FileSystems.getDefault().getPath(concatenatedFasta));
         Files.deleteIfExists(FileSystems.getDefault().getPath(reducedFasta));
         
-        return ok;
+        FileWriter writer = new FileWriter(nodeDoneStamp, false);
+        writer.write(nodeInputs);
+        writer.close();
+        
+        return nodeFasta;
+    }
+    
+    /**
+     * Merge the assemblies of all samples in a tree.
+     * Groups of samples are reduced in parallel and their non-redundant sets are then merged
+     * pairwise up the tree; all nodes of a level share the thread budget. Every node is
+     * check-pointed so that an interrupted merge resumes from the last completed nodes.
+     */
+    private static boolean mergePooledAssemblies(String outdir, String assemblyName, String[] sampleNames,
+            String txptFileExt, String shortTxptFileExt, String txptNamePrefix,
+            int k, int numThreads, boolean stranded, int maxIndelSize, int maxTipLength,
+            float percentIdentity, boolean removeArtifacts, int txptLengthThreshold, boolean writeUracil,
+            boolean usePacBioPreset, boolean forceOverwrite) throws IOException, InterruptedException {
+        
+        String mergeDir          = outdir + File.separator + assemblyName + ".merge";
+        String outLongFasta      = outdir + File.separator + assemblyName + ".transcripts" + FASTA_EXT;
+        String outShortFasta     = outdir + File.separator + assemblyName + ".transcripts.short" + FASTA_EXT;
+        
+        File mergeDirFile = new File(mergeDir);
+        if (forceOverwrite) {
+            deleteMergeDirectory(mergeDirFile);
+        }
+        mergeDirFile.mkdirs();
+        
+        // leaves: groups of samples
+        int numGroups = (sampleNames.length + POOLED_MERGE_GROUP_SIZE - 1) / POOLED_MERGE_GROUP_SIZE;
+        String[][] nodeInputs = new String[numGroups][];
+        String[][] nodePrefixes = new String[numGroups][];
+        String[] nodeDescriptions = new String[numGroups];
+        for (int g=0; g<numGroups; ++g) {
+            int start = g * POOLED_MERGE_GROUP_SIZE;
+            int end = Math.min(sampleNames.length, start + POOLED_MERGE_GROUP_SIZE);
+            String[] inputs = new String[2 * (end - start)];
+            String[] prefixes = new String[inputs.length];
+            for (int i=start; i<end; ++i) {
+                String sampleName = sampleNames[i];
+                String samplePrefix = outdir + File.separator + sampleName + File.separator + sampleName + ".transcripts";
+                int j = 2 * (i - start);
+                inputs[j] = samplePrefix + txptFileExt;
+                inputs[j+1] = samplePrefix + shortTxptFileExt;
+                prefixes[j] = prefixes[j+1] = txptNamePrefix + sampleName + "_";
+            }
+            nodeInputs[g] = inputs;
+            nodePrefixes[g] = prefixes;
+            
+            StringBuilder sb = new StringBuilder();
+            for (int j=0; j<inputs.length; ++j) {
+                sb.append(prefixes[j]).append('\t').append(inputs[j]).append('\n');
+            }
+            nodeDescriptions[g] = sb.toString();
+        }
+        
+        String[] levelOutputs = null;
+        String[] levelDescriptions = nodeDescriptions;
+        
+        for (int level=0; levelOutputs == null || levelOutputs.length > 1; ++level) {
+            if (levelOutputs != null) {
+                // pair up the outputs of the previous level; an odd one out is carried over as is
+                int numNodes = (levelOutputs.length + 1) / 2;
+                nodeInputs = new String[numNodes][];
+                nodePrefixes = new String[numNodes][];
+                nodeDescriptions = new String[numNodes];
+                for (int n=0; n<numNodes; ++n) {
+                    nodeInputs[n] = Arrays.copyOfRange(levelOutputs, 2*n, Math.min(levelOutputs.length, 2*n + 2));
+                    nodeDescriptions[n] = String.join("", Arrays.copyOfRange(levelDescriptions, 2*n, Math.min(levelDescriptions.length, 2*n + 2)));
+                }
+            }
+            
+            final int numNodes = nodeInputs.length;
+            final int numJobs = Math.max(1, Math.min(numNodes, numThreads));
+            final int numThreadsPerJob = Math.max(1, numThreads / numJobs);
+            final String[][] inputs = nodeInputs;
+            final String[][] prefixes = nodePrefixes;
+            final String[] descriptions = nodeDescriptions;
+            final String[] outputs = new String[numNodes];
+            final int currentLevel = level;
+            
+            System.out.println("Merging level " + level + ": " + numNodes + " node(s), " + numJobs + " at a time...");
+            
+            parallelFor(numNodes, numJobs, 1, n -> {
+                if (inputs[n].length == 1 && prefixes[n] == null) {
+                    outputs[n] = inputs[n][0];
+                    return;
+                }
+                
+                try {
+                    outputs[n] = reduceMergeNode(inputs[n], prefixes[n], writeUracil && currentLevel == 0,
+                            mergeDir, "L" + currentLevel + "_" + n, descriptions[n],
+                            k, numThreadsPerJob, stranded, maxIndelSize, maxTipLength,
+                            percentIdentity, removeArtifacts, usePacBioPreset);
+                }
+                catch (IOException e) {
+                    // reported as a failed node below
+                    e.printStackTrace();
+                }
+            });
+            
+            for (String out : outputs) {
+                if (out == null) {
+                    return false;
+                }
+            }
+            
+            levelOutputs = outputs;
+            levelDescriptions = descriptions;
+        }
+        
+        splitFastaByLength(levelOutputs[0], outLongFasta, outShortFasta, txptLengthThreshold);
+        
+        deleteMergeDirectory(mergeDirFile);
+        
+        return true;
+    }
+    
+    private static void deleteMergeDirectory(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                Files.deleteIfExists(f.toPath());
+            }
+        }
+        Files.deleteIfExists(dir.toPath());
     }
     
     private static void assembleTranscriptsNR(RNABloom assembler, String outdir, String name, boolean forceOverwrite,
-            int numThreads, boolean keepArtifact, int minTranscriptLength, boolean usePacBioPreset) throws IOException {
+            int numThreads, boolean keepArtifact, int minTranscriptLength, boolean usePacBioPreset) throws IOException, InterruptedException {
         
         final File nrTxptsDoneStamp = new File(outdir + File.separator + STAMP_TRANSCRIPTS_NR_DONE);
 
@@ -4873,36 +6069,94 @@ public class RNABloom {
         }
     }
     
+    /**
+     * Write transcripts that are not contained in longer transcripts.
+     * @param names
+     * @param seqs
+     * @param outFasta
+     * @param numThreads
+     * @return number of contained transcripts removed
+     */
+    private int writeNonContainedTranscripts(ArrayList<String> names, ArrayList<String> seqs,
+            String outFasta, int numThreads) throws IOException, InterruptedException {
+        
+        int numSeqs = seqs.size();
+        
+        // longest first so that a transcript can only be contained in one before it
+        Integer[] order = new Integer[numSeqs];
+        for (int i=0; i<numSeqs; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(seqs.get(b).length(), seqs.get(a).length()));
+        
+        ArrayList<String> sortedSeqs = new ArrayList<>(numSeqs);
+        for (int i : order) {
+            sortedSeqs.add(seqs.get(i));
+        }
+        
+        ContainmentFilter filter = new ContainmentFilter(sortedSeqs, strandSpecific, 0.5f,
+                percentIdentity, maxTipLength, maxIndelSize);
+        
+        parallelFor(numSeqs, numThreads, filter::sketch);
+        filter.buildIndex();
+        
+        boolean[] contained = new boolean[numSeqs];
+        parallelFor(numSeqs, numThreads, i -> contained[order[i]] = filter.isContained(i));
+        
+        // keep the input order
+        int numContained = 0;
+        FastaWriter fout = new FastaWriter(outFasta, false);
+        for (int i=0; i<numSeqs; ++i) {
+            if (contained[i]) {
+                ++numContained;
+            }
+            else {
+                fout.write(names.get(i), seqs.get(i));
+            }
+        }
+        fout.close();
+        
+        return numContained;
+    }
+    
     private boolean generateNonRedundantTranscripts(String inLongFasta, String inShortFasta,
             String tmpPrefix, String outLongFasta, String outShortFasta,
             int numThreads, boolean removeArtifacts, int txptLengthThreshold,
-            boolean usePacBioPreset) throws IOException {
+            boolean usePacBioPreset) throws IOException, InterruptedException {
         
         String concatenatedFasta = tmpPrefix + "_ava_cat" + FASTA_EXT;
         String reducedFasta = tmpPrefix + "_ava_cat_nr" + FASTA_EXT;
 
         // combine assembly files
-        FastaWriter fout = new FastaWriter(concatenatedFasta, false);
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<String> seqs = new ArrayList<>();
         
-        FastaReader fin = new FastaReader(inLongFasta);
-        while(fin.hasNext()) {
-            String[] nameCommentSeq = fin.nextWithComment();
-            //String comment = nameCommentSeq[1];
-            String seq = nameCommentSeq[2];
-            fout.write(nameCommentSeq[0], seq);
+        for (String inFasta : new String[]{inLongFasta, inShortFasta}) {
+            FastaReader fin = new FastaReader(inFasta);
+            while(fin.hasNext()) {
+                String[] nameCommentSeq = fin.nextWithComment();
+                //String comment = nameCommentSeq[1];
+                names.add(nameCommentSeq[0]);
+                seqs.add(nameCommentSeq[2]);
+            }
+            fin.close();
         }
-        fin.close();
         
-        fin = new FastaReader(inShortFasta);
-        while(fin.hasNext()) {
-            String[] nameCommentSeq = fin.nextWithComment();
-            //String comment = nameCommentSeq[1];
-            String seq = nameCommentSeq[2];
-            fout.write(nameCommentSeq[0], seq);
+        if (removeContainedTranscripts) {
+            // remove contained transcripts before the all-vs-all overlap
+            int numContained = writeNonContainedTranscripts(names, seqs, concatenatedFasta, numThreads);
+            System.out.println("Removed " + NumberFormat.getInstance().format(numContained) + " of " + 
+                    NumberFormat.getInstance().format(seqs.size()) + " transcripts contained in longer transcripts.");
         }
-        fin.close();
-        
-        fout.close();
+        else {
+            FastaWriter fout = new FastaWriter(concatenatedFasta, false);
+            for (int i=0; i<seqs.size(); ++i) {
+                fout.write(names.get(i), seqs.get(i));
+            }
+            fout.close();
+        }
+        names = null;
+        seqs = null;
         
         boolean ok = overlapLayout(concatenatedFasta, tmpPrefix, reducedFasta, 
                         numThreads, strandSpecific, "-r " + Integer.toString(maxIndelSize),
@@ -5294,6 +6548,34 @@ public class RNABloom {
                                     .argName("DECIMAL")
                                     .build();
         options.addOption(optPkbfMem);
+        
+        Option optOutOfCore = Option.builder("outofcore")
+                                    .desc("store Bloom filters in memory-mapped files under this directory so that they may exceed physical memory [false]")
+                                    .hasArg(true)
+                                    .argName("DIR")
+                                    .build();
+        options.addOption(optOutOfCore);
+        
+        Option optShard = Option.builder("shard")
+                                    .desc("construct the graph from the input reads as one shard of a larger graph and stop after Stage 1 [false]\n(Requires `-nk` or `-mem`, so that Bloom filters are identical in size across shards; cannot be used with `-cfp`, `-branchbf`, or `-unitigs`)")
+                                    .hasArg(false)
+                                    .build();
+        options.addOption(optShard);
+        
+        Option optMergeShards = Option.builder("mergeshards")
+                                    .desc("merge the graphs of shards into the graph of this assembly and exit\n(Cannot be used with `-cfp`, `-branchbf`, or `-unitigs`, which are built from the reads and are not available for a merged graph)")
+                                    .hasArgs()
+                                    .argName("FILE")
+                                    .build();
+        options.addOption(optMergeShards);
+        
+        final String optMergeCountsDefault = "sum";
+        Option optMergeCounts = Option.builder("mergecounts")
+                                    .desc("merge k-mer counts of shards by their `sum` or `max` [" + optMergeCountsDefault + "]")
+                                    .hasArg(true)
+                                    .argName("STR")
+                                    .build();
+        options.addOption(optMergeCounts);
 
         final String optFprDefault = "0.01";
         Option optFpr = Option.builder("fpr")
@@ -5310,6 +6592,24 @@ public class RNABloom {
                                     .build();
         options.addOption(optSaveBf);  
         
+        Option optUnitigs = Option.builder("unitigs")
+                                    .desc("index unitigs of the graph after stage 1 to speed up graph traversal [false]")
+                                    .hasArg(false)
+                                    .build();
+        options.addOption(optUnitigs);
+        
+        Option optMarkBranches = Option.builder("branchbf")
+                                    .desc("mark branching k-mers in a Bloom filter after stage 1 to speed up branch checks [false]")
+                                    .hasArg(false)
+                                    .build();
+        options.addOption(optMarkBranches);
+        
+        Option optCfp = Option.builder("cfp")
+                                    .desc("remove critical false positives of the graph after stage 1 [false]")
+                                    .hasArg(false)
+                                    .build();
+        options.addOption(optCfp);
+        
         final String optTipLengthDefault = "5";
         Option optTipLength = Option.builder("tiplength")
                                     .desc("maximum number of bases in a tip [" + optTipLengthDefault + "]")
@@ -5382,6 +6682,12 @@ public class RNABloom {
                                     .hasArg(false)
                                     .build();
         options.addOption(optNoReduce);
+        
+        Option optNoContain = Option.builder("nocontain")
+                                    .desc("do not remove contained transcripts before the overlap step of redundancy reduction [false]")
+                                    .hasArg(false)
+                                    .build();
+        options.addOption(optNoContain);
 
         Option optMergePool = Option.builder("mergepool")
                                     .desc("merge pooled assemblies [false]\n(Requires `-pool`; overrides `-norr`)")
@@ -5389,6 +6695,20 @@ public class RNABloom {
                                     .build();
         options.addOption(optMergePool);
         
+        final String optPoolJobsDefault = "1";
+        Option optPoolJobs = Option.builder("pooljobs")
+                                    .desc("number of pooled samples to assemble concurrently [" + optPoolJobsDefault + "]\n(Requires `-pool`; each concurrent sample uses its own screening, paired k-mers, and DBG Bloom filters, so fewer samples are assembled at a time if they do not fit in `-mem`)")
+                                    .hasArg(true)
+                                    .argName("INT")
+                                    .build();
+        options.addOption(optPoolJobs);
+        
+        Option optPoolPipeline = Option.builder("pipeline")
+                                    .desc("assemble transcripts for each pooled sample as soon as its fragments are assembled [false]\n(Requires `-pool` and `-pooljobs` > 1)")
+                                    .hasArg(false)
+                                    .build();
+        options.addOption(optPoolPipeline);
+        
         final String optOverlapDefault = "10";
         Option optOverlap = Option.builder("overlap")
                                     .desc("minimum number of overlapping bases between reads [" + optOverlapDefault + "]")
@@ -5405,6 +6725,22 @@ public class RNABloom {
                                     .build();
         options.addOption(optBound);
         
+        final String optPathSearchDefault = "0";
+        Option optPathSearch = Option.builder("pathsearch")
+                                    .desc("maximum number of k-mers visited in best-first path search between read mates; 0 uses greedy extension [" + optPathSearchDefault + "]")
+                                    .hasArg(true)
+                                    .argName("INT")
+                                    .build();
+        options.addOption(optPathSearch);
+        
+        final String optPathCacheDefault = "100000";
+        Option optPathCache = Option.builder("pathcache")
+                                    .desc("maximum number of cached paths from best-first path search between read mates [" + optPathCacheDefault + "]")
+                                    .hasArg(true)
+                                    .argName("INT")
+                                    .build();
+        options.addOption(optPathCache);
+        
         Option optExtend = Option.builder("extend")
                                     .desc("extend fragments outward during fragment reconstruction [false]")
                                     .hasArg(false)
@@ -5539,6 +6875,20 @@ public class RNABloom {
                                     .argName("INT")
                                     .build();
         options.addOption(optSketchOverlapNumber);
+        
+        Option optParallelClustering = Option.builder("pclust")
+                                    .desc("cluster long reads in parallel by shared minimizers [false]\n(Requires `-long`)")
+                                    .hasArg(false)
+                                    .build();
+        options.addOption(optParallelClustering);
+        
+        final String optMaxPoaClusterSizeDefault = "20";
+        Option optMaxPoaClusterSize = Option.builder("poa")
+                                    .desc("max. number of reads in a cluster for in-process POA consensus instead of racon; 0 to disable [" + optMaxPoaClusterSizeDefault + "]\n(Requires `-long`)")
+                                    .hasArg(true)
+                                    .argName("INT")
+                                    .build();
+        options.addOption(optMaxPoaClusterSize);
         */
         
         Option optHelp = Option.builder("h")
@@ -5644,6 +6994,35 @@ public class RNABloom {
                 }
             }
                         
+            if (line.hasOption(optMergeShards.getOpt())) {
+                if (line.hasOption(optCfp.getOpt()) || line.hasOption(optMarkBranches.getOpt()) || line.hasOption(optUnitigs.getOpt())) {
+                    exitOnError("Option `-mergeshards` cannot be used with options `-cfp`, `-branchbf`, or `-unitigs`");
+                }
+                
+                String[] shardGraphPaths = line.getOptionValues(optMergeShards.getOpt());
+                String mergeCounts = line.getOptionValue(optMergeCounts.getOpt(), optMergeCountsDefault);
+                if (!mergeCounts.equals("sum") && !mergeCounts.equals("max")) {
+                    exitOnError("Unknown method for merging k-mer counts, \"" + mergeCounts + "\"");
+                }
+                
+                File[] shardGraphFiles = new File[shardGraphPaths.length];
+                for (int i=0; i<shardGraphPaths.length; ++i) {
+                    shardGraphFiles[i] = new File(shardGraphPaths[i]);
+                    if (!shardGraphFiles[i].isFile()) {
+                        exitOnError("Cannot find graph of shard `" + shardGraphPaths[i] + "`");
+                    }
+                }
+                
+                System.out.println("Merging graphs of " + shardGraphFiles.length + " shards...");
+                timer.start();
+                
+                BloomFilterDeBruijnGraph.mergeShards(shardGraphFiles, new File(graphFile), mergeCounts.equals("sum"));
+                touch(dbgDoneStamp);
+                
+                System.out.println("Merged graph saved at `" + graphFile + "` in " + MyTimer.hmsFormat(timer.elapsedMillis()));
+                System.exit(0);
+            }
+            
             String[] leftReadPaths = line.getOptionValues(optLeftReads.getOpt());
             String[] rightReadPaths = line.getOptionValues(optRightReads.getOpt());
             String[] longReadPaths = line.getOptionValues(optLongReads.getOpt());
@@ -5651,6 +7030,7 @@ public class RNABloom {
                         
             final String pooledReadsListFile = line.getOptionValue(optPooledAssembly.getOpt());
             final boolean pooledGraphMode = pooledReadsListFile != null;
+            int maxPoolJobs = Integer.parseInt(line.getOptionValue(optPoolJobs.getOpt(), optPoolJobsDefault));
             boolean hasLongReadFiles = longReadPaths != null && longReadPaths.length > 0;
             
             if (pooledGraphMode && (leftReadPaths != null || rightReadPaths != null || longReadPaths != null) ) {
@@ -5780,6 +7160,8 @@ public class RNABloom {
             final int minimizerWindowSize = Integer.parseInt(line.getOptionValue(optMinimizerWindowSize.getOpt(), optMinimizerWindowSizeDefault));
             final float minSketchOverlapProportion = Float.parseFloat(line.getOptionValue(optSketchOverlapProportion.getOpt(), optSketchOverlapProportionDefault));
             final int minSketchOverlapNumber = Integer.parseInt(line.getOptionValue(optSketchOverlapNumber.getOpt(), optSketchOverlapNumberDefault));
+            final boolean parallelClustering = line.hasOption(optParallelClustering.getOpt());
+            final int maxPoaClusterSize = Integer.parseInt(line.getOptionValue(optMaxPoaClusterSize.getOpt(), optMaxPoaClusterSizeDefault));
             */
             
             if ((hasLongReadFiles || outputNrTxpts || mergePool) && !hasMinimap2()) {
@@ -5808,6 +7190,8 @@ public class RNABloom {
             
             String defaultMinOverlap = hasLongReadFiles ? "200" : optOverlapDefault;
             final int minOverlap = Integer.parseInt(line.getOptionValue(optOverlap.getOpt(), defaultMinOverlap));
+            final int pathSearchLimit = Integer.parseInt(line.getOptionValue(optPathSearch.getOpt(), optPathSearchDefault));
+            final int pathCacheSize = Integer.parseInt(line.getOptionValue(optPathCache.getOpt(), optPathCacheDefault));
             
             String defaultMaxTipLen = hasLongReadFiles ? "100" : optTipLengthDefault;
             final int maxTipLen = Integer.parseInt(line.getOptionValue(optTipLength.getOpt(), defaultMaxTipLen));
@@ -5818,10 +7202,18 @@ public class RNABloom {
             final int qDBG = Integer.parseInt(line.getOptionValue(optBaseQualDbg.getOpt(), optBaseQualDbgDefault));
             final int qFrag = Integer.parseInt(line.getOptionValue(optBaseQualFrag.getOpt(), optBaseQualFragDefault));
                         
-            float sbfGB = Float.parseFloat(line.getOptionValue(optSbfMem.getOpt(), Float.toString(maxBfMem * 1f / 8f)));
-            float dbgGB = Float.parseFloat(line.getOptionValue(optDbgbfMem.getOpt(), Float.toString(maxBfMem * 1f / 8f)));
-            float cbfGB = Float.parseFloat(line.getOptionValue(optCbfMem.getOpt(), Float.toString(maxBfMem * 4f / 8f)));
-            float pkbfGB = Float.parseFloat(line.getOptionValue(optPkbfMem.getOpt(), Float.toString(maxBfMem * 1f / 8f)));
+            // concurrent pooled samples each need 4 shares (screening, DBG, and both paired k-mers) besides the 6 shares of the pooled graph
+            float memShares = pooledGraphMode && maxPoolJobs > 1 ? 6f + 4f * maxPoolJobs : 8f;
+            float sbfGB = Float.parseFloat(line.getOptionValue(optSbfMem.getOpt(), Float.toString(maxBfMem * 1f / memShares)));
+            float dbgGB = Float.parseFloat(line.getOptionValue(optDbgbfMem.getOpt(), Float.toString(maxBfMem * 1f / memShares)));
+            float cbfGB = Float.parseFloat(line.getOptionValue(optCbfMem.getOpt(), Float.toString(maxBfMem * 4f / memShares)));
+            float pkbfGB = Float.parseFloat(line.getOptionValue(optPkbfMem.getOpt(), Float.toString(maxBfMem * 1f / memShares)));
+            
+            if (line.hasOption(optOutOfCore.getOpt())) {
+                File oocDir = new File(line.getOptionValue(optOutOfCore.getOpt()));
+                MappedLargeByteBuffer.setDirectory(oocDir);
+                System.out.println("Bloom filters are stored out-of-core at `" + oocDir.getPath() + "`");
+            }
                         
             long sbfSize = (long) (NUM_BITS_1GB * sbfGB);
             long dbgbfSize = (long) (NUM_BITS_1GB * dbgGB);
@@ -5837,10 +7229,33 @@ public class RNABloom {
             
             final float maxFPR = Float.parseFloat(line.getOptionValue(optFpr.getOpt(), optFprDefault));
             final boolean saveGraph = line.hasOption(optSaveBf.getOpt());
+            final boolean indexUnitigs = line.hasOption(optUnitigs.getOpt());
+            final boolean markBranches = line.hasOption(optMarkBranches.getOpt());
+            final boolean findCriticalFalsePositives = line.hasOption(optCfp.getOpt());
             boolean storeReadPairedKmers = !hasLongReadFiles && (hasLeftReadFiles || hasRightReadFiles || hasRefTranscriptFiles);
             
             boolean useNTCard = line.hasOption(optNtcard.getOpt());
             
+            final boolean shardMode = line.hasOption(optShard.getOpt());
+            if (shardMode) {
+                if (useNTCard || !(line.hasOption(optNumKmers.getOpt()) || line.hasOption(optAllMem.getOpt()))) {
+                    exitOnError("Option `-shard` requires either `-nk` or `-mem`, and cannot be used with `-ntcard`");
+                }
+                
+                if (pooledGraphMode) {
+                    exitOnError("Option `-shard` cannot be used with option `-pool`");
+                }
+                
+                if (line.hasOption(optCfp.getOpt()) || line.hasOption(optMarkBranches.getOpt()) || line.hasOption(optUnitigs.getOpt())) {
+                    exitOnError("Option `-shard` cannot be used with options `-cfp`, `-branchbf`, or `-unitigs`");
+                }
+                
+                if (dbgDone) {
+                    System.out.println("WARNING: Graph of shard was already constructed!");
+                    System.exit(0);
+                }
+            }
+            
             String defaultK = hasLongReadFiles ? "17" : optKmerSizeDefault;
             String kArg = line.getOptionValue(optKmerSize.getOpt(), defaultK);
             int k = Integer.parseInt(defaultK);
@@ -6012,6 +7427,11 @@ public class RNABloom {
                         
             RNABloom assembler = new RNABloom(k, qDBG, qFrag, debug);
             assembler.setParams(strandSpecific, maxTipLen, lookahead, maxCovGradient, maxIndelSize, percentIdentity, minNumKmerPairs, minPolyATail);
+            assembler.setRemoveContainedTranscripts(!line.hasOption(optNoContain.getOpt()));
+            
+            if (pathSearchLimit > 0) {
+                assembler.setupConnectionCache(pathCacheSize);
+            }
 
             FileWriter writer = new FileWriter(startedStamp, false);
             writer.write(String.join(" ", args));
@@ -6079,6 +7499,21 @@ public class RNABloom {
 
                     assembler.populateGraph(forwardFilesList, backwardFilesList, longFilesList, refFilesList, strandSpecific, revCompLong, numThreads, false, storeReadPairedKmers);
 
+                    if (shardMode) {
+                        if (!assembler.withinMaxFPR(maxFPR)) {
+                            System.out.println("WARNING: Bloom filter FPR is higher than the maximum allowed FPR (" + maxFPR*100 +"%)!");
+                        }
+                        
+                        // filters of shards must be identical in size, and derived structures need the merged graph
+                        System.out.println("Saving graph of shard to disk `" + graphFile + "`...");
+                        assembler.saveGraph(new File(graphFile));
+                        touch(dbgDoneStamp);
+                        
+                        System.out.println("> Stage 1 completed in " + MyTimer.hmsFormat(timer.elapsedMillis()));
+                        System.out.println("Total runtime: " + MyTimer.hmsFormat(timer.totalElapsedMillis()));
+                        System.exit(0);
+                    }
+                    
                     if (!assembler.withinMaxFPR(maxFPR)) {
                         System.out.println("WARNING: Bloom filter FPR is higher than the maximum allowed FPR (" + maxFPR*100 +"%)!");
 
@@ -6120,6 +7555,21 @@ public class RNABloom {
 
                         assembler.populateGraph(forwardFilesList, backwardFilesList, longFilesList, refFilesList, strandSpecific, revCompLong, numThreads, false, storeReadPairedKmers);
                     }    
+                    
+                    if (findCriticalFalsePositives) {
+                        System.out.println("Finding critical false positives...");
+                        assembler.buildCriticalFalsePositives(forwardFilesList, backwardFilesList, longFilesList, refFilesList, revCompLong, numThreads);
+                    }
+                    
+                    if (markBranches) {
+                        System.out.println("Marking branching k-mers...");
+                        assembler.buildBranchingKmersBloomFilter(forwardFilesList, backwardFilesList, longFilesList, refFilesList, revCompLong, numThreads);
+                    }
+                    
+                    if (indexUnitigs) {
+                        System.out.println("Indexing unitigs...");
+                        assembler.buildUnitigIndex(forwardFilesList, backwardFilesList, longFilesList, revCompLong, numThreads);
+                    }
 
                     if (saveGraph) {
                         System.out.println("Saving graph to disk `" + graphFile + "`...");
@@ -6137,11 +7587,42 @@ public class RNABloom {
             }           
 
             if (pooledGraphMode) {
+                final int numPoolJobs = getNumPoolJobsWithinMemory(maxPoolJobs, maxBfMem, dbgGB, cbfGB, pkbfGB, sbfGB, endstage >= 3 && !noFragDBG);
+                final boolean poolPipeline = line.hasOption(optPoolPipeline.getOpt()) && numPoolJobs > 1 && endstage >= 3;
+                
                 // assemble fragments for each sample
+                final long poolSbfSize = sbfSize;
+                final long poolPkbfSize = pkbfSize;
+                final int poolMinKmerCov = minKmerCov;
+                final boolean poolKeepArtifact = keepArtifact;
+                final boolean poolKeepChimera = keepChimera;
+                final String poolBranchFreeExtensionThreshold = branchFreeExtensionThreshold;
+                
                 int numSamples = pooledLeftReadPaths.size();
                 int sampleId = 0;
                 
-                System.out.println("\n> Stage 2: Assemble fragments for " + numSamples + " samples");
+                // assemble transcripts for one sample
+                final PooledSampleTask transcriptsTask = (sampleName, sampleNumThreads) -> {
+                    System.out.println(">> Working on \"" + sampleName + "\" with " + sampleNumThreads + " threads...");
+
+                    String sampleOutdir = outdir + File.separator + sampleName;
+                    
+                    RNABloom sampleAssembler = assembler.newSampleAssembler(!noFragDBG);
+                    try {
+                        assembleTranscriptsPE(sampleAssembler, forceOverwrite,
+                                        sampleOutdir, sampleName, txptNamePrefix,
+                                        poolSbfSize, sbfNumHash, poolPkbfSize, pkbfNumHash, sampleNumThreads, noFragDBG,
+                                        sampleSize, minTranscriptLength, poolKeepArtifact, poolKeepChimera,
+                                        reqFragKmersConsistency, true, poolMinKmerCov,
+                                        poolBranchFreeExtensionThreshold, outputNrTxpts, minPolyATail > 0, writeUracil,
+                                        refTranscriptPaths, usePacBioPreset);
+                    }
+                    finally {
+                        sampleAssembler.destroySampleAssembler();
+                    }
+                };
+                
+                System.out.println("\n> Stage 2: Assemble fragments" + (poolPipeline ? " and transcripts" : "") + " for " + numSamples + " samples");
                 MyTimer stageTimer = new MyTimer();
                 stageTimer.start();
                 
@@ -6149,30 +7630,77 @@ public class RNABloom {
                 pooledLeftReadPaths.keySet().toArray(sampleNames);
                 Arrays.sort(sampleNames);
                 
-                for (String sampleName : sampleNames) {
-                    System.out.println(">> Working on \"" + sampleName + "\" (sample " + ++sampleId + " of " + numSamples + ")...");
-                    
-                    ArrayList<String> lefts = pooledLeftReadPaths.get(sampleName);
-                    ArrayList<String> rights = pooledRightReadPaths.get(sampleName);
-                    
-                    FastxFilePair[] fqPairs = new FastxFilePair[lefts.size()];
-                    for (int i=0; i<lefts.size(); ++i) {
-                        fqPairs[i] = new FastxFilePair(lefts.get(i), rights.get(i), revCompLeft, revCompRight);
+                // all samples share the cache of the pooled graph
+                assembler.clearConnectionCache();
+                
+                if (numPoolJobs > 1) {
+                    long[] sampleVolumes = new long[numSamples];
+                    for (int i=0; i<numSamples; ++i) {
+                        sampleVolumes[i] = getPooledSampleVolume(pooledLeftReadPaths.get(sampleNames[i]), pooledRightReadPaths.get(sampleNames[i]));
                     }
-
-                    String sampleOutdir = outdir + File.separator + sampleName;
-                    new File(sampleOutdir).mkdirs();
-                    
-                    
-                    MyTimer sampleTimer = new MyTimer();
-                    sampleTimer.start();
                     
-                    assembleFragments(assembler, forceOverwrite,
-                                    sampleOutdir, sampleName, fqPairs,
-                                    sbfSize, pkbfSize, sbfNumHash, pkbfNumHash, numThreads,
-                                    bound, minOverlap, sampleSize, maxErrCorrItr, extendFragments, minKmerCov, keepArtifact);
-                    
-                    System.out.println(">> Fragments assembled in " + MyTimer.hmsFormat(sampleTimer.elapsedMillis()) + "\n");
+                    runPooledSamples(sampleNames, sampleVolumes, numThreads, numPoolJobs, (sampleName, sampleNumThreads) -> {
+                        System.out.println(">> Working on \"" + sampleName + "\" with " + sampleNumThreads + " threads...");
+                        
+                        ArrayList<String> lefts = pooledLeftReadPaths.get(sampleName);
+                        ArrayList<String> rights = pooledRightReadPaths.get(sampleName);
+
+                        FastxFilePair[] fqPairs = new FastxFilePair[lefts.size()];
+                        for (int i=0; i<lefts.size(); ++i) {
+                            fqPairs[i] = new FastxFilePair(lefts.get(i), rights.get(i), revCompLeft, revCompRight);
+                        }
+
+                        String sampleOutdir = outdir + File.separator + sampleName;
+                        new File(sampleOutdir).mkdirs();
+
+                        MyTimer sampleTimer = new MyTimer();
+                        sampleTimer.start();
+                        
+                        RNABloom sampleAssembler = assembler.newSampleAssembler(false);
+                        try {
+                            assembleFragments(sampleAssembler, forceOverwrite,
+                                            sampleOutdir, sampleName, fqPairs,
+                                            poolSbfSize, poolPkbfSize, sbfNumHash, pkbfNumHash, sampleNumThreads,
+                                            bound, minOverlap, sampleSize, maxErrCorrItr, extendFragments, poolMinKmerCov, poolKeepArtifact, pathSearchLimit);
+                        }
+                        finally {
+                            sampleAssembler.destroySampleAssembler();
+                        }
+
+                        System.out.println(">> Fragments assembled for \"" + sampleName + "\" in " + MyTimer.hmsFormat(sampleTimer.elapsedMillis()));
+                        
+                        if (poolPipeline) {
+                            // all strata of this sample are final, so its transcripts need not wait for the other samples
+                            transcriptsTask.run(sampleName, sampleNumThreads);
+                        }
+                    });
+                }
+                else {
+                    for (String sampleName : sampleNames) {
+                        System.out.println(">> Working on \"" + sampleName + "\" (sample " + ++sampleId + " of " + numSamples + ")...");
+
+                        ArrayList<String> lefts = pooledLeftReadPaths.get(sampleName);
+                        ArrayList<String> rights = pooledRightReadPaths.get(sampleName);
+
+                        FastxFilePair[] fqPairs = new FastxFilePair[lefts.size()];
+                        for (int i=0; i<lefts.size(); ++i) {
+                            fqPairs[i] = new FastxFilePair(lefts.get(i), rights.get(i), revCompLeft, revCompRight);
+                        }
+
+                        String sampleOutdir = outdir + File.separator + sampleName;
+                        new File(sampleOutdir).mkdirs();
+
+
+                        MyTimer sampleTimer = new MyTimer();
+                        sampleTimer.start();
+
+                        assembleFragments(assembler, forceOverwrite,
+                                        sampleOutdir, sampleName, fqPairs,
+                                        sbfSize, pkbfSize, sbfNumHash, pkbfNumHash, numThreads,
+                                        bound, minOverlap, sampleSize, maxErrCorrItr, extendFragments, minKmerCov, keepArtifact, pathSearchLimit);
+
+                        System.out.println(">> Fragments assembled in " + MyTimer.hmsFormat(sampleTimer.elapsedMillis()) + "\n");
+                    }
                 }
                 
                 System.out.println("> Stage 2 completed in " + MyTimer.hmsFormat(stageTimer.elapsedMillis()));
@@ -6189,20 +7717,33 @@ public class RNABloom {
                 System.out.println("\n> Stage 3: Assemble transcripts for " + numSamples + " samples");
                 stageTimer.start();
                                 
-                for (String sampleName : sampleNames) {
-                    System.out.println(">> Working on \"" + sampleName + "\" (sample " + ++sampleId + " of " + numSamples + ")...");
-                    
-                    String sampleOutdir = outdir + File.separator + sampleName;
-                    
-                    assembleTranscriptsPE(assembler, forceOverwrite,
-                                    sampleOutdir, sampleName, txptNamePrefix,
-                                    sbfSize, sbfNumHash, pkbfSize, pkbfNumHash, numThreads, noFragDBG,
-                                    sampleSize, minTranscriptLength, keepArtifact, keepChimera,
-                                    reqFragKmersConsistency, true, minKmerCov,
-                                    branchFreeExtensionThreshold, outputNrTxpts, minPolyATail > 0, writeUracil,
-                                    refTranscriptPaths, usePacBioPreset);
+                if (poolPipeline) {
+                    System.out.println("Transcripts were assembled along with the fragments of each sample.");
+                }
+                else if (numPoolJobs > 1) {
+                    long[] sampleVolumes = new long[numSamples];
+                    for (int i=0; i<numSamples; ++i) {
+                        sampleVolumes[i] = getPooledSampleVolume(pooledLeftReadPaths.get(sampleNames[i]), pooledRightReadPaths.get(sampleNames[i]));
+                    }
                     
-                    System.out.print("\n");
+                    runPooledSamples(sampleNames, sampleVolumes, numThreads, numPoolJobs, transcriptsTask);
+                }
+                else {
+                    for (String sampleName : sampleNames) {
+                        System.out.println(">> Working on \"" + sampleName + "\" (sample " + ++sampleId + " of " + numSamples + ")...");
+
+                        String sampleOutdir = outdir + File.separator + sampleName;
+
+                        assembleTranscriptsPE(assembler, forceOverwrite,
+                                        sampleOutdir, sampleName, txptNamePrefix,
+                                        sbfSize, sbfNumHash, pkbfSize, pkbfNumHash, numThreads, noFragDBG,
+                                        sampleSize, minTranscriptLength, keepArtifact, keepChimera,
+                                        reqFragKmersConsistency, true, minKmerCov,
+                                        branchFreeExtensionThreshold, outputNrTxpts, minPolyATail > 0, writeUracil,
+                                        refTranscriptPaths, usePacBioPreset);
+
+                        System.out.print("\n");
+                    }
                 }
                 
                 if (mergePool) {
@@ -6223,7 +7764,7 @@ public class RNABloom {
                                         txptFileExt, shortTxptFileExt, txptNamePrefix,
                                         k, numThreads, strandSpecific, maxIndelSize,
                                         maxTipLen, percentIdentity, !keepArtifact, 
-                                        minTranscriptLength, writeUracil, usePacBioPreset);
+                                        minTranscriptLength, writeUracil, usePacBioPreset, forceOverwrite);
                         
                         if (ok) {
                             System.out.println("Merged assembly at `" + outdir + File.separator + name + ".transcripts.fa`");
@@ -6245,18 +7786,7 @@ public class RNABloom {
                 final String correctedLongReadFilePrefix = outdir + File.separator + name + ".longreads.corrected";
 
                 /*
-                final int numCovStrata = COVERAGE_ORDER.length;
-                final int numLenStrata = LENGTH_STRATUM_NAMES.length;
-                String[][] correctedLongReadFileNames = new String[numCovStrata][numLenStrata];
-                for (int c=0; c<numCovStrata; ++c) {
-                    String covStratumName = COVERAGE_ORDER[c];
-                    for (int l=0; l<numLenStrata; ++l) {
-                        String lengthStratumName = LENGTH_STRATUM_NAMES[l];
-
-                        String correctedLongReadsFasta = correctedLongReadFilePrefix + "." + covStratumName + "." + lengthStratumName + FASTA_EXT;
-                        correctedLongReadFileNames[c][l] = correctedLongReadsFasta;
-                    }
-                }
+                String sortedLongReadsPath = correctedLongReadFilePrefix + ".sorted" + NBITS_EXT;
                 */
                 
                 String longCorrectedReadsPath = correctedLongReadFilePrefix + ".long" + FASTA_EXT;
@@ -6273,16 +7803,10 @@ public class RNABloom {
                 else {
                     /* set up the file writers */
                     /*
-                    for (String[] row : correctedLongReadFileNames) {
-                        for (String fasta : row) {
-                            Files.deleteIfExists(FileSystems.getDefault().getPath(fasta));
-                        }
-                    }
-                    
                     Files.deleteIfExists(FileSystems.getDefault().getPath(repeatReadsFileName));
                     
                     correctLongReads(assembler,
-                            longReadPaths, correctedLongReadFileNames, repeatReadsFileName,
+                            longReadPaths, sortedLongReadsPath, repeatReadsFileName,
                             maxErrCorrItr, minKmerCov, numThreads, sampleSize, minTranscriptLength,
                             revCompLong, !keepArtifact);
                     */
@@ -6315,9 +7839,10 @@ public class RNABloom {
                     int minSketchSize = Math.max(minSketchOverlapNumber, ((minTranscriptLength-minimizerSize+1)-minimizerWindowSize+1)/minimizerWindowSize);
                     
                     clusterLongReads(assembler,
-                            correctedLongReadFileNames, clusteredLongReadsDirectory,
+                            sortedLongReadsPath, clusteredLongReadsDirectory,
                             minSketchSize, numThreads, useCompressedMinimizers,
-                            minimizerSize, minimizerWindowSize, minSketchOverlapProportion, minSketchOverlapNumber);
+                            minimizerSize, minimizerWindowSize, minSketchOverlapProportion, minSketchOverlapNumber,
+                            parallelClustering);
                     
                     touch(longReadsClusteredStamp);
                 }
@@ -6344,7 +7869,8 @@ public class RNABloom {
                     final String assembledLongReadsCombinedFile = outdir + File.separator + name + ".transcripts" + FASTA_EXT;
                     boolean ok = assembleLongReads(assembler,
                             clusteredLongReadsDirectory, assembledLongReadsDirectory, assembledLongReadsCombinedFile,
-                            numThreads, forceOverwrite, writeUracil, minimapOptions, minKmerCov, txptNamePrefix, strandSpecific, minTranscriptLength, !keepArtifact);
+                            numThreads, forceOverwrite, writeUracil, minimapOptions, minKmerCov, txptNamePrefix, strandSpecific, minTranscriptLength, !keepArtifact,
+                            usePacBioPreset, maxPoaClusterSize);
                     */
 
                     final String tmpPrefix = outdir + File.separator + name + ".longreads.assembly";
@@ -6403,7 +7929,7 @@ public class RNABloom {
                 assembleFragments(assembler, forceOverwrite,
                                     outdir, name, fqPairs,
                                     sbfSize, pkbfSize, sbfNumHash, pkbfNumHash, numThreads,
-                                    bound, minOverlap, sampleSize, maxErrCorrItr, extendFragments, minKmerCov, keepArtifact);
+                                    bound, minOverlap, sampleSize, maxErrCorrItr, extendFragments, minKmerCov, keepArtifact, pathSearchLimit);
                 
                 System.out.println("> Stage 2 completed in " + MyTimer.hmsFormat(stageTimer.elapsedMillis()));
                 
@@ -24,8 +24,6 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import rnabloom.bloom.buffer.LargeBitBuffer;
-import rnabloom.bloom.buffer.UnsafeBitBuffer;
 import rnabloom.bloom.buffer.AbstractLargeBitBuffer;
 import static java.lang.Math.pow;
 import static java.lang.Math.exp;
@@ -47,13 +45,7 @@ public class BloomFilter implements BloomFilterInterface {
     public BloomFilter(long size, int numHash, HashFunction hashFunction) {
         
         this.size = size;
-        try {
-            //System.out.println("unsafe");
-            this.bitArray = new UnsafeBitBuffer(size);
-        }
-        catch(NoSuchFieldException | IllegalArgumentException | IllegalAccessException e) {
-            this.bitArray = new LargeBitBuffer(size);
-        }
+        this.bitArray = AbstractLargeBitBuffer.allocate(size);
         this.numHash = numHash;
         this.hashFunction = hashFunction;
     }
@@ -88,13 +80,7 @@ public class BloomFilter implements BloomFilterInterface {
         
         this.hashFunction = hashFunction;
         
-        try {
-            //System.out.println("unsafe");
-            this.bitArray = new UnsafeBitBuffer(size);
-        }
-        catch(NoSuchFieldException | IllegalArgumentException | IllegalAccessException e) {
-            this.bitArray = new LargeBitBuffer(size);
-        }
+        this.bitArray = AbstractLargeBitBuffer.allocate(size);
         
         if (loadBits) {
             FileInputStream fin = new FileInputStream(bits);
@@ -225,6 +211,10 @@ public class BloomFilter implements BloomFilterInterface {
 //        return (long) Math.ceil(- popcount *log(fpr) / pow(log(2), 2));
 //    }
     
+    public long getSize() {
+        return size;
+    }
+    
     public int getNumHash() {
         return numHash;
     }
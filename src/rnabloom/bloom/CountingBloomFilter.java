@@ -24,9 +24,7 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import rnabloom.bloom.buffer.UnsafeByteBuffer;
 import rnabloom.bloom.buffer.AbstractLargeByteBuffer;
-import rnabloom.bloom.buffer.LargeByteBuffer;
 import static java.lang.Math.exp;
 import static java.lang.Math.log;
 import static java.lang.Math.pow;
@@ -52,13 +50,7 @@ public class CountingBloomFilter implements CountingBloomFilterInterface {
     
     public CountingBloomFilter(long size, int numHash, HashFunction hashFunction) {
         this.size = size;
-        try {
-            //System.out.println("unsafe");
-            this.counts = new UnsafeByteBuffer(size);
-        }
-        catch (NoSuchFieldException | IllegalArgumentException | IllegalAccessException e) {
-            this.counts = new LargeByteBuffer(size);
-        }
+        this.counts = AbstractLargeByteBuffer.allocate(size);
         this.numHash = numHash;
         this.hashFunction = hashFunction;
     }
@@ -88,13 +80,7 @@ public class CountingBloomFilter implements CountingBloomFilterInterface {
         
         this.hashFunction = hashFunction;
         
-        try {
-            //System.out.println("unsafe");
-            this.counts = new UnsafeByteBuffer(size);
-        }
-        catch (NoSuchFieldException | IllegalArgumentException | IllegalAccessException e) {
-            this.counts = new LargeByteBuffer(size);
-        }
+        this.counts = AbstractLargeByteBuffer.allocate(size);
         
         FileInputStream fin = new FileInputStream(bytes);
         this.counts.read(fin);
@@ -189,6 +175,36 @@ public class CountingBloomFilter implements CountingBloomFilterInterface {
         return scalb((min & MANTI_MASK) | ADD_MASK, (min >> MANTISSA) - 1);
     }
 
+    private static float getCounterValue(byte c) {
+        if (c <= MANTI_MASK) {
+            return (float) c;
+        }
+        
+        return scalb((c & MANTI_MASK) | ADD_MASK, (c >> MANTISSA) - 1);
+    }
+    
+    /**
+     * Merge two counters of filters populated from disjoint inputs.
+     * @param a
+     * @param b
+     * @param sum   whether to add the counts, otherwise take the larger count
+     * @return the largest counter not exceeding the sum, or the larger counter
+     */
+    public static byte mergeCounters(byte a, byte b, boolean sum) {
+        if (!sum || a == 0 || b == 0) {
+            return a > b ? a : b;
+        }
+        
+        float total = getCounterValue(a) + getCounterValue(b);
+        
+        byte c = a > b ? a : b;
+        while (c < Byte.MAX_VALUE && getCounterValue((byte) (c + 1)) <= total) {
+            ++c;
+        }
+        
+        return c;
+    }
+    
     @Override
     public float getFPR() {
         /* (1 - e(-kn/m))^k
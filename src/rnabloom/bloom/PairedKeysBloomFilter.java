@@ -29,8 +29,6 @@ import static java.lang.Math.log;
 import static java.lang.Math.pow;
 import rnabloom.bloom.buffer.AbstractLargeBitBuffer;
 import rnabloom.bloom.buffer.BufferComparator;
-import rnabloom.bloom.buffer.LargeBitBuffer;
-import rnabloom.bloom.buffer.UnsafeBitBuffer;
 import rnabloom.bloom.hash.HashFunction;
 
 /**
@@ -47,12 +45,7 @@ public class PairedKeysBloomFilter {
     
     public PairedKeysBloomFilter(long size, int numHash, HashFunction hashFunction) {
         this.size = size;
-        try {
-            this.bitArrayPair = new UnsafeBitBuffer(size);
-        }
-        catch(NoSuchFieldException | IllegalArgumentException | IllegalAccessException e) {
-            this.bitArrayPair = new LargeBitBuffer(size);
-        }
+        this.bitArrayPair = AbstractLargeBitBuffer.allocate(size);
         this.numHash = numHash;
         this.hashFunction = hashFunction;
     }
@@ -84,13 +77,7 @@ public class PairedKeysBloomFilter {
         
         this.hashFunction = hashFunction;
         
-        try {
-            //System.out.println("unsafe");
-            this.bitArrayPair = new UnsafeBitBuffer(size);
-        }
-        catch(NoSuchFieldException | IllegalArgumentException | IllegalAccessException e) {
-            this.bitArrayPair = new LargeBitBuffer(size);
-        }
+        this.bitArrayPair = AbstractLargeBitBuffer.allocate(size);
         
         FileInputStream fin = new FileInputStream(pairBits);
         this.bitArrayPair.read(fin);
@@ -99,6 +86,10 @@ public class PairedKeysBloomFilter {
         /**@TODO Assert file size*/
     }
 
+    public long getSize() {
+        return size;
+    }
+    
     public int getNumhash() {
         return numHash;
     }
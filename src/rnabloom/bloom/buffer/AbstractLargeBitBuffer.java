@@ -19,6 +19,7 @@ package rnabloom.bloom.buffer;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
  *
@@ -36,4 +37,25 @@ public abstract class AbstractLargeBitBuffer {
     public abstract void write(FileOutputStream out) throws IOException;
     public abstract void read(FileInputStream in) throws IOException;
     public abstract AbstractLargeByteBuffer getBackingByteBuffer();
+    
+    /**
+     * Allocate a buffer in memory-mapped files if `MappedLargeByteBuffer.setDirectory` was set, or in memory otherwise.
+     */
+    public static AbstractLargeBitBuffer allocate(long size) {
+        if (MappedLargeByteBuffer.isEnabled()) {
+            try {
+                return new MappedBitBuffer(size);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        
+        try {
+            return new UnsafeBitBuffer(size);
+        }
+        catch (NoSuchFieldException | IllegalArgumentException | IllegalAccessException e) {
+            return new LargeBitBuffer(size);
+        }
+    }
 }
@@ -19,6 +19,7 @@ package rnabloom.bloom.buffer;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
  *
@@ -34,4 +35,25 @@ public abstract class AbstractLargeByteBuffer {
     public abstract void destroy();
     public abstract void write(FileOutputStream out) throws IOException;
     public abstract void read(FileInputStream in) throws IOException;
+    
+    /**
+     * Allocate a buffer in memory-mapped files if `MappedLargeByteBuffer.setDirectory` was set, or in memory otherwise.
+     */
+    public static AbstractLargeByteBuffer allocate(long size) {
+        if (MappedLargeByteBuffer.isEnabled()) {
+            try {
+                return new MappedLargeByteBuffer(size);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        
+        try {
+            return new UnsafeByteBuffer(size);
+        }
+        catch (NoSuchFieldException | IllegalArgumentException | IllegalAccessException e) {
+            return new LargeByteBuffer(size);
+        }
+    }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.bloom.buffer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A byte buffer stored in memory-mapped partition files on disk, so that it
+ * may exceed physical memory; the operating system keeps the recently used
+ * pages of each partition resident.
+ *
+ * @author Ka Ming Nip
+ */
+public class MappedLargeByteBuffer extends AbstractLargeByteBuffer {
+    private final static int PARTITION_BITS = 30;
+    private final static int PARTITION_SIZE = 1 << PARTITION_BITS; // 1 GB
+    private final static int PARTITION_MASK = PARTITION_SIZE - 1;
+
+    private static File directory = null;
+
+    private final long size;
+    private final MappedByteBuffer[] buffers;
+    private final File[] files;
+
+    /**
+     * Store all buffers allocated through `AbstractLargeByteBuffer.allocate` and
+     * `AbstractLargeBitBuffer.allocate` under `dir`, or in memory if `dir` is null.
+     */
+    public static void setDirectory(File dir) {
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        directory = dir;
+    }
+
+    public static boolean isEnabled() {
+        return directory != null;
+    }
+
+    public MappedLargeByteBuffer(long size) throws IOException {
+        this(size, directory);
+    }
+
+    public MappedLargeByteBuffer(long size, File dir) throws IOException {
+        this.size = size;
+
+        int numPartitions = (int) ((size + PARTITION_SIZE - 1) >>> PARTITION_BITS);
+        buffers = new MappedByteBuffer[numPartitions];
+        files = new File[numPartitions];
+
+        for (int i=0; i<numPartitions; ++i) {
+            long partitionSize = Math.min(PARTITION_SIZE, size - ((long) i << PARTITION_BITS));
+
+            File f = File.createTempFile("buffer", ".part" + i, dir);
+            f.deleteOnExit();
+
+            // a new file is sparse and reads as zeros
+            RandomAccessFile raf = new RandomAccessFile(f, "rw");
+            FileChannel channel = raf.getChannel();
+            buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, 0, partitionSize);
+            buffers[i].order(ByteOrder.nativeOrder());
+            channel.close();
+            raf.close();
+
+            files[i] = f;
+        }
+    }
+
+    @Override
+    public void set(long index, byte value) {
+        buffers[(int) (index >>> PARTITION_BITS)].put((int) (index & PARTITION_MASK), value);
+    }
+
+    @Override
+    public byte compareAndSwap(long index, byte expected, byte updated) {
+        MappedByteBuffer bb = buffers[(int) (index >>> PARTITION_BITS)];
+        int bbIndex = (int) (index & PARTITION_MASK);
+        byte b = bb.get(bbIndex);
+        if (expected == b) {
+            bb.put(bbIndex, updated);
+        }
+        return b;
+    }
+
+    public void or(long index, byte value) {
+        MappedByteBuffer bb = buffers[(int) (index >>> PARTITION_BITS)];
+        int bbIndex = (int) (index & PARTITION_MASK);
+        bb.put(bbIndex, (byte) (bb.get(bbIndex) | value));
+    }
+
+    public boolean compareAndOr(long index, byte value) {
+        MappedByteBuffer bb = buffers[(int) (index >>> PARTITION_BITS)];
+        int bbIndex = (int) (index & PARTITION_MASK);
+        byte b = bb.get(bbIndex);
+        byte newB = (byte) (b | value);
+        if (b != newB) {
+            bb.put(bbIndex, newB);
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public byte get(long index) {
+        return buffers[(int) (index >>> PARTITION_BITS)].get((int) (index & PARTITION_MASK));
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void empty() {
+        for (MappedByteBuffer bb : buffers) {
+            int cap = bb.capacity();
+            int numLongs = cap / Long.BYTES;
+            LongBuffer lb = bb.asLongBuffer();
+            for (int i=0; i<numLongs; ++i) {
+                lb.put(i, 0);
+            }
+            for (int i=numLongs * Long.BYTES; i<cap; ++i) {
+                bb.put(i, (byte) 0);
+            }
+        }
+    }
+
+    @Override
+    public long popCount() {
+        long count = 0;
+        for (MappedByteBuffer bb : buffers) {
+            int cap = bb.capacity();
+            for (int i=0; i<cap; ++i) {
+                if (bb.get(i) != 0) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    public long bitPopCount() {
+        long count = 0;
+        for (MappedByteBuffer bb : buffers) {
+            int cap = bb.capacity();
+            int numLongs = cap / Long.BYTES;
+            LongBuffer lb = bb.asLongBuffer();
+            for (int i=0; i<numLongs; ++i) {
+                count += Long.bitCount(lb.get(i));
+            }
+            for (int i=numLongs * Long.BYTES; i<cap; ++i) {
+                count += Integer.bitCount(bb.get(i) & 0xFF);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void destroy() {
+        // pages stay mapped until the buffers are garbage collected
+        for (File f : files) {
+            f.delete();
+        }
+    }
+
+    private final static int TMP_BUFF_SIZE = 1 << 24; // 16 MB
+
+    @Override
+    public void write(FileOutputStream out) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(size, TMP_BUFF_SIZE)];
+        for (MappedByteBuffer bb : buffers) {
+            int cap = bb.capacity();
+            for (int i=0; i<cap; i+=buffer.length) {
+                int len = Math.min(buffer.length, cap - i);
+                for (int bi=0; bi<len; ++bi) {
+                    buffer[bi] = bb.get(i + bi);
+                }
+                out.write(buffer, 0, len);
+            }
+        }
+
+        out.flush();
+    }
+
+    @Override
+    public void read(FileInputStream in) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(size, TMP_BUFF_SIZE)];
+        for (MappedByteBuffer bb : buffers) {
+            int cap = bb.capacity();
+            for (int i=0; i<cap; ) {
+                int len = in.read(buffer, 0, Math.min(buffer.length, cap - i));
+                if (len < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+                for (int bi=0; bi<len; ++bi) {
+                    bb.put(i + bi, buffer[bi]);
+                }
+                i += len;
+            }
+        }
+    }
+}
@@ -18,7 +18,9 @@ package rnabloom.graph;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -26,10 +28,13 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import rnabloom.bloom.BloomFilter;
 import rnabloom.bloom.CountingBloomFilter;
 import rnabloom.bloom.PairedKeysBloomFilter;
 import rnabloom.bloom.hash.*;
+import rnabloom.util.LongHashSet;
 import static rnabloom.util.SeqUtils.*;
 
 /**
@@ -42,6 +47,9 @@ public class BloomFilterDeBruijnGraph {
     private CountingBloomFilter cbf;
     private PairedKeysBloomFilter fpkbf = null;
     private PairedKeysBloomFilter rpkbf = null;
+    private BloomFilter bbf = null;
+    private LongHashSet cfp = null;
+    private UnitigIndex unitigIndex = null;
     
     private int dbgbfNumHash;
     private int cbfNumHash;
@@ -55,12 +63,16 @@ public class BloomFilterDeBruijnGraph {
 //    private KmerBitsUtils2 bitsUtils;
     
     private int readPairedKmersDistance = -1;
+    private boolean ownsDbgbf = true;
     
     private final static String FILE_DESC_EXTENSION = ".desc";
     private final static String FILE_DBGBF_EXTENSION = ".dbgbf";
     private final static String FILE_CBF_EXTENSION = ".cbf";
     private final static String FILE_FPKBF_PAIR_EXTENSION = ".fpkbf";
     private final static String FILE_RPKBF_PAIR_EXTENSION = ".rpkbf";
+    private final static String FILE_BBF_EXTENSION = ".bbf";
+    private final static String FILE_CFP_EXTENSION = ".cfp";
+    private final static String FILE_UNITIG_EXTENSION = ".utg";
 
     
     private final static String LABEL_SEPARATOR = ":";
@@ -187,8 +199,86 @@ public class BloomFilterDeBruijnGraph {
             this.rpkbf = new PairedKeysBloomFilter(rpkbfDescFile, rpkbfBitsFile, this.hashFunction);
             pkbfNumHash = rpkbf.getNumhash();
         }
+        
+        String bbfBitsPath = graphFile.getPath() + FILE_BBF_EXTENSION;
+        String bbfDescPath = bbfBitsPath + FILE_DESC_EXTENSION;
+        
+        File bbfBitsFile = new File(bbfBitsPath);
+        File bbfDescFile = new File(bbfDescPath);
+        
+        if (loadDbgBits && bbfBitsFile.isFile() && bbfDescFile.isFile()) {
+            // only valid for the saved DBG
+            bbf = new BloomFilter(bbfDescFile, bbfBitsFile, hashFunction);
+        }
+        
+        File cfpFile = new File(graphFile.getPath() + FILE_CFP_EXTENSION);
+        if (loadDbgBits && cfpFile.isFile()) {
+            // only valid for the saved DBG
+            cfp = LongHashSet.load(cfpFile);
+        }
+        
+        File unitigFile = new File(graphFile.getPath() + FILE_UNITIG_EXTENSION);
+        if (loadDbgBits && unitigFile.isFile()) {
+            unitigIndex = new UnitigIndex(unitigFile);
+        }
     }
 
+    private BloomFilterDeBruijnGraph(BloomFilterDeBruijnGraph g, boolean ownDbgbf) {
+        this.dbgbfNumHash = g.dbgbfNumHash;
+        this.cbfNumHash = g.cbfNumHash;
+        this.dbgbfCbfMaxNumHash = g.dbgbfCbfMaxNumHash;
+        this.hashFunction = g.hashFunction;
+        this.k = g.k;
+        this.kMinus1 = g.kMinus1;
+        this.stranded = g.stranded;
+        this.pkbfNumHash = g.pkbfNumHash;
+        this.readPairedKmersDistance = g.readPairedKmersDistance;
+        
+        this.cbf = g.cbf;
+        this.bbf = ownDbgbf ? null : g.bbf;
+        this.cfp = ownDbgbf ? null : g.cfp;
+        this.unitigIndex = ownDbgbf ? null : g.unitigIndex;
+        this.ownsDbgbf = ownDbgbf;
+        
+        if (ownDbgbf) {
+            this.dbgbf = new BloomFilter(g.dbgbf.getSize(), dbgbfNumHash, hashFunction);
+            if (g.rpkbf != null) {
+                this.rpkbf = new PairedKeysBloomFilter(g.rpkbf.getSize(), g.rpkbf.getNumhash(), hashFunction);
+            }
+        }
+        else {
+            this.dbgbf = g.dbgbf;
+            this.rpkbf = g.rpkbf;
+        }
+    }
+    
+    /**
+     * A view of this graph for one sample of a pool. The view shares the counting Bloom filter and
+     * other read-only structures of this graph, but it has its own fragment paired k-mers Bloom filter
+     * and distance. If `ownDbgbf` is true, it also has its own empty DBG and read paired k-mers Bloom
+     * filters of the same sizes, so that the sample's graph can be rebuilt independently.
+     * A view must be released with `destroySampleView`.
+     */
+    public BloomFilterDeBruijnGraph newSampleView(boolean ownDbgbf) {
+        return new BloomFilterDeBruijnGraph(this, ownDbgbf);
+    }
+    
+    public void destroySampleView() {
+        destroyFpkbf();
+        
+        if (ownsDbgbf) {
+            destroyDbgbf();
+            destroyRpkbf();
+        }
+        
+        dbgbf = null;
+        cbf = null;
+        rpkbf = null;
+        bbf = null;
+        cfp = null;
+        unitigIndex = null;
+    }
+    
     public HashFunction getHashFunction() {
         return this.hashFunction;
     }
@@ -214,6 +304,9 @@ public class BloomFilterDeBruijnGraph {
         this.destroyCbf();
         this.destroyFpkbf();
         this.destroyRpkbf();
+        this.destroyBbf();
+        this.cfp = null;
+        this.unitigIndex = null;
     }
     
     public void clearAllBf() {
@@ -221,12 +314,25 @@ public class BloomFilterDeBruijnGraph {
         clearCbf();
         clearFpkbf();
         clearRpkbf();
+        destroyBbf();
+        cfp = null;
+        unitigIndex = null;
     }
     
     public void clearDbgbf() {
         if (dbgbf != null) {
             dbgbf.empty();
         }
+        
+        // computed for the cleared DBG
+        if (ownsDbgbf) {
+            destroyBbf();
+        }
+        else {
+            bbf = null;
+        }
+        cfp = null;
+        unitigIndex = null;
     }
     
     public void clearCbf() {
@@ -275,6 +381,13 @@ public class BloomFilterDeBruijnGraph {
         }
     }
     
+    public void destroyBbf() {
+        if (bbf != null) {
+            bbf.destroy();
+            bbf = null;
+        }
+    }
+    
     public BloomFilter getDbgbf() {
         return dbgbf;
     }
@@ -291,6 +404,47 @@ public class BloomFilterDeBruijnGraph {
         return rpkbf;
     }
     
+    public BloomFilter getBbf() {
+        return bbf;
+    }
+    
+    public void initializeBranchingKmersBloomFilter(long numBits, int numHash) {
+        destroyBbf();
+        bbf = new BloomFilter(numBits, numHash, hashFunction);
+    }
+    
+    public void addBranchingKmer(final long hashVal) {
+        bbf.lookupThenAdd(hashVal);
+    }
+    
+    /**
+     * @param hashVal
+     * @return true if the k-mer is known to have at most one predecessor and at most one successor
+     */
+    public boolean isNonBranching(final long hashVal) {
+        return bbf != null && !bbf.lookup(hashVal);
+    }
+    
+    public LongHashSet getCriticalFalsePositives() {
+        return cfp;
+    }
+    
+    public void setCriticalFalsePositives(LongHashSet cfp) {
+        this.cfp = cfp;
+    }
+    
+    private boolean isCriticalFalsePositive(final long hashVal) {
+        return cfp != null && cfp.contains(hashVal);
+    }
+    
+    public UnitigIndex getUnitigIndex() {
+        return unitigIndex;
+    }
+    
+    public void setUnitigIndex(UnitigIndex unitigIndex) {
+        this.unitigIndex = unitigIndex;
+    }
+    
     public boolean isStranded() {
         return stranded;
     }    
@@ -327,6 +481,197 @@ public class BloomFilterDeBruijnGraph {
             String rpkbfDescPath = rpkbfBitsPath + FILE_DESC_EXTENSION;
             rpkbf.save(new File(rpkbfDescPath), new File(rpkbfBitsPath));
         }
+        
+        if (bbf != null) {
+            String bbfBitsPath = graphFile.getPath() + FILE_BBF_EXTENSION;
+            String bbfDescPath = bbfBitsPath + FILE_DESC_EXTENSION;
+            bbf.save(new File(bbfDescPath), new File(bbfBitsPath));
+        }
+        
+        if (cfp != null) {
+            cfp.save(new File(graphFile.getPath() + FILE_CFP_EXTENSION));
+        }
+        
+        if (unitigIndex != null) {
+            unitigIndex.save(new File(graphFile.getPath() + FILE_UNITIG_EXTENSION));
+        }
+    }
+    
+    private static LinkedHashMap<String, String> readDesc(File desc) throws IOException {
+        LinkedHashMap<String, String> entries = new LinkedHashMap<>();
+        BufferedReader br = new BufferedReader(new FileReader(desc));
+        String line;
+        while ((line = br.readLine()) != null) {
+            String[] entry = line.split(LABEL_SEPARATOR);
+            entries.put(entry[0], entry[1]);
+        }
+        br.close();
+        return entries;
+    }
+    
+    private static void writeDesc(File desc, LinkedHashMap<String, String> entries) throws IOException {
+        FileWriter writer = new FileWriter(desc, false);
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            writer.write(e.getKey() + LABEL_SEPARATOR + e.getValue() + "\n");
+        }
+        writer.close();
+    }
+    
+    private final static String LABEL_FILTER_SIZE = "size";
+    private final static String LABEL_FILTER_NUM_HASH = "numhash";
+    private final static String LABEL_FILTER_FPR = "fpr";
+    private final static int MERGE_BUFFER_SIZE = 1 << 24; // 16 MB
+    
+    /**
+     * Merge the same Bloom filter of all shards by streaming through their files.
+     * @param counting  whether the filter is a counting Bloom filter
+     * @param sumCounts whether to add or take the maximum of the counters of a counting Bloom filter
+     * @return false if the filter is absent from all shards
+     */
+    private static boolean mergeShardFilter(File[] shardGraphFiles, File outGraphFile, String extension,
+            boolean counting, boolean sumCounts) throws IOException {
+        
+        int numShards = shardGraphFiles.length;
+        File[] bits = new File[numShards];
+        LinkedHashMap<String, String> outDesc = null;
+        
+        int numPresent = 0;
+        for (int i=0; i<numShards; ++i) {
+            bits[i] = new File(shardGraphFiles[i].getPath() + extension);
+            if (bits[i].isFile()) {
+                ++numPresent;
+            }
+        }
+        
+        if (numPresent == 0) {
+            return false;
+        }
+        
+        for (int i=0; i<numShards; ++i) {
+            File desc = new File(bits[i].getPath() + FILE_DESC_EXTENSION);
+            if (!bits[i].isFile() || !desc.isFile()) {
+                throw new IOException("Shard `" + shardGraphFiles[i] + "` is missing `" + extension + "` filter");
+            }
+            
+            LinkedHashMap<String, String> d = readDesc(desc);
+            if (outDesc == null) {
+                outDesc = d;
+            }
+            else if (!d.get(LABEL_FILTER_SIZE).equals(outDesc.get(LABEL_FILTER_SIZE)) ||
+                    !d.get(LABEL_FILTER_NUM_HASH).equals(outDesc.get(LABEL_FILTER_NUM_HASH))) {
+                throw new IOException("Shard `" + shardGraphFiles[i] + "` has a different size or number of hash functions for `" + extension + "` filter");
+            }
+        }
+        
+        long size = Long.parseLong(outDesc.get(LABEL_FILTER_SIZE));
+        int numHash = Integer.parseInt(outDesc.get(LABEL_FILTER_NUM_HASH));
+        
+        FileInputStream[] ins = new FileInputStream[numShards];
+        for (int i=0; i<numShards; ++i) {
+            ins[i] = new FileInputStream(bits[i]);
+        }
+        
+        File outBits = new File(outGraphFile.getPath() + extension);
+        FileOutputStream out = new FileOutputStream(outBits, false);
+        
+        byte[] merged = new byte[MERGE_BUFFER_SIZE];
+        byte[] buffer = new byte[MERGE_BUFFER_SIZE];
+        long popcount = 0;
+        
+        while (true) {
+            int len = readFully(ins[0], merged);
+            if (len <= 0) {
+                break;
+            }
+            
+            for (int i=1; i<numShards; ++i) {
+                if (readFully(ins[i], buffer) != len) {
+                    throw new IOException("Shard `" + shardGraphFiles[i] + "` has a truncated `" + extension + "` filter");
+                }
+                
+                if (counting) {
+                    for (int j=0; j<len; ++j) {
+                        merged[j] = CountingBloomFilter.mergeCounters(merged[j], buffer[j], sumCounts);
+                    }
+                }
+                else {
+                    for (int j=0; j<len; ++j) {
+                        merged[j] |= buffer[j];
+                    }
+                }
+            }
+            
+            for (int j=0; j<len; ++j) {
+                if (counting) {
+                    if (merged[j] != 0) {
+                        ++popcount;
+                    }
+                }
+                else {
+                    popcount += Integer.bitCount(merged[j] & 0xFF);
+                }
+            }
+            
+            out.write(merged, 0, len);
+        }
+        
+        out.close();
+        for (FileInputStream in : ins) {
+            in.close();
+        }
+        
+        outDesc.put(LABEL_FILTER_FPR, Float.toString((float) Math.pow((double) popcount / (double) size, numHash)));
+        writeDesc(new File(outBits.getPath() + FILE_DESC_EXTENSION), outDesc);
+        
+        return true;
+    }
+    
+    private static int readFully(FileInputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int len = in.read(buffer, total, buffer.length - total);
+            if (len < 0) {
+                break;
+            }
+            total += len;
+        }
+        return total;
+    }
+    
+    /**
+     * Merge graphs built independently from disjoint subsets of reads with identical
+     * k, strandedness, Bloom filter sizes and numbers of hash functions. Bit arrays are
+     * combined with bitwise OR; counters of the counting Bloom filter are either added
+     * (saturating) or combined by taking the maximum.
+     * @param shardGraphFiles
+     * @param outGraphFile
+     * @param sumCounts
+     * @throws IOException if the shards are not compatible
+     */
+    public static void mergeShards(File[] shardGraphFiles, File outGraphFile, boolean sumCounts) throws IOException {
+        LinkedHashMap<String, String> outDesc = null;
+        
+        for (File f : shardGraphFiles) {
+            LinkedHashMap<String, String> d = readDesc(f);
+            if (outDesc == null) {
+                outDesc = d;
+            }
+            else {
+                for (String label : new String[]{LABEL_K, LABEL_STRANDED, LABEL_DBGBF_CBF_NUM_HASH, LABEL_READ_PAIRED_KMERS_DIST}) {
+                    if (!d.get(label).equals(outDesc.get(label))) {
+                        throw new IOException("Shard `" + f + "` has a different `" + label + "` (" + d.get(label) + " vs. " + outDesc.get(label) + ")");
+                    }
+                }
+            }
+        }
+        
+        mergeShardFilter(shardGraphFiles, outGraphFile, FILE_DBGBF_EXTENSION, false, sumCounts);
+        mergeShardFilter(shardGraphFiles, outGraphFile, FILE_CBF_EXTENSION, true, sumCounts);
+        mergeShardFilter(shardGraphFiles, outGraphFile, FILE_RPKBF_PAIR_EXTENSION, false, sumCounts);
+        
+        // fragment k-mer pairs are not known until Stage 2
+        outDesc.put(LABEL_FRAGMENT_PAIRED_KMERS_DIST, "-1");
+        writeDesc(outGraphFile, outDesc);
     }
     
     public void savePkbf(File graphFile) throws IOException {
@@ -532,12 +877,22 @@ public class BloomFilterDeBruijnGraph {
         return rpkbf.lookup(left.getKmerPairHashValue(right));
     }
     
+    public boolean lookupFragmentKmerPair(long pairHashVal) {
+        return fpkbf.lookup(pairHashVal);
+    }
+    
+    public boolean lookupReadKmerPair(long pairHashVal) {
+        return rpkbf.lookup(pairHashVal);
+    }
+    
     public boolean contains(String kmer) {
-        return dbgbf.lookup(kmer);
+        final long[] hashVals = new long[dbgbfCbfMaxNumHash];
+        hashFunction.getHashValues(kmer, dbgbfCbfMaxNumHash, hashVals);
+        return contains(hashVals);
     }
     
     public boolean contains(final long[] hashVals) {
-        return dbgbf.lookup(hashVals);
+        return dbgbf.lookup(hashVals) && !isCriticalFalsePositive(hashVals[0]);
     }
 
     public void increment(String kmer) {
@@ -551,7 +906,7 @@ public class BloomFilterDeBruijnGraph {
     }
     
     public float getCount(final long hashVal) {
-        if (dbgbf.lookup(hashVal)) {
+        if (dbgbf.lookup(hashVal) && !isCriticalFalsePositive(hashVal)) {
             // +1 for the first kmer inserted into the DBG Bloom filter
             return cbf.getCount(hashVal) + 1;
         }
@@ -561,7 +916,7 @@ public class BloomFilterDeBruijnGraph {
     }
     
     public float getCount(final long[] hashVals) {
-        if (dbgbf.lookup(hashVals)) {
+        if (dbgbf.lookup(hashVals) && !isCriticalFalsePositive(hashVals[0])) {
             // +1 for the first kmer inserted into the DBG Bloom filter
             return cbf.getCount(hashVals) + 1;
         }
@@ -132,6 +132,10 @@ public class CanonicalKmer extends Kmer {
     
     @Override
     public boolean hasAtLeastXPredecessors(int k, int numHash, BloomFilterDeBruijnGraph graph, int x) {
+        if (x > 1 && graph.isNonBranching(getHash())) {
+            return false;
+        }
+        
         int result = 0;
         
         CanonicalPredecessorsNTHashIterator itr = new CanonicalPredecessorsNTHashIterator(k, numHash);
@@ -152,6 +156,10 @@ public class CanonicalKmer extends Kmer {
     
     @Override
     public boolean hasAtLeastXSuccessors(int k, int numHash, BloomFilterDeBruijnGraph graph, int x) {
+        if (x > 1 && graph.isNonBranching(getHash())) {
+            return false;
+        }
+        
         int result = 0;
 
         CanonicalSuccessorsNTHashIterator itr = new CanonicalSuccessorsNTHashIterator(k, numHash);
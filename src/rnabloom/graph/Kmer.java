@@ -125,6 +125,10 @@ public class Kmer {
     }
     
     public boolean hasAtLeastXPredecessors(int k, int numHash, BloomFilterDeBruijnGraph graph, int x) {
+        if (x > 1 && graph.isNonBranching(getHash())) {
+            return false;
+        }
+        
         int result = 0;
         
         PredecessorsNTHashIterator itr = new PredecessorsNTHashIterator(k, numHash);
@@ -144,6 +148,10 @@ public class Kmer {
     }
     
     public boolean hasAtLeastXSuccessors(int k, int numHash, BloomFilterDeBruijnGraph graph, int x) {
+        if (x > 1 && graph.isNonBranching(getHash())) {
+            return false;
+        }
+        
         int result = 0;
 
         SuccessorsNTHashIterator itr = new SuccessorsNTHashIterator(k, numHash);
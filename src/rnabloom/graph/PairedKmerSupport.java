@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Paired k-mer support of a list of k-mers, ie. whether each pair of k-mers
+ * (i, i+d) is in the read or fragment paired k-mers Bloom filter.
+ * The Bloom filter is probed once per pair and the results are kept as prefix
+ * sums, so that segment breaking and range counts need no further probes.
+ *
+ * @author Ka Ming Nip
+ */
+public class PairedKmerSupport {
+    private final BloomFilterDeBruijnGraph graph;
+    private final boolean fragmentPairs;
+    private final int d;
+    private final Kmer[] kmers;
+    private final int rangeStart;
+
+    // prefix[j] = number of supported pairs with left index in [rangeStart, rangeStart+j)
+    private final int[] prefix;
+
+    public PairedKmerSupport(ArrayList<Kmer> kmers, BloomFilterDeBruijnGraph graph, boolean fragmentPairs) {
+        this(kmers, graph, fragmentPairs, 0, kmers.size());
+    }
+
+    /**
+     * Only pairs with both k-mers within [rangeStart, rangeEnd) are probed.
+     */
+    public PairedKmerSupport(ArrayList<Kmer> kmers, BloomFilterDeBruijnGraph graph, boolean fragmentPairs, int rangeStart, int rangeEnd) {
+        this(kmers, graph, fragmentPairs, rangeStart, rangeEnd, null, 0);
+    }
+
+    private PairedKmerSupport(ArrayList<Kmer> kmers, BloomFilterDeBruijnGraph graph, boolean fragmentPairs,
+            int rangeStart, int rangeEnd, PairedKmerSupport previous, int shift) {
+        this.graph = graph;
+        this.fragmentPairs = fragmentPairs;
+        this.d = fragmentPairs ? graph.getFragPairedKmerDistance() : graph.getReadPairedKmerDistance();
+        this.kmers = kmers.toArray(new Kmer[kmers.size()]);
+        this.rangeStart = rangeStart;
+
+        int numPairs = Math.max(0, rangeEnd - rangeStart - d);
+
+        // hash all pairs first, then probe the Bloom filter
+        long[] pairHashVals = new long[numPairs];
+        boolean[] known = new boolean[numPairs];
+        boolean[] supported = new boolean[numPairs];
+        for (int j=0; j<numPairs; ++j) {
+            int i = rangeStart + j;
+            Kmer left = this.kmers[i];
+            Kmer right = this.kmers[i+d];
+
+            if (previous != null) {
+                int p = previous.getResult(i - shift, left, right);
+                if (p >= 0) {
+                    known[j] = true;
+                    supported[j] = p > 0;
+                    continue;
+                }
+            }
+
+            pairHashVals[j] = left.getKmerPairHashValue(right);
+        }
+
+        prefix = new int[numPairs + 1];
+        for (int j=0; j<numPairs; ++j) {
+            if (!known[j]) {
+                supported[j] = fragmentPairs ? graph.lookupFragmentKmerPair(pairHashVals[j]) : graph.lookupReadKmerPair(pairHashVals[j]);
+            }
+
+            prefix[j+1] = supported[j] ? prefix[j] + 1 : prefix[j];
+        }
+    }
+
+    /**
+     * @return 1 if supported, 0 if not supported, -1 if unknown
+     */
+    private int getResult(int i, Kmer left, Kmer right) {
+        int j = i - rangeStart;
+        if (j < 0 || j >= prefix.length - 1 || kmers[i] != left || kmers[i+d] != right) {
+            return -1;
+        }
+
+        return prefix[j+1] - prefix[j];
+    }
+
+    private static int indexOf(Kmer[] kmers, Kmer kmer) {
+        for (int i=0; i<kmers.length; ++i) {
+            if (kmers[i] == kmer) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ArrayList<Kmer> kmers, Kmer kmer) {
+        int n = kmers.size();
+        for (int i=0; i<n; ++i) {
+            if (kmers.get(i) == kmer) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Support for a list derived from this list by trimming and/or extending it,
+     * eg. by `naiveExtend`. Pairs of the same k-mer objects at the same relative
+     * positions are reused; all other pairs are probed.
+     *
+     * @param newKmers  the derived list
+     * @param anchor    a k-mer object present in both lists
+     */
+    public PairedKmerSupport update(ArrayList<Kmer> newKmers, Kmer anchor) {
+        int oldIndex = indexOf(kmers, anchor);
+        int newIndex = indexOf(newKmers, anchor);
+
+        if (oldIndex < 0 || newIndex < 0) {
+            return new PairedKmerSupport(newKmers, graph, fragmentPairs);
+        }
+
+        return new PairedKmerSupport(newKmers, graph, fragmentPairs, 0, newKmers.size(), this, newIndex - oldIndex);
+    }
+
+    public int getPairedKmerDistance() {
+        return d;
+    }
+
+    public boolean isSupported(int i) {
+        int j = i - rangeStart;
+        return prefix[j+1] > prefix[j];
+    }
+
+    /**
+     * @return number of supported pairs with left index in [start, end)
+     */
+    public int countSupported(int start, int end) {
+        return prefix[end - rangeStart] - prefix[start - rangeStart];
+    }
+
+    /**
+     * Break the list into segments supported by consecutive paired k-mers.
+     *
+     * @param numPairsRequired  number of consecutive supported pairs to start a segment
+     * @return                  segments as [start, end) k-mer indices
+     */
+    public ArrayDeque<int[]> getSegments(int numPairsRequired) {
+        return getSegments(numPairsRequired, rangeStart, rangeStart + prefix.length - 1 + d);
+    }
+
+    /**
+     * Same as `getSegments(numPairsRequired)`, restricted to k-mers within
+     * [rangeStart, rangeEnd), which must be within the probed range.
+     */
+    public ArrayDeque<int[]> getSegments(int numPairsRequired, int rangeStart, int rangeEnd) {
+        ArrayDeque<int[]> segments = new ArrayDeque<>();
+
+        int lastIndex = rangeEnd - 1 - d;
+
+        int start = -1;
+        int end = -1;
+
+        for (int i=rangeStart; i<=lastIndex; ++i) {
+            int j = i - this.rangeStart;
+            if (prefix[j+1] > prefix[j]) {
+                // the last `numPairsRequired` pairs are all supported
+                if (i - numPairsRequired + 1 >= rangeStart &&
+                        prefix[j+1] - prefix[j+1-numPairsRequired] == numPairsRequired) {
+                    if (start < 0) {
+                        start = i-numPairsRequired+1;
+                    }
+
+                    end = i+d;
+                }
+            }
+            else if (start >= 0 && i >= end) {
+                segments.add(new int[]{start, end+1});
+
+                start = -1;
+                end = -1;
+            }
+        }
+
+        if (start >= 0) {
+            segments.add(new int[]{start, end+1});
+        }
+
+        return segments;
+    }
+}
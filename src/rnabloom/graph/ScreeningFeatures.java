@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.graph;
+
+import java.util.ArrayList;
+import rnabloom.bloom.BloomFilter;
+
+/**
+ * Per-k-mer features of a sequence shared by the artifact and redundancy
+ * screens, ie. whether each k-mer has been assembled and whether it is
+ * non-branching in the graph. Each feature is looked up at most once per k-mer,
+ * when it is first needed. Coverage is read from the k-mers themselves.
+ *
+ * @author Ka Ming Nip
+ */
+public class ScreeningFeatures {
+    private final static byte UNKNOWN = 0;
+    private final static byte YES = 1;
+    private final static byte NO = 2;
+
+    private final ArrayList<Kmer> kmers;
+    private final BloomFilterDeBruijnGraph graph;
+    private final BloomFilter assembledKmers;
+    private final byte[] assembled;
+    private byte[] nonBranching = null;
+
+    public ScreeningFeatures(ArrayList<Kmer> kmers, BloomFilterDeBruijnGraph graph, BloomFilter assembledKmers) {
+        this.kmers = kmers;
+        this.graph = graph;
+        this.assembledKmers = assembledKmers;
+        this.assembled = new byte[kmers.size()];
+    }
+
+    public ArrayList<Kmer> getKmers() {
+        return kmers;
+    }
+
+    public BloomFilter getAssembledKmersBloomFilter() {
+        return assembledKmers;
+    }
+
+    public int size() {
+        return assembled.length;
+    }
+
+    /**
+     * @return whether the i-th k-mer is in the assembled k-mers Bloom filter
+     */
+    public boolean isAssembled(int i) {
+        byte b = assembled[i];
+        if (b == UNKNOWN) {
+            b = assembledKmers.lookup(kmers.get(i).getHash()) ? YES : NO;
+            assembled[i] = b;
+        }
+        return b == YES;
+    }
+
+    public boolean isNonBranching(int i) {
+        if (nonBranching == null) {
+            nonBranching = new byte[assembled.length];
+        }
+
+        byte b = nonBranching[i];
+        if (b == UNKNOWN) {
+            b = graph.isNonBranching(kmers.get(i).getHash()) ? YES : NO;
+            nonBranching[i] = b;
+        }
+        return b == YES;
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Compacted unitigs of a de Bruijn graph.
+ * Unitig sequences are packed in 2 bits per base in a single arena, and every
+ * k-mer is indexed by its forward hash value to its unitig and offset.
+ * Consecutive k-mers within a unitig are connected by the only outgoing edge of
+ * the former and the only incoming edge of the latter, so traversals may skip
+ * branch checks within a unitig.
+ *
+ * @author Ka Ming Nip
+ */
+public class UnitigIndex {
+
+    /**
+     * maximum number of k-mers that fit in the largest table
+     */
+    public static final long MAX_NUM_KMERS = (1L << 30) / 4 * 3;
+
+    private static final long EMPTY = -1;
+    private static final byte[] BASES = new byte[]{'A', 'C', 'G', 'T'};
+
+    private final int k;
+    private final long[] arena;
+    private final long[] starts;
+    private final int[] lengths;
+    private final long[] tableKeys;
+    private final long[] tableValues;
+    private final int tableMask;
+
+    public UnitigIndex(BloomFilterDeBruijnGraph graph, Collection<String> unitigs) {
+        this.k = graph.getK();
+
+        int numUnitigs = unitigs.size();
+        starts = new long[numUnitigs];
+        lengths = new int[numUnitigs];
+
+        long numBases = 0;
+        long numKmers = 0;
+        int i = 0;
+        for (String seq : unitigs) {
+            int len = seq.length();
+            starts[i] = numBases;
+            lengths[i] = len;
+            numBases += len;
+            numKmers += len - k + 1;
+            ++i;
+        }
+
+        arena = new long[(int) ((numBases + 31) / 32)];
+
+        int tableSize = Integer.highestOneBit((int) Math.max(16, Math.min(numKmers * 2, 1 << 30)) - 1) << 1;
+        tableKeys = new long[tableSize];
+        tableValues = new long[tableSize];
+        Arrays.fill(tableValues, EMPTY);
+        tableMask = tableSize - 1;
+        int maxTableLoad = tableSize / 4 * 3;
+        int tableLoad = 0;
+
+        i = 0;
+        for (String seq : unitigs) {
+            long pos = starts[i];
+            int len = seq.length();
+            for (int j=0; j<len; ++j) {
+                setBase(pos + j, seq.charAt(j));
+            }
+
+            int offset = 0;
+            for (Kmer kmer : graph.getKmers(seq)) {
+                if (tableLoad < maxTableLoad && put(kmer.fHashVal, ((long) i << 32) | offset)) {
+                    ++tableLoad;
+                }
+                ++offset;
+            }
+
+            ++i;
+        }
+    }
+
+    public UnitigIndex(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            k = in.readInt();
+
+            int numUnitigs = in.readInt();
+            starts = new long[numUnitigs];
+            lengths = new int[numUnitigs];
+            long numBases = 0;
+            for (int i=0; i<numUnitigs; ++i) {
+                int len = in.readInt();
+                starts[i] = numBases;
+                lengths[i] = len;
+                numBases += len;
+            }
+
+            arena = new long[in.readInt()];
+            for (int i=0; i<arena.length; ++i) {
+                arena[i] = in.readLong();
+            }
+
+            int tableSize = in.readInt();
+            tableKeys = new long[tableSize];
+            tableValues = new long[tableSize];
+            for (int i=0; i<tableSize; ++i) {
+                tableKeys[i] = in.readLong();
+                tableValues[i] = in.readLong();
+            }
+            tableMask = tableSize - 1;
+        }
+    }
+
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false)))) {
+            out.writeInt(k);
+
+            out.writeInt(lengths.length);
+            for (int len : lengths) {
+                out.writeInt(len);
+            }
+
+            out.writeInt(arena.length);
+            for (long word : arena) {
+                out.writeLong(word);
+            }
+
+            out.writeInt(tableKeys.length);
+            for (int i=0; i<tableKeys.length; ++i) {
+                out.writeLong(tableKeys[i]);
+                out.writeLong(tableValues[i]);
+            }
+        }
+    }
+
+    public int getNumUnitigs() {
+        return lengths.length;
+    }
+
+    private void setBase(long pos, char c) {
+        int code;
+        switch (c) {
+            case 'C': case 'c':
+                code = 1;
+                break;
+            case 'G': case 'g':
+                code = 2;
+                break;
+            case 'T': case 't':
+                code = 3;
+                break;
+            default:
+                code = 0;
+        }
+
+        arena[(int) (pos >>> 5)] |= ((long) code) << ((pos & 31) << 1);
+    }
+
+    private byte getBase(long pos) {
+        return BASES[(int) (arena[(int) (pos >>> 5)] >>> ((pos & 31) << 1)) & 3];
+    }
+
+    private static int getSlot(long key) {
+        key ^= (key >>> 33);
+        key *= 0xff51afd7ed558ccdL;
+        key ^= (key >>> 33);
+        return (int) key;
+    }
+
+    private boolean put(long key, long value) {
+        int i = getSlot(key) & tableMask;
+        while (tableValues[i] != EMPTY) {
+            if (tableKeys[i] == key) {
+                // keep the first entry
+                return false;
+            }
+            i = (i + 1) & tableMask;
+        }
+
+        tableKeys[i] = key;
+        tableValues[i] = value;
+        
+        return true;
+    }
+
+    /**
+     * @param kmer
+     * @return (unitig id, offset) packed in a long; -1 if `kmer` is not indexed
+     */
+    private long lookup(Kmer kmer) {
+        long key = kmer.fHashVal;
+        int i = getSlot(key) & tableMask;
+        long value;
+        while ((value = tableValues[i]) != EMPTY) {
+            if (tableKeys[i] == key) {
+                // guard against hash collisions
+                long pos = starts[(int) (value >>> 32)] + (int) value;
+                byte[] bytes = kmer.bytes;
+                for (int j=0; j<k; ++j) {
+                    if (getBase(pos + j) != bytes[j]) {
+                        return EMPTY;
+                    }
+                }
+                return value;
+            }
+            i = (i + 1) & tableMask;
+        }
+
+        return EMPTY;
+    }
+
+    private String getBases(int id, int start, int end) {
+        long pos = starts[id];
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i=start; i<end; ++i) {
+            sb.append((char) getBase(pos + i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Add the k-mers following `kmer` on its unitig to `result`.
+     * @param kmer
+     * @param graph
+     * @param maxNumKmers
+     * @param minKmerCov    stop at the first k-mer below this coverage or not in the DBG
+     * @param result
+     * @return number of k-mers added
+     */
+    public int extendRight(Kmer kmer, BloomFilterDeBruijnGraph graph, int maxNumKmers, float minKmerCov, ArrayDeque<Kmer> result) {
+        long entry = lookup(kmer);
+        if (entry == EMPTY) {
+            return 0;
+        }
+
+        int id = (int) (entry >>> 32);
+        int offset = (int) entry;
+        int last = Math.min(lengths[id] - k, offset + maxNumKmers);
+        if (last <= offset) {
+            return 0;
+        }
+
+        int numAdded = 0;
+        for (Kmer n : graph.getKmers(getBases(id, offset + 1, last + k))) {
+            // the count is 0 if the k-mer is not in the DBG
+            if (n.count <= 0 || n.count < minKmerCov) {
+                break;
+            }
+            result.add(n);
+            ++numAdded;
+        }
+
+        return numAdded;
+    }
+
+    /**
+     * Add the k-mers preceding `kmer` on its unitig to `result`, nearest first.
+     * @param kmer
+     * @param graph
+     * @param maxNumKmers
+     * @param minKmerCov    stop at the first k-mer below this coverage or not in the DBG
+     * @param result
+     * @return number of k-mers added
+     */
+    public int extendLeft(Kmer kmer, BloomFilterDeBruijnGraph graph, int maxNumKmers, float minKmerCov, ArrayDeque<Kmer> result) {
+        long entry = lookup(kmer);
+        if (entry == EMPTY) {
+            return 0;
+        }
+
+        int id = (int) (entry >>> 32);
+        int offset = (int) entry;
+        int first = Math.max(0, offset - maxNumKmers);
+        if (first >= offset) {
+            return 0;
+        }
+
+        ArrayList<Kmer> kmers = graph.getKmers(getBases(id, first, offset - 1 + k));
+        int numAdded = 0;
+        for (int i=kmers.size()-1; i>=0; --i) {
+            Kmer n = kmers.get(i);
+            // the count is 0 if the k-mer is not in the DBG
+            if (n.count <= 0 || n.count < minKmerCov) {
+                break;
+            }
+            result.add(n);
+            ++numAdded;
+        }
+
+        return numAdded;
+    }
+}
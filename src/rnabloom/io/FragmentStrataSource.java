@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.io;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reads fragment strata files in priority order into batches for a persistent
+ * pool of assembly workers. At most `MAX_STRATA_IN_FLIGHT` strata are handed out
+ * at a time, so workers may assemble fragments of the next stratum while the
+ * current one drains. Before committing a transcript, a worker waits in
+ * `awaitPreviousStrata` until all higher priority strata are done, so transcripts
+ * are still committed and screened stratum by stratum.
+ *
+ * @author Ka Ming Nip
+ */
+public class FragmentStrataSource implements Runnable {
+    private final static int BATCH_SIZE = 64;
+    private final static int MAX_STRATA_IN_FLIGHT = 2;
+
+    public static class Stratum {
+        public final String path;
+        public final String outputPrefix;
+        public final boolean extendBranchFreeOnly;
+
+        public Stratum(String path, String outputPrefix, boolean extendBranchFreeOnly) {
+            this.path = path;
+            this.outputPrefix = outputPrefix;
+            this.extendBranchFreeOnly = extendBranchFreeOnly;
+        }
+    }
+
+    public static class Batch {
+        public final int stratumIndex;
+        public final Stratum stratum;
+        public final ArrayList<String> fragments;
+
+        private Batch(int stratumIndex, Stratum stratum, ArrayList<String> fragments) {
+            this.stratumIndex = stratumIndex;
+            this.stratum = stratum;
+            this.fragments = fragments;
+        }
+    }
+
+    private final static Batch END_OF_STRATA = new Batch(-1, null, null);
+
+    private final ArrayList<Stratum> strata;
+    private final ArrayBlockingQueue<Batch> queue;
+    private final long[] numRead;
+    private final long[] numDone;
+    private int numStrataDone = 0;
+    private boolean failed = false;
+
+    public FragmentStrataSource(ArrayList<Stratum> strata, int numWorkers) {
+        this.strata = strata;
+        this.queue = new ArrayBlockingQueue<>(2 * numWorkers + 2);
+
+        int numStrata = strata.size();
+        numRead = new long[numStrata];
+        numDone = new long[numStrata];
+        for (int i=0; i<numStrata; ++i) {
+            numRead[i] = -1;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            int numStrata = strata.size();
+            for (int i=0; i<numStrata; ++i) {
+                // do not run ahead of the strata still being assembled
+                awaitPreviousStrata(i - MAX_STRATA_IN_FLIGHT + 1);
+
+                Stratum s = strata.get(i);
+                System.out.println("Parsing `" + s.path + "`...");
+
+                NucleotideBitsReader fin = new NucleotideBitsReader(s.path);
+                long count = 0;
+                ArrayList<String> batch = new ArrayList<>(BATCH_SIZE);
+                String seq;
+                while ((seq = fin.next()) != null) {
+                    batch.add(seq);
+                    if (batch.size() >= BATCH_SIZE) {
+                        count += batch.size();
+                        queue.put(new Batch(i, s, batch));
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                fin.close();
+
+                if (!batch.isEmpty()) {
+                    count += batch.size();
+                    queue.put(new Batch(i, s, batch));
+                }
+
+                setNumRead(i, count);
+            }
+        }
+        catch (Exception ex) {
+            fail();
+            ex.printStackTrace();
+            throw new RuntimeException(ex);
+        }
+        finally {
+            try {
+                queue.put(END_OF_STRATA);
+            }
+            catch (InterruptedException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return the next batch of fragments, or null if all strata have been read
+     */
+    public Batch take() throws InterruptedException {
+        Batch b = queue.take();
+        if (b == END_OF_STRATA) {
+            // let the other workers see the end too
+            queue.put(b);
+            return null;
+        }
+        return b;
+    }
+
+    /**
+     * Mark all fragments in `batch` as assembled (or discarded).
+     */
+    public synchronized void done(Batch batch) {
+        numDone[batch.stratumIndex] += batch.fragments.size();
+        update();
+    }
+
+    /**
+     * @return whether all strata before `stratumIndex` are done
+     */
+    public synchronized boolean isPreviousStrataDone(int stratumIndex) {
+        return failed || numStrataDone >= stratumIndex;
+    }
+
+    /**
+     * Block until all strata before `stratumIndex` are done.
+     */
+    public synchronized void awaitPreviousStrata(int stratumIndex) throws InterruptedException {
+        while (!failed && numStrataDone < stratumIndex) {
+            wait();
+        }
+    }
+
+    private synchronized void setNumRead(int stratumIndex, long count) {
+        numRead[stratumIndex] = count;
+        update();
+    }
+
+    private synchronized void fail() {
+        failed = true;
+        notifyAll();
+    }
+
+    private void update() {
+        int numStrata = strata.size();
+        while (numStrataDone < numStrata &&
+                numRead[numStrataDone] >= 0 &&
+                numDone[numStrataDone] == numRead[numStrataDone]) {
+            ++numStrataDone;
+        }
+        notifyAll();
+    }
+}
@@ -5,13 +5,17 @@
  */
 package rnabloom.io;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import static rnabloom.io.NucleotideBitsWriter.INDEX_EXT;
 import static rnabloom.util.NucleotideBitsUtils.byteArrayToSeq;
 
 /**
@@ -19,29 +23,93 @@ import static rnabloom.util.NucleotideBitsUtils.byteArrayToSeq;
  * @author kmnip
  */
 public class NucleotideBitsReader implements SequenceFileIteratorInterface {
-    private FileInputStream fin;
-    private byte[] seqLenBytes = new byte[4];
+    private final static int IO_BUFFER_SIZE = 1 << 16;
+    
+    private final DataInputStream fin;
+    private final long end;
+    private long offset;
     
     public NucleotideBitsReader(String path) throws FileNotFoundException, IOException {
-        fin = new FileInputStream(path);
+        this(path, 0, Long.MAX_VALUE);
+    }
+    
+    /**
+     * Read only the records within [start, end) of the file; both must be record boundaries,
+     * eg. from `getSplits`.
+     */
+    public NucleotideBitsReader(String path, long start, long end) throws FileNotFoundException, IOException {
+        FileInputStream fis = new FileInputStream(path);
+        fis.getChannel().position(start);
+        fin = new DataInputStream(new BufferedInputStream(fis, IO_BUFFER_SIZE));
+        this.offset = start;
+        this.end = end;
     }
         
+    @Override
     public synchronized String next() throws IOException {
-        if (fin.read(seqLenBytes) > 0) {
-            int seqLen = ByteBuffer.wrap(Arrays.copyOfRange(seqLenBytes, 0, 4)).getInt();
-            byte[] seqBytes = new byte[seqLen % 4 > 0 ? seqLen/4+1 : seqLen/4];
-            if (fin.read(seqBytes) > 0) {
-                return byteArrayToSeq(seqLen, seqBytes);
-            }
+        if (offset >= end) {
+            return null;
+        }
+        
+        int seqLen;
+        try {
+            seqLen = fin.readInt();
+        }
+        catch (EOFException e) {
+            return null;
         }
         
-        return null;
+        byte[] seqBytes = new byte[seqLen % 4 > 0 ? seqLen/4+1 : seqLen/4];
+        fin.readFully(seqBytes);
+        offset += 4 + seqBytes.length;
+        
+        return seqLen > 0 ? byteArrayToSeq(seqLen, seqBytes) : "";
     }
     
     public void close() throws IOException {
         fin.close();
     }
     
+    /**
+     * Split the file at indexed record boundaries into at most `numSplits` ranges of similar size.
+     * @return  boundaries of the ranges, ie. range i is [splits[i], splits[i+1])
+     */
+    public static long[] getSplits(String path, int numSplits) throws IOException {
+        long length = new File(path).length();
+        
+        ArrayList<Long> blocks = new ArrayList<>();
+        blocks.add(0L);
+        
+        File idxFile = new File(path + INDEX_EXT);
+        if (numSplits > 1 && idxFile.isFile()) {
+            DataInputStream idx = new DataInputStream(new BufferedInputStream(new FileInputStream(idxFile)));
+            long numBlocks = idxFile.length() / 8;
+            for (long i=0; i<numBlocks; ++i) {
+                long b = idx.readLong();
+                if (b > blocks.get(blocks.size()-1) && b < length) {
+                    blocks.add(b);
+                }
+            }
+            idx.close();
+        }
+        
+        ArrayList<Long> splits = new ArrayList<>(numSplits + 1);
+        splits.add(0L);
+        double splitSize = (double) length / numSplits;
+        for (long b : blocks) {
+            if (b > 0 && b >= splits.size() * splitSize) {
+                splits.add(b);
+            }
+        }
+        splits.add(length);
+        
+        long[] result = new long[splits.size()];
+        for (int i=0; i<result.length; ++i) {
+            result[i] = splits.get(i);
+        }
+        return result;
+    }
+    
     public static void main(String[] args) {
         String[] seqs = new String[]{"CACGAGACCTCTCTACATCTCGTATGCCGTCTTCTGCTTGAAAAAAAAAAGGCAGCT",
                                     "CCCAGATGGGTCTTGTCCCAGGTGCGGCTACAGCAGTGGGG",
@@ -5,30 +5,54 @@
  */
 package rnabloom.io;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import static rnabloom.util.NucleotideBitsUtils.seqToByteArray;
 
 /**
+ * Writes sequences as records of sequence length (int) followed by the 2-bit
+ * packed sequence. The offset of the first record of every block of about
+ * `BLOCK_SIZE` bytes is written to an index file, so that readers can split
+ * the file at record boundaries.
  *
  * @author kmnip
  */
 public class NucleotideBitsWriter {
-    private final FileOutputStream out;
+    public final static String INDEX_EXT = ".idx";
+    
+    private final static int BLOCK_SIZE = 1 << 20;
+    private final static int IO_BUFFER_SIZE = 1 << 16;
+    
+    private final BufferedOutputStream out;
+    private final DataOutputStream idx;
+    private long offset;
+    private long blockStart;
     
     public NucleotideBitsWriter(String path, boolean append) throws IOException {
-        out = new FileOutputStream(path, append);
+        offset = append ? new File(path).length() : 0;
+        blockStart = offset;
+        out = new BufferedOutputStream(new FileOutputStream(path, append), IO_BUFFER_SIZE);
+        idx = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path + INDEX_EXT, append)));
     }
     
     public void write(String seq) throws IOException {
         byte[] bytes = seqToByteArray(seq);
         synchronized(this) {
+            if (offset >= blockStart + BLOCK_SIZE) {
+                idx.writeLong(offset);
+                blockStart = offset;
+            }
+            
             out.write(bytes);
+            offset += bytes.length;
         }
     }
     
-    public void close() throws IOException {
-        out.flush();
+    public synchronized void close() throws IOException {
         out.close();
+        idx.close();
     }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import static rnabloom.io.SortedLongReadsWriter.INDEX_EXT;
+import static rnabloom.util.NucleotideBitsUtils.byteArrayToSeq;
+
+/**
+ * Streams the reads written by `SortedLongReadsWriter` in sorted order.
+ *
+ * @author Ka Ming Nip
+ */
+public class SortedLongReadsReader implements SequenceFileIteratorInterface {
+    private final DataInputStream in;
+    private final long numReads;
+    private final int[] strata;
+    private final long[] stratumOffsets;
+    private final long[] stratumCounts;
+
+    private int stratum = -1;
+    private float coverage = 0;
+
+    public SortedLongReadsReader(String path) throws IOException {
+        DataInputStream idx = new DataInputStream(new BufferedInputStream(new FileInputStream(path + INDEX_EXT)));
+        numReads = idx.readLong();
+        int numStrata = idx.readInt();
+        strata = new int[numStrata];
+        stratumOffsets = new long[numStrata];
+        stratumCounts = new long[numStrata];
+        for (int i=0; i<numStrata; ++i) {
+            strata[i] = idx.readInt();
+            stratumOffsets[i] = idx.readLong();
+            stratumCounts[i] = idx.readLong();
+        }
+        idx.close();
+
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16));
+    }
+
+    /**
+     * @return the next sequence, or null if there are no more reads
+     * @throws IOException
+     */
+    @Override
+    public String next() throws IOException {
+        try {
+            stratum = in.readUnsignedByte();
+        }
+        catch (EOFException e) {
+            return null;
+        }
+
+        coverage = in.readFloat();
+        int length = in.readInt();
+        byte[] bytes = new byte[length % 4 > 0 ? length/4 + 1 : length/4];
+        in.readFully(bytes);
+
+        return length > 0 ? byteArrayToSeq(length, bytes) : "";
+    }
+
+    /**
+     * @return coverage stratum of the last read returned by `next`
+     */
+    public int getStratum() {
+        return stratum;
+    }
+
+    /**
+     * @return coverage of the last read returned by `next`
+     */
+    public float getCoverage() {
+        return coverage;
+    }
+
+    public long getNumReads() {
+        return numReads;
+    }
+
+    /**
+     * @return coverage strata present in the file, in file order
+     */
+    public int[] getStrata() {
+        return strata;
+    }
+
+    public long[] getStratumOffsets() {
+        return stratumOffsets;
+    }
+
+    public long[] getStratumCounts() {
+        return stratumCounts;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
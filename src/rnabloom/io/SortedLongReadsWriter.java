@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import static rnabloom.util.NucleotideBitsUtils.seqToByteArray;
+
+/**
+ * Writes long reads into a single 2-bit file sorted by decreasing coverage
+ * stratum, then by decreasing length. Reads are buffered up to a memory budget,
+ * sorted and spilled into runs, which are merged when the writer is closed.
+ * Reads with equal keys keep the order in which they were written.
+ *
+ * Each record is: coverage stratum (1 byte), coverage (float), sequence length
+ * (int), followed by the 2-bit packed sequence. An index file lists, for each
+ * stratum present, its id, its offset in the file and its number of reads.
+ *
+ * @author Ka Ming Nip
+ */
+public class SortedLongReadsWriter {
+    public final static String INDEX_EXT = ".idx";
+
+    private final static int MAX_RUN_RECORDS = 1 << 24;
+    private final static int IO_BUFFER_SIZE = 1 << 16;
+    private final static int RECORD_OVERHEAD = 64; // approx. object and key overhead per record
+
+    private final String path;
+    private final long memoryBudget;
+
+    private ArrayList<byte[]> records = new ArrayList<>();
+    private long[] keys = new long[1024];
+    private long bufferedBytes = 0;
+
+    private final ArrayList<File> runs = new ArrayList<>();
+    private long numReads = 0;
+
+    public SortedLongReadsWriter(String path, long memoryBudget) {
+        this.path = path;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * key: stratum descending, length descending, then arrival order within a run
+     */
+    private static long getKey(int stratum, int length, int ordinal) {
+        return ((long) (0xFF - stratum) << 55) | ((long) (Integer.MAX_VALUE - length) << 24) | ordinal;
+    }
+
+    private static int getOrdinal(long key) {
+        return (int) (key & 0xFFFFFF);
+    }
+
+    public synchronized void write(int coverageStratum, float coverage, String seq) throws IOException {
+        byte[] packed = seqToByteArray(seq); // 4 bytes for length, then the packed sequence
+        byte[] record = new byte[5 + packed.length];
+        record[0] = (byte) coverageStratum;
+        int covBits = Float.floatToIntBits(coverage);
+        record[1] = (byte) (covBits >>> 24);
+        record[2] = (byte) (covBits >>> 16);
+        record[3] = (byte) (covBits >>> 8);
+        record[4] = (byte) covBits;
+        System.arraycopy(packed, 0, record, 5, packed.length);
+
+        int ordinal = records.size();
+        if (ordinal == keys.length) {
+            keys = Arrays.copyOf(keys, ordinal * 2);
+        }
+        keys[ordinal] = getKey(coverageStratum, seq.length(), ordinal);
+        records.add(record);
+        bufferedBytes += record.length + RECORD_OVERHEAD;
+        ++numReads;
+
+        if (bufferedBytes >= memoryBudget || records.size() >= MAX_RUN_RECORDS) {
+            spill();
+        }
+    }
+
+    private void writeSorted(DataOutputStream out, ArrayList<Integer> strata, ArrayList<Long> offsets, ArrayList<Long> counts) throws IOException {
+        int numRecords = records.size();
+        Arrays.sort(keys, 0, numRecords);
+        long offset = 0;
+        for (int i=0; i<numRecords; ++i) {
+            byte[] record = records.get(getOrdinal(keys[i]));
+            if (strata != null) {
+                updateIndex(record[0], offset, strata, offsets, counts);
+            }
+            out.write(record);
+            offset += record.length;
+        }
+
+        records = new ArrayList<>();
+        bufferedBytes = 0;
+    }
+
+    private void spill() throws IOException {
+        File run = new File(path + ".run" + runs.size());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_SIZE));
+        writeSorted(out, null, null, null);
+        out.close();
+        runs.add(run);
+    }
+
+    private static void updateIndex(int stratum, long offset, ArrayList<Integer> strata, ArrayList<Long> offsets, ArrayList<Long> counts) {
+        int last = strata.size() - 1;
+        if (last < 0 || strata.get(last) != stratum) {
+            strata.add(stratum);
+            offsets.add(offset);
+            counts.add(1L);
+        }
+        else {
+            counts.set(last, counts.get(last) + 1);
+        }
+    }
+
+    private static class RunCursor {
+        final DataInputStream in;
+        final int runIndex;
+        byte[] record = null;
+        long key;
+
+        RunCursor(File run, int runIndex) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), IO_BUFFER_SIZE));
+            this.runIndex = runIndex;
+        }
+
+        boolean advance() throws IOException {
+            int stratum;
+            try {
+                stratum = in.readUnsignedByte();
+            }
+            catch (EOFException e) {
+                record = null;
+                return false;
+            }
+
+            int covBits = in.readInt();
+            int length = in.readInt();
+            int numBytes = length % 4 > 0 ? length/4 + 1 : length/4;
+
+            record = new byte[9 + numBytes];
+            record[0] = (byte) stratum;
+            record[1] = (byte) (covBits >>> 24);
+            record[2] = (byte) (covBits >>> 16);
+            record[3] = (byte) (covBits >>> 8);
+            record[4] = (byte) covBits;
+            record[5] = (byte) (length >>> 24);
+            record[6] = (byte) (length >>> 16);
+            record[7] = (byte) (length >>> 8);
+            record[8] = (byte) length;
+            in.readFully(record, 9, numBytes);
+
+            // runs are merged in order, so the run index breaks ties
+            key = getKey(stratum, length, runIndex);
+            return true;
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        ArrayList<Integer> strata = new ArrayList<>();
+        ArrayList<Long> offsets = new ArrayList<>();
+        ArrayList<Long> counts = new ArrayList<>();
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), IO_BUFFER_SIZE));
+
+        if (runs.isEmpty()) {
+            // everything fits in memory
+            writeSorted(out, strata, offsets, counts);
+        }
+        else {
+            if (!records.isEmpty()) {
+                spill();
+            }
+
+            PriorityQueue<RunCursor> heap = new PriorityQueue<>(runs.size(),
+                    (a, b) -> Long.compare(a.key, b.key));
+            for (int i=0; i<runs.size(); ++i) {
+                RunCursor c = new RunCursor(runs.get(i), i);
+                if (c.advance()) {
+                    heap.add(c);
+                }
+                else {
+                    c.in.close();
+                }
+            }
+
+            long offset = 0;
+            while (!heap.isEmpty()) {
+                RunCursor c = heap.poll();
+                updateIndex(c.record[0], offset, strata, offsets, counts);
+                out.write(c.record);
+                offset += c.record.length;
+
+                if (c.advance()) {
+                    heap.add(c);
+                }
+                else {
+                    c.in.close();
+                }
+            }
+
+            for (File run : runs) {
+                run.delete();
+            }
+            runs.clear();
+        }
+
+        out.close();
+
+        DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path + INDEX_EXT)));
+        idx.writeLong(numReads);
+        idx.writeInt(strata.size());
+        for (int i=0; i<strata.size(); ++i) {
+            idx.writeInt(strata.get(i));
+            idx.writeLong(offsets.get(i));
+            idx.writeLong(counts.get(i));
+        }
+        idx.close();
+    }
+
+    public long getNumReads() {
+        return numReads;
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.olc;
+
+import java.util.Arrays;
+import java.util.List;
+import rnabloom.bloom.hash.CanonicalNTHashIterator;
+import rnabloom.bloom.hash.NTHashIterator;
+import rnabloom.util.MinimizerSketcher;
+import static rnabloom.util.SeqUtils.reverseComplement;
+
+/**
+ * Finds sequences that are contained in longer sequences.
+ * Sequences are indexed by their minimizers in a primitive inverted index.
+ * Longer sequences sharing enough minimizers with a query are confirmed by a
+ * banded alignment around the diagonal of their shared k-mers.
+ *
+ * Sequences must be sorted by length in descending order; a sequence can only
+ * be contained in a sequence before it. `sketch` must be called for every
+ * sequence before `buildIndex`, and `isContained` only after it. Both `sketch`
+ * and `isContained` may be called concurrently.
+ *
+ * @author kmnip
+ */
+public class ContainmentFilter {
+
+    private final static int K = 15;
+    private final static int WINDOW_SIZE = 10;
+    private final static int MAX_CANDIDATES = 3;
+    private final static int MIN_BAND_WIDTH = 16;
+    private final static long KMER_MASK = (1L << (2*K)) - 1;
+
+    private final List<String> seqs;
+    private final boolean stranded;
+    private final float minSharedMinimizerProportion;
+    private final float minIdentity;
+    private final int maxEdgeClip;
+    private final int maxIndelSize;
+    private final int bandWidth;
+
+    private final long[][] sketches;
+
+    // inverted index
+    private long[] indexKeys;
+    private int[] indexStarts;
+    private int[] indexCounts;
+    private int indexMask;
+    private int[] postings;
+
+    private final ThreadLocal<Workspace> workspaces;
+
+    private class Workspace {
+        final NTHashIterator itr = stranded ? new NTHashIterator(K, 1) : new CanonicalNTHashIterator(K, 1);
+        final MinimizerSketcher sketcher = new MinimizerSketcher();
+        final int[] sharedCounts = new int[seqs.size()];
+        int[] touched = new int[1024];
+
+        // k-mer positions of the target
+        long[] kmerKeys = new long[1024];
+        int[] kmerPositions = new int[1024];
+        int[] kmerStamps = new int[1024];
+        int stamp = 0;
+        int[] diagonals = new int[1024];
+
+        // alignment rows, one segment of `width + 2` cells per state
+        int[] prevDist = new int[64];
+        int[] prevStart = new int[64];
+        int[] currDist = new int[64];
+        int[] currStart = new int[64];
+    }
+
+    /**
+     * @param seqs  sorted by length in descending order
+     * @param stranded
+     * @param minSharedMinimizerProportion  proportion of a query's minimizers that a candidate must share
+     * @param minIdentity   minimum alignment identity
+     * @param maxEdgeClip   number of bases at either end of a query allowed to be left unaligned
+     * @param maxIndelSize    maximum length of an insertion or deletion in the alignment
+     */
+    public ContainmentFilter(List<String> seqs, boolean stranded, float minSharedMinimizerProportion,
+            float minIdentity, int maxEdgeClip, int maxIndelSize) {
+        this.seqs = seqs;
+        this.stranded = stranded;
+        this.minSharedMinimizerProportion = minSharedMinimizerProportion;
+        this.minIdentity = minIdentity;
+        this.maxEdgeClip = maxEdgeClip;
+        this.maxIndelSize = maxIndelSize;
+        this.bandWidth = MIN_BAND_WIDTH + maxIndelSize;
+        this.sketches = new long[seqs.size()][];
+        this.workspaces = ThreadLocal.withInitial(Workspace::new);
+    }
+
+    public void sketch(int id) {
+        Workspace ws = workspaces.get();
+        ws.sketcher.sketch(seqs.get(id), ws.itr, WINDOW_SIZE);
+        sketches[id] = ws.sketcher.toArray();
+    }
+
+    private static int getSlot(long key, int mask) {
+        key ^= (key >>> 33);
+        key *= 0xff51afd7ed558ccdL;
+        key ^= (key >>> 33);
+        return (int) key & mask;
+    }
+
+    private int lookup(long key) {
+        int slot = getSlot(key, indexMask);
+        while (indexCounts[slot] > 0) {
+            if (indexKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & indexMask;
+        }
+        return -1;
+    }
+
+    public void buildIndex() {
+        long numEntries = 0;
+        for (long[] sketch : sketches) {
+            numEntries += sketch.length;
+        }
+
+        if (numEntries > Integer.MAX_VALUE - 8) {
+            throw new RuntimeException("Too many minimizers (" + numEntries + ") to index");
+        }
+
+        int tableSize = Integer.highestOneBit((int) Math.max(16, Math.min(numEntries * 2, 1 << 30)) - 1) << 1;
+        indexKeys = new long[tableSize];
+        indexStarts = new int[tableSize];
+        indexCounts = new int[tableSize];
+        indexMask = tableSize - 1;
+
+        // count postings of each minimizer
+        for (long[] sketch : sketches) {
+            for (long m : sketch) {
+                int slot = getSlot(m, indexMask);
+                while (indexCounts[slot] > 0 && indexKeys[slot] != m) {
+                    slot = (slot + 1) & indexMask;
+                }
+                indexKeys[slot] = m;
+                ++indexCounts[slot];
+            }
+        }
+
+        int offset = 0;
+        for (int slot=0; slot<tableSize; ++slot) {
+            indexStarts[slot] = offset;
+            offset += indexCounts[slot];
+        }
+
+        // fill postings in ascending id order
+        postings = new int[offset];
+        int[] fill = Arrays.copyOf(indexStarts, tableSize);
+        for (int id=0; id<sketches.length; ++id) {
+            for (long m : sketches[id]) {
+                postings[fill[lookup(m)]++] = id;
+            }
+        }
+    }
+
+    public boolean isContained(int id) {
+        long[] sketch = sketches[id];
+        if (sketch.length == 0) {
+            return false;
+        }
+
+        Workspace ws = workspaces.get();
+        int[] sharedCounts = ws.sharedCounts;
+        int numTouched = 0;
+
+        for (long m : sketch) {
+            int slot = lookup(m);
+            int end = indexStarts[slot] + indexCounts[slot];
+            for (int i=indexStarts[slot]; i<end; ++i) {
+                int target = postings[i];
+                if (target >= id) {
+                    // only longer sequences
+                    break;
+                }
+
+                if (sharedCounts[target]++ == 0) {
+                    if (numTouched == ws.touched.length) {
+                        ws.touched = Arrays.copyOf(ws.touched, numTouched * 2);
+                    }
+                    ws.touched[numTouched++] = target;
+                }
+            }
+        }
+
+        // pick the candidates sharing the most minimizers
+        int minShared = Math.max(1, (int) Math.ceil(minSharedMinimizerProportion * sketch.length));
+        int[] candidates = new int[MAX_CANDIDATES];
+        int numCandidates = 0;
+        for (int t=0; t<numTouched; ++t) {
+            int target = ws.touched[t];
+            int count = sharedCounts[target];
+            if (count >= minShared) {
+                int i = Math.min(numCandidates, MAX_CANDIDATES - 1);
+                if (numCandidates < MAX_CANDIDATES || count > sharedCounts[candidates[i]]) {
+                    // insertion into the sorted candidate list
+                    while (i > 0 && sharedCounts[candidates[i-1]] < count) {
+                        candidates[i] = candidates[i-1];
+                        --i;
+                    }
+                    candidates[i] = target;
+                    numCandidates = Math.min(numCandidates + 1, MAX_CANDIDATES);
+                }
+            }
+        }
+
+        for (int t=0; t<numTouched; ++t) {
+            sharedCounts[ws.touched[t]] = 0;
+        }
+
+        String query = seqs.get(id);
+        for (int c=0; c<numCandidates; ++c) {
+            if (isContained(query, seqs.get(candidates[c]), ws)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int baseCode(char c) {
+        switch (c) {
+            case 'C': case 'c':
+                return 1;
+            case 'G': case 'g':
+                return 2;
+            case 'T': case 't': case 'U': case 'u':
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    private void indexTargetKmers(String target, Workspace ws) {
+        int len = target.length();
+        int tableSize = Integer.highestOneBit(Math.max(16, len * 2) - 1) << 1;
+        if (ws.kmerKeys.length < tableSize) {
+            ws.kmerKeys = new long[tableSize];
+            ws.kmerPositions = new int[tableSize];
+            ws.kmerStamps = new int[tableSize];
+            ws.stamp = 0;
+        }
+
+        // stamps mark the slots in use for the current target
+        if (++ws.stamp == Integer.MAX_VALUE) {
+            Arrays.fill(ws.kmerStamps, 0);
+            ws.stamp = 1;
+        }
+
+        int mask = ws.kmerKeys.length - 1;
+        long kmer = 0;
+        for (int i=0; i<len; ++i) {
+            kmer = ((kmer << 2) | baseCode(target.charAt(i))) & KMER_MASK;
+            if (i >= K-1) {
+                int slot = getSlot(kmer, mask);
+                while (ws.kmerStamps[slot] == ws.stamp && ws.kmerKeys[slot] != kmer) {
+                    slot = (slot + 1) & mask;
+                }
+                if (ws.kmerStamps[slot] != ws.stamp) {
+                    // keep the first occurrence
+                    ws.kmerStamps[slot] = ws.stamp;
+                    ws.kmerKeys[slot] = kmer;
+                    ws.kmerPositions[slot] = i - K + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of k-mers of `query` found in the indexed target; their diagonals are in `ws.diagonals`
+     */
+    private int getDiagonals(String query, Workspace ws) {
+        int len = query.length();
+        if (ws.diagonals.length < len) {
+            ws.diagonals = new int[len];
+        }
+
+        int mask = ws.kmerKeys.length - 1;
+        int numHits = 0;
+        long kmer = 0;
+        for (int i=0; i<len; ++i) {
+            kmer = ((kmer << 2) | baseCode(query.charAt(i))) & KMER_MASK;
+            if (i >= K-1) {
+                int slot = getSlot(kmer, mask);
+                while (ws.kmerStamps[slot] == ws.stamp) {
+                    if (ws.kmerKeys[slot] == kmer) {
+                        ws.diagonals[numHits++] = ws.kmerPositions[slot] - (i - K + 1);
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+            }
+        }
+
+        return numHits;
+    }
+
+    private boolean isContained(String query, String target, Workspace ws) {
+        indexTargetKmers(target, ws);
+
+        int numHits = getDiagonals(query, ws);
+        String bestQuery = query;
+
+        if (!stranded) {
+            int[] fwdDiagonals = Arrays.copyOf(ws.diagonals, numHits);
+            String rc = reverseComplement(query);
+            int rcNumHits = getDiagonals(rc, ws);
+            if (rcNumHits > numHits) {
+                numHits = rcNumHits;
+                bestQuery = rc;
+            }
+            else {
+                System.arraycopy(fwdDiagonals, 0, ws.diagonals, 0, numHits);
+            }
+        }
+
+        if (numHits == 0) {
+            return false;
+        }
+
+        Arrays.sort(ws.diagonals, 0, numHits);
+        int diagonal = ws.diagonals[numHits/2];
+
+        return alignsWithin(bestQuery, target, diagonal, ws);
+    }
+
+    /**
+     * Banded edit-distance alignment of `query` against `target` around `diagonal`.
+     * The query must be aligned end-to-end except for up to `maxEdgeClip` bases at either end;
+     * the target may be entered and left anywhere. At most `maxIndelSize` inserted or deleted
+     * bases are allowed in the whole alignment. This is stricter than `Layout.hasGoodAlignment`,
+     * which limits each indel; under unit costs, longer indels could otherwise be spread into
+     * many short ones. Sequences missed here are still resolved by the overlap layout.
+     */
+    private boolean alignsWithin(String query, String target, int diagonal, Workspace ws) {
+        int qLen = query.length();
+        int tLen = target.length();
+        int width = 2 * bandWidth + 1;
+        int rowSize = width + 2;
+        
+        // one row segment for each number of indel bases used so far
+        int numStates = maxIndelSize + 1;
+        int numCells = numStates * rowSize;
+
+        if (ws.prevDist.length < numCells) {
+            ws.prevDist = new int[numCells];
+            ws.prevStart = new int[numCells];
+            ws.currDist = new int[numCells];
+            ws.currStart = new int[numCells];
+        }
+
+        int[] prevDist = ws.prevDist;
+        int[] prevStart = ws.prevStart;
+        int[] currDist = ws.currDist;
+        int[] currStart = ws.currStart;
+        final int inf = Integer.MAX_VALUE / 2;
+
+        // cell (i, j) with c indel bases is stored at index c * rowSize + j - (i + diagonal - bandWidth) + 1,
+        // with sentinels at both ends of each segment
+        Arrays.fill(prevDist, 0, numCells, inf);
+        Arrays.fill(currDist, 0, numCells, inf);
+        for (int b=1; b<=width; ++b) {
+            int j = diagonal - bandWidth + b - 1;
+            if (j >= 0 && j <= tLen) {
+                prevDist[b] = 0;
+                prevStart[b] = 0;
+            }
+        }
+
+        float bestIdentity = -1;
+        int minEndRow = Math.max(1, qLen - maxEdgeClip);
+
+        for (int i=1; i<=qLen; ++i) {
+            int qc = baseCode(query.charAt(i-1));
+            int jOffset = i + diagonal - bandWidth - 1;
+            boolean canStart = i <= maxEdgeClip;
+
+            for (int b=1; b<=width; ++b) {
+                int j = jOffset + b;
+                if (j < 0 || j > tLen) {
+                    for (int c=0; c<numStates; ++c) {
+                        currDist[c * rowSize + b] = inf;
+                    }
+                    continue;
+                }
+
+                int cost = j > 0 && qc == baseCode(target.charAt(j-1)) ? 0 : 1;
+                int best = inf;
+                int bestStart = 0;
+
+                for (int c=0; c<numStates; ++c) {
+                    int idx = c * rowSize + b;
+
+                    // diagonal move from (i-1, j-1) is stored at the same index in the previous row
+                    int d = inf;
+                    int s = 0;
+                    if (j > 0 && prevDist[idx] < inf) {
+                        d = prevDist[idx] + cost;
+                        s = prevStart[idx];
+                    }
+
+                    if (c > 0) {
+                        // deletion from (i-1, j)
+                        int prev = prevDist[idx - rowSize + 1];
+                        if (prev + 1 < d) {
+                            d = prev + 1;
+                            s = prevStart[idx - rowSize + 1];
+                        }
+
+                        // insertion from (i, j-1)
+                        prev = currDist[idx - rowSize - 1];
+                        if (prev + 1 < d) {
+                            d = prev + 1;
+                            s = currStart[idx - rowSize - 1];
+                        }
+                    }
+                    else if (canStart && d > 0) {
+                        // clip the start of the query
+                        d = 0;
+                        s = i;
+                    }
+
+                    currDist[idx] = d;
+                    currStart[idx] = s;
+
+                    if (d < best) {
+                        best = d;
+                        bestStart = s;
+                    }
+                }
+
+                if (i >= minEndRow && best < inf) {
+                    int alignedLength = i - bestStart;
+                    if (alignedLength > 0 && alignedLength >= qLen - 2 * maxEdgeClip) {
+                        float identity = 1 - best / (float) alignedLength;
+                        if (identity > bestIdentity) {
+                            bestIdentity = identity;
+                        }
+                    }
+                }
+            }
+
+            int[] tmp = prevDist;
+            prevDist = currDist;
+            currDist = tmp;
+            tmp = prevStart;
+            prevStart = currStart;
+            currStart = tmp;
+        }
+
+        return bestIdentity >= minIdentity;
+    }
+}
@@ -33,6 +33,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.GZIPOutputStream;
 import rnabloom.io.FastaReader;
+import rnabloom.io.FastaWriter;
 
 /**
  *
@@ -219,6 +220,43 @@ public class OverlapLayoutConcensus {
         return runCommand(command, concensusFastaPath + LOG_EXTENSION);
     }
         
+    /**
+     * In-process alternative to `concensusWithRacon` for small clusters.
+     */
+    public static boolean concensusWithPoa(String readsPath, String concensusFastaPath, boolean stranded, PoaConsensus poa) {
+        try {
+            ArrayList<String> reads = new ArrayList<>();
+            FastaReader reader = new FastaReader(readsPath);
+            while (reader.hasNext()) {
+                reads.add(reader.next());
+            }
+            reader.close();
+            
+            return concensusWithPoa(reads, concensusFastaPath, stranded, poa);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    public static boolean concensusWithPoa(List<String> reads, String concensusFastaPath, boolean stranded, PoaConsensus poa) {
+        try {
+            String concensus = poa.getConsensus(reads, stranded);
+            
+            // same comment fields as racon
+            FastaWriter writer = new FastaWriter(concensusFastaPath, false);
+            writer.write("poa LN:i:" + concensus.length() + " RC:i:" + reads.size(), concensus);
+            writer.close();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        
+        return true;
+    }
+    
     public static String[] findLongestSequence(String fasta) throws IOException {
         FastaReader reader = new FastaReader(fasta);
         
@@ -0,0 +1,556 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.olc;
+
+import java.util.Arrays;
+import java.util.Collection;
+import rnabloom.util.LongHashSet;
+import static rnabloom.util.SeqUtils.reverseComplement;
+
+/**
+ * Consensus of a small set of reads by partial-order alignment (POA).
+ * Each read is aligned to the partial-order graph of the previous reads with
+ * linear gap penalties; the read is aligned end-to-end while the graph may be
+ * entered and left anywhere. The band of read positions computed for each node
+ * follows the best-scoring positions of its predecessors.
+ * The consensus is the heaviest path through the graph.
+ *
+ * All buffers are reused between calls, so one instance should be kept per thread.
+ *
+ * @author kmnip
+ */
+public class PoaConsensus {
+
+    private final static int MATCH = 5;
+    private final static int MISMATCH = -4;
+    private final static int GAP = -8;
+    private final static int NEG_INF = Integer.MIN_VALUE / 2;
+
+    private final static int ORIENTATION_K = 15;
+
+    private final int bandWidth;
+
+    // graph
+    private int numNodes = 0;
+    private byte[] nodeBases = new byte[1024];
+    private int[] nodeCoverages = new int[1024];
+    private int[] alignedNext = new int[1024]; // circular list of nodes aligned to each other
+    private int[] outHeads = new int[1024];
+    private int[] inHeads = new int[1024];
+
+    // edges
+    private int numEdges = 0;
+    private int[] edgeFroms = new int[1024];
+    private int[] edgeTos = new int[1024];
+    private int[] edgeWeights = new int[1024];
+    private int[] outNexts = new int[1024];
+    private int[] inNexts = new int[1024];
+
+    // topological order
+    private int[] order = new int[1024];
+    private int[] ranks = new int[1024];
+    private int[] inDegrees = new int[1024];
+
+    // dynamic programming buffers, indexed by rank
+    private int[] bandLos = new int[1024];
+    private int[] bandHis = new int[1024];
+    private long[] bandOffsets = new long[1024];
+    private int[] bestPositions = new int[1024];
+    private int[] scores = new int[1 << 16];
+    private int[][] profile = new int[4][1024];
+
+    // alignment, in reverse order
+    private int alignmentLength = 0;
+    private int[] alignedNodes = new int[1024];
+    private int[] alignedPositions = new int[1024];
+
+    /**
+     * @param bandWidth number of read positions on either side of the band center; a negative value disables banding
+     */
+    public PoaConsensus(int bandWidth) {
+        this.bandWidth = bandWidth;
+    }
+
+    private static int baseIndex(byte b) {
+        switch (b) {
+            case 'C': case 'c':
+                return 1;
+            case 'G': case 'g':
+                return 2;
+            case 'T': case 't': case 'U': case 'u':
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    private void clear() {
+        numNodes = 0;
+        numEdges = 0;
+    }
+
+    private int addNode(byte base) {
+        if (numNodes == nodeBases.length) {
+            int newSize = numNodes * 2;
+            nodeBases = Arrays.copyOf(nodeBases, newSize);
+            nodeCoverages = Arrays.copyOf(nodeCoverages, newSize);
+            alignedNext = Arrays.copyOf(alignedNext, newSize);
+            outHeads = Arrays.copyOf(outHeads, newSize);
+            inHeads = Arrays.copyOf(inHeads, newSize);
+            order = Arrays.copyOf(order, newSize);
+            ranks = Arrays.copyOf(ranks, newSize);
+            inDegrees = Arrays.copyOf(inDegrees, newSize);
+            bandLos = Arrays.copyOf(bandLos, newSize);
+            bandHis = Arrays.copyOf(bandHis, newSize);
+            bandOffsets = Arrays.copyOf(bandOffsets, newSize);
+            bestPositions = Arrays.copyOf(bestPositions, newSize);
+        }
+
+        int v = numNodes++;
+        nodeBases[v] = base;
+        nodeCoverages[v] = 0;
+        alignedNext[v] = v;
+        outHeads[v] = -1;
+        inHeads[v] = -1;
+
+        return v;
+    }
+
+    private void addEdge(int from, int to) {
+        for (int e=outHeads[from]; e>=0; e=outNexts[e]) {
+            if (edgeTos[e] == to) {
+                ++edgeWeights[e];
+                return;
+            }
+        }
+
+        if (numEdges == edgeFroms.length) {
+            int newSize = numEdges * 2;
+            edgeFroms = Arrays.copyOf(edgeFroms, newSize);
+            edgeTos = Arrays.copyOf(edgeTos, newSize);
+            edgeWeights = Arrays.copyOf(edgeWeights, newSize);
+            outNexts = Arrays.copyOf(outNexts, newSize);
+            inNexts = Arrays.copyOf(inNexts, newSize);
+        }
+
+        int e = numEdges++;
+        edgeFroms[e] = from;
+        edgeTos[e] = to;
+        edgeWeights[e] = 1;
+        outNexts[e] = outHeads[from];
+        outHeads[from] = e;
+        inNexts[e] = inHeads[to];
+        inHeads[to] = e;
+    }
+
+    private void sortTopologically() {
+        Arrays.fill(inDegrees, 0, numNodes, 0);
+        for (int e=0; e<numEdges; ++e) {
+            ++inDegrees[edgeTos[e]];
+        }
+
+        // Kahn's algorithm; `order` doubles as the queue
+        int head = 0;
+        int tail = 0;
+        for (int v=0; v<numNodes; ++v) {
+            if (inDegrees[v] == 0) {
+                order[tail++] = v;
+            }
+        }
+
+        while (head < tail) {
+            int v = order[head++];
+            ranks[v] = head - 1;
+            for (int e=outHeads[v]; e>=0; e=outNexts[e]) {
+                int w = edgeTos[e];
+                if (--inDegrees[w] == 0) {
+                    order[tail++] = w;
+                }
+            }
+        }
+
+        if (tail != numNodes) {
+            throw new IllegalStateException("POA graph is not acyclic");
+        }
+    }
+
+    private void addAlignmentPair(int node, int position) {
+        if (alignmentLength == alignedNodes.length) {
+            alignedNodes = Arrays.copyOf(alignedNodes, alignmentLength * 2);
+            alignedPositions = Arrays.copyOf(alignedPositions, alignmentLength * 2);
+        }
+        alignedNodes[alignmentLength] = node;
+        alignedPositions[alignmentLength] = position;
+        ++alignmentLength;
+    }
+
+    private int getScore(int rank, int j) {
+        if (j < bandLos[rank] || j > bandHis[rank]) {
+            return NEG_INF;
+        }
+        return scores[(int) (bandOffsets[rank] + j - bandLos[rank])];
+    }
+
+    /**
+     * Fill the banded score matrix.
+     * @return the rank of the node with the best score at the end of the read, or -1 if the band missed it
+     */
+    private int fill(byte[] read, int band) {
+        int readLength = read.length;
+
+        for (int b=0; b<4; ++b) {
+            if (profile[b].length < readLength + 1) {
+                profile[b] = new int[readLength + 1];
+            }
+        }
+        for (int j=1; j<=readLength; ++j) {
+            int c = baseIndex(read[j-1]);
+            for (int b=0; b<4; ++b) {
+                profile[b][j] = b == c ? MATCH : MISMATCH;
+            }
+        }
+
+        long offset = 0;
+        int bestEndRank = -1;
+        int bestEndScore = NEG_INF;
+
+        for (int r=0; r<numNodes; ++r) {
+            int v = order[r];
+
+            // band of read positions
+            int lo = 0;
+            int hi = readLength;
+            if (band >= 0) {
+                int minPos = Integer.MAX_VALUE;
+                int maxPos = -1;
+                for (int e=inHeads[v]; e>=0; e=inNexts[e]) {
+                    int p = bestPositions[ranks[edgeFroms[e]]];
+                    minPos = Math.min(minPos, p);
+                    maxPos = Math.max(maxPos, p);
+                }
+
+                if (maxPos < 0) {
+                    // source node
+                    minPos = 0;
+                    maxPos = 0;
+                }
+
+                lo = Math.max(0, minPos + 1 - band);
+                hi = Math.min(readLength, maxPos + 1 + band);
+            }
+
+            int width = hi - lo + 1;
+            if (offset + width > scores.length) {
+                long newSize = Math.max(offset + width, scores.length * 2L);
+                if (newSize > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("POA score matrix is too large");
+                }
+                scores = Arrays.copyOf(scores, (int) newSize);
+            }
+
+            bandLos[r] = lo;
+            bandHis[r] = hi;
+            bandOffsets[r] = offset;
+
+            int[] sub = profile[baseIndex(nodeBases[v])];
+            int base = (int) offset - lo;
+
+            // entering the graph at this node: leading read bases are insertions
+            for (int j=lo; j<=hi; ++j) {
+                int s = j * GAP + GAP;
+                if (j > 0) {
+                    s = Math.max(s, (j-1) * GAP + sub[j]);
+                }
+                scores[base + j] = s;
+            }
+
+            // matches, mismatches and deletions from each predecessor
+            for (int e=inHeads[v]; e>=0; e=inNexts[e]) {
+                int pr = ranks[edgeFroms[e]];
+                int pLo = bandLos[pr];
+                int pHi = bandHis[pr];
+                int pBase = (int) bandOffsets[pr] - pLo;
+
+                int start = Math.max(lo, pLo);
+                int end = Math.min(hi, pHi);
+                for (int j=start; j<=end; ++j) {
+                    scores[base + j] = Math.max(scores[base + j], scores[pBase + j] + GAP);
+                }
+
+                start = Math.max(Math.max(lo, 1), pLo + 1);
+                end = Math.min(hi, pHi + 1);
+                for (int j=start; j<=end; ++j) {
+                    scores[base + j] = Math.max(scores[base + j], scores[pBase + j - 1] + sub[j]);
+                }
+            }
+
+            // insertions
+            int best = scores[base + lo];
+            int bestPos = lo;
+            for (int j=lo+1; j<=hi; ++j) {
+                int s = Math.max(scores[base + j], scores[base + j - 1] + GAP);
+                scores[base + j] = s;
+                if (s > best) {
+                    best = s;
+                    bestPos = j;
+                }
+            }
+            bestPositions[r] = bestPos;
+
+            if (hi == readLength && scores[base + hi] > bestEndScore) {
+                bestEndScore = scores[base + hi];
+                bestEndRank = r;
+            }
+
+            offset += width;
+        }
+
+        return bestEndRank;
+    }
+
+    private void traceback(byte[] read, int endRank) {
+        alignmentLength = 0;
+
+        int r = endRank;
+        int j = read.length;
+
+        while (r >= 0) {
+            int v = order[r];
+            int s = getScore(r, j);
+            int sub = j > 0 ? (baseIndex(read[j-1]) == baseIndex(nodeBases[v]) ? MATCH : MISMATCH) : NEG_INF;
+            int next = -2;
+            boolean consumed = false;
+
+            for (int e=inHeads[v]; e>=0 && next == -2; e=inNexts[e]) {
+                int pr = ranks[edgeFroms[e]];
+                if (j > 0 && getScore(pr, j-1) + sub == s) {
+                    next = pr;
+                    consumed = true;
+                }
+                else if (getScore(pr, j) + GAP == s) {
+                    next = pr;
+                }
+            }
+
+            if (next == -2) {
+                if (j > 0 && (j-1) * GAP + sub == s) {
+                    next = -1;
+                    consumed = true;
+                }
+                else if (j * GAP + GAP == s) {
+                    next = -1;
+                }
+            }
+
+            if (next == -2) {
+                if (j > bandLos[r] && getScore(r, j-1) + GAP == s) {
+                    // insertion
+                    addAlignmentPair(-1, --j);
+                    continue;
+                }
+
+                throw new IllegalStateException("POA traceback failed");
+            }
+
+            if (consumed) {
+                addAlignmentPair(v, --j);
+            }
+            else {
+                addAlignmentPair(v, -1);
+            }
+
+            r = next;
+        }
+
+        // leading read bases before entering the graph
+        while (j > 0) {
+            addAlignmentPair(-1, --j);
+        }
+    }
+
+    private void addRead(byte[] read) {
+        if (numNodes == 0) {
+            int prev = -1;
+            for (byte b : read) {
+                int v = addNode(b);
+                ++nodeCoverages[v];
+                if (prev >= 0) {
+                    addEdge(prev, v);
+                }
+                prev = v;
+            }
+            sortTopologically();
+            return;
+        }
+
+        int endRank = fill(read, bandWidth);
+        if (endRank < 0 && bandWidth >= 0) {
+            // the band missed the end of the read
+            endRank = fill(read, -1);
+        }
+
+        traceback(read, endRank);
+
+        int prev = -1;
+        for (int i=alignmentLength-1; i>=0; --i) {
+            int j = alignedPositions[i];
+            if (j < 0) {
+                // deletion
+                continue;
+            }
+
+            byte b = read[j];
+            int v = alignedNodes[i];
+            int w;
+            if (v < 0) {
+                w = addNode(b);
+            }
+            else if (baseIndex(nodeBases[v]) == baseIndex(b)) {
+                w = v;
+            }
+            else {
+                // look for an aligned node with the same base
+                w = -1;
+                for (int u=alignedNext[v]; u!=v; u=alignedNext[u]) {
+                    if (baseIndex(nodeBases[u]) == baseIndex(b)) {
+                        w = u;
+                        break;
+                    }
+                }
+
+                if (w < 0) {
+                    w = addNode(b);
+                    alignedNext[w] = alignedNext[v];
+                    alignedNext[v] = w;
+                }
+            }
+
+            ++nodeCoverages[w];
+            if (prev >= 0) {
+                addEdge(prev, w);
+            }
+            prev = w;
+        }
+
+        sortTopologically();
+    }
+
+    private String getHeaviestPath() {
+        int[] pathScores = new int[numNodes];
+        int[] pathPreds = new int[numNodes];
+        int bestNode = -1;
+
+        for (int r=0; r<numNodes; ++r) {
+            int v = order[r];
+            int bestPred = -1;
+            int bestWeight = -1;
+            for (int e=inHeads[v]; e>=0; e=inNexts[e]) {
+                int u = edgeFroms[e];
+                int w = edgeWeights[e];
+                if (w > bestWeight || (w == bestWeight && pathScores[u] > pathScores[bestPred])) {
+                    bestWeight = w;
+                    bestPred = u;
+                }
+            }
+
+            pathPreds[v] = bestPred;
+            pathScores[v] = bestPred >= 0 ? pathScores[bestPred] + bestWeight : 0;
+
+            if (bestNode < 0 || pathScores[v] > pathScores[bestNode]) {
+                bestNode = v;
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int v=bestNode; v>=0; v=pathPreds[v]) {
+            sb.append((char) nodeBases[v]);
+        }
+
+        return sb.reverse().toString();
+    }
+
+    private static long encodeKmer(String seq, int start) {
+        long kmer = 0;
+        for (int i=start; i<start+ORIENTATION_K; ++i) {
+            kmer = (kmer << 2) | baseIndex((byte) seq.charAt(i));
+        }
+        return kmer;
+    }
+
+    private static int countSharedKmers(String seq, LongHashSet kmers) {
+        int count = 0;
+        for (int i=0; i+ORIENTATION_K<=seq.length(); ++i) {
+            if (kmers.contains(encodeKmer(seq, i))) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param reads
+     * @param stranded  if false, reads are oriented to the longest read by their shared k-mers
+     * @return the consensus sequence
+     */
+    public String getConsensus(Collection<String> reads, boolean stranded) {
+        String[] sorted = reads.toArray(new String[reads.size()]);
+
+        // longest read first
+        Arrays.sort(sorted, (a, b) -> Integer.compare(b.length(), a.length()));
+
+        if (sorted.length == 0) {
+            return "";
+        }
+
+        if (sorted.length == 1) {
+            return sorted[0];
+        }
+
+        LongHashSet backboneKmers = null;
+        if (!stranded) {
+            String backbone = sorted[0];
+            backboneKmers = new LongHashSet(Math.max(1, backbone.length()));
+            for (int i=0; i+ORIENTATION_K<=backbone.length(); ++i) {
+                backboneKmers.add(encodeKmer(backbone, i));
+            }
+        }
+
+        clear();
+
+        for (String seq : sorted) {
+            if (backboneKmers != null) {
+                String rc = reverseComplement(seq);
+                if (countSharedKmers(rc, backboneKmers) > countSharedKmers(seq, backboneKmers)) {
+                    seq = rc;
+                }
+            }
+
+            byte[] read = new byte[seq.length()];
+            for (int i=0; i<read.length; ++i) {
+                read[i] = (byte) Character.toUpperCase(seq.charAt(i));
+            }
+
+            addRead(read);
+        }
+
+        return getHeaviestPath();
+    }
+
+    public String getConsensus(String[] reads, boolean stranded) {
+        return getConsensus(Arrays.asList(reads), stranded);
+    }
+}
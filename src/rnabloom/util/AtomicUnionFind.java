@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A lock-free disjoint-set forest over the integers [0, size).
+ * The root of every set is always its smallest element, so the outcome does
+ * not depend on the order in which concurrent unions are applied.
+ *
+ * @author Ka Ming Nip
+ */
+public class AtomicUnionFind {
+    private final AtomicIntegerArray parents;
+
+    public AtomicUnionFind(int size) {
+        parents = new AtomicIntegerArray(size);
+        for (int i=0; i<size; ++i) {
+            parents.set(i, i);
+        }
+    }
+
+    public int find(int x) {
+        while (true) {
+            int p = parents.get(x);
+            if (p == x) {
+                return x;
+            }
+
+            // path halving
+            int gp = parents.get(p);
+            if (p != gp) {
+                parents.compareAndSet(x, p, gp);
+            }
+            x = gp;
+        }
+    }
+
+    /**
+     * @param a
+     * @param b
+     * @return true if `a` and `b` were in different sets
+     */
+    public boolean union(int a, int b) {
+        while (true) {
+            a = find(a);
+            b = find(b);
+
+            if (a == b) {
+                return false;
+            }
+
+            if (a > b) {
+                int tmp = a;
+                a = b;
+                b = tmp;
+            }
+
+            // link the larger root under the smaller root; retry if `b` is no longer a root
+            if (parents.compareAndSet(b, b, a)) {
+                return true;
+            }
+        }
+    }
+
+    public int size() {
+        return parents.length();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.util;
+
+/**
+ * A binary min-heap of (float key, int value) entries backed by primitive arrays.
+ * The capacity is fixed; `push` fails once the heap is full.
+ *
+ * @author Ka Ming Nip
+ */
+public class BoundedMinHeap {
+    private final float[] keys;
+    private final int[] values;
+    private final int capacity;
+    private int size = 0;
+
+    public BoundedMinHeap(int capacity) {
+        this.capacity = capacity;
+        this.keys = new float[capacity];
+        this.values = new int[capacity];
+    }
+
+    public boolean push(float key, int value) {
+        if (size >= capacity) {
+            return false;
+        }
+
+        int i = size++;
+
+        // sift up
+        while (i > 0) {
+            int parent = (i-1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            keys[i] = keys[parent];
+            values[i] = values[parent];
+            i = parent;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+
+        return true;
+    }
+
+    public float peekKey() {
+        return keys[0];
+    }
+
+    public int peekValue() {
+        return values[0];
+    }
+
+    public int pop() {
+        int top = values[0];
+
+        if (--size > 0) {
+            float key = keys[size];
+            int value = values[size];
+
+            // sift down
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2*i + 1;
+                int right = child + 1;
+                if (right < size && keys[right] < keys[child]) {
+                    child = right;
+                }
+
+                if (key <= keys[child]) {
+                    break;
+                }
+
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        return top;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size >= capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
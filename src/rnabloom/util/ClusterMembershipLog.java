@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import rnabloom.io.FastaWriter;
+import static rnabloom.io.Constants.FASTA_EXT;
+
+/**
+ * An append-only log of read-to-cluster assignments over a packed read store.
+ * Merging clusters only links cluster ids; reads are never moved. Clusters are
+ * resolved once, at the end, in a single pass.
+ *
+ * @author Ka Ming Nip
+ */
+public class ClusterMembershipLog {
+    private final PackedReadStore reads;
+
+    // log entries
+    private int[] logReads = new int[1024];
+    private int[] logClusters = new int[1024];
+    private int logSize = 0;
+
+    // cluster forest; the root of a merged cluster is its smallest id
+    private int[] clusterParents = new int[1024];
+    private int[] clusterSizes = new int[1024];
+    private int numClusters = 0;
+    private int numLiveClusters = 0;
+
+    // resolved clusters
+    private int[] resolvedStarts = null;
+    private int[] resolvedReads = null;
+
+    public ClusterMembershipLog() {
+        this(new PackedReadStore());
+    }
+
+    public ClusterMembershipLog(PackedReadStore reads) {
+        this.reads = reads;
+    }
+
+    public PackedReadStore getReadStore() {
+        return reads;
+    }
+
+    public int newCluster() {
+        if (numClusters == clusterParents.length) {
+            clusterParents = Arrays.copyOf(clusterParents, numClusters * 2);
+            clusterSizes = Arrays.copyOf(clusterSizes, numClusters * 2);
+        }
+
+        clusterParents[numClusters] = numClusters;
+        clusterSizes[numClusters] = 0;
+        ++numLiveClusters;
+        resolvedStarts = null;
+
+        return numClusters++;
+    }
+
+    private int find(int cluster) {
+        while (clusterParents[cluster] != cluster) {
+            // path halving
+            clusterParents[cluster] = clusterParents[clusterParents[cluster]];
+            cluster = clusterParents[cluster];
+        }
+        return cluster;
+    }
+
+    /**
+     * Record that a read in the store belongs to a cluster.
+     * @param readId
+     * @param cluster
+     */
+    public void assign(int readId, int cluster) {
+        if (logSize == logReads.length) {
+            logReads = Arrays.copyOf(logReads, logSize * 2);
+            logClusters = Arrays.copyOf(logClusters, logSize * 2);
+        }
+
+        logReads[logSize] = readId;
+        logClusters[logSize] = cluster;
+        ++logSize;
+
+        ++clusterSizes[find(cluster)];
+        resolvedStarts = null;
+    }
+
+    /**
+     * Add a read to the store and assign it to a cluster.
+     * @param seq
+     * @param cluster
+     * @return id of the read
+     */
+    public int addRead(CharSequence seq, int cluster) {
+        int readId = reads.add(seq);
+        assign(readId, cluster);
+        return readId;
+    }
+
+    /**
+     * @param a
+     * @param b
+     * @return id of the merged cluster
+     */
+    public int merge(int a, int b) {
+        a = find(a);
+        b = find(b);
+
+        if (a == b) {
+            return a;
+        }
+
+        if (a > b) {
+            int tmp = a;
+            a = b;
+            b = tmp;
+        }
+
+        clusterParents[b] = a;
+        clusterSizes[a] += clusterSizes[b];
+        --numLiveClusters;
+        resolvedStarts = null;
+
+        return a;
+    }
+
+    public int getClusterSize(int cluster) {
+        return clusterSizes[find(cluster)];
+    }
+
+    public int getNumClusters() {
+        return numLiveClusters;
+    }
+
+    public int getNumAssignments() {
+        return logSize;
+    }
+
+    /**
+     * Group the logged reads by their final clusters. Clusters are numbered by
+     * their smallest cluster id and reads within a cluster keep their log order.
+     * Empty clusters are dropped.
+     */
+    private void resolve() {
+        if (resolvedStarts != null) {
+            return;
+        }
+
+        int[] finalIds = new int[numClusters];
+        int numFinal = 0;
+        for (int c=0; c<numClusters; ++c) {
+            int root = find(c);
+            if (root == c) {
+                finalIds[c] = clusterSizes[c] > 0 ? numFinal++ : -1;
+            }
+            else {
+                finalIds[c] = finalIds[root];
+            }
+        }
+
+        int[] starts = new int[numFinal+1];
+        for (int i=0; i<logSize; ++i) {
+            ++starts[finalIds[logClusters[i]] + 1];
+        }
+        for (int c=0; c<numFinal; ++c) {
+            starts[c+1] += starts[c];
+        }
+
+        int[] fill = Arrays.copyOf(starts, numFinal);
+        int[] members = new int[logSize];
+        for (int i=0; i<logSize; ++i) {
+            members[fill[finalIds[logClusters[i]]]++] = logReads[i];
+        }
+
+        resolvedStarts = starts;
+        resolvedReads = members;
+    }
+
+    /**
+     * @return number of non-empty clusters after resolving merges
+     */
+    public int getNumResolvedClusters() {
+        resolve();
+        return resolvedStarts.length - 1;
+    }
+
+    /**
+     * @param resolvedCluster index in [0, getNumResolvedClusters())
+     * @return ids of reads in the cluster
+     */
+    public int[] getClusterReadIds(int resolvedCluster) {
+        resolve();
+        return Arrays.copyOfRange(resolvedReads, resolvedStarts[resolvedCluster], resolvedStarts[resolvedCluster+1]);
+    }
+
+    /**
+     * @param resolvedCluster index in [0, getNumResolvedClusters())
+     * @return sequences of reads in the cluster
+     */
+    public String[] getClusterReads(int resolvedCluster) {
+        resolve();
+        int start = resolvedStarts[resolvedCluster];
+        int end = resolvedStarts[resolvedCluster+1];
+        String[] seqs = new String[end-start];
+        for (int i=start; i<end; ++i) {
+            seqs[i-start] = reads.get(resolvedReads[i]);
+        }
+        return seqs;
+    }
+
+    /**
+     * Write one FASTA file per resolved cluster, named by its index, in a single pass.
+     * Reads are named sequentially across all clusters.
+     * @param directory
+     * @return size of each resolved cluster
+     * @throws IOException
+     */
+    public int[] writeClusters(String directory) throws IOException {
+        resolve();
+
+        int numFinal = resolvedStarts.length - 1;
+        int[] sizes = new int[numFinal];
+        long seqID = 0;
+
+        for (int c=0; c<numFinal; ++c) {
+            int start = resolvedStarts[c];
+            int end = resolvedStarts[c+1];
+
+            FastaWriter writer = new FastaWriter(directory + File.separator + c + FASTA_EXT, false);
+            for (int i=start; i<end; ++i) {
+                writer.write("r" + Long.toString(seqID++), reads.get(resolvedReads[i]));
+            }
+            writer.close();
+
+            sizes[c] = end - start;
+        }
+
+        return sizes;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import static rnabloom.util.NucleotideBitsUtils.byteArrayToSeq;
+import static rnabloom.util.NucleotideBitsUtils.seqToByteArray;
+
+/**
+ * A bounded, thread-safe LRU cache of paths connecting two k-mers.
+ * Keys are (left k-mer hash, right k-mer hash, bound); values are the bases
+ * of the connecting path packed in 2 bits per base, or a "no path" marker.
+ * The cache is split into independently locked stripes to reduce contention.
+ *
+ * @author Ka Ming Nip
+ */
+public class ConnectionCache {
+
+    private static final int NUM_STRIPES = 64;
+    private static final byte[] NO_PATH = new byte[0];
+    private static final byte[] EMPTY_PATH = new byte[0];
+
+    private final Stripe[] stripes;
+    private final AtomicLong numHits = new AtomicLong(0);
+    private final AtomicLong numMisses = new AtomicLong(0);
+
+    private static class Key {
+        final long left;
+        final long right;
+        final int bound;
+
+        Key(long left, long right, int bound) {
+            this.left = left;
+            this.right = right;
+            this.bound = bound;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            Key other = (Key) o;
+            return left == other.left && right == other.right && bound == other.bound;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = left * 31 + right;
+            h = h * 31 + bound;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    private static class Stripe extends LinkedHashMap<Key, byte[]> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Stripe(int capacity) {
+            super(16, 0.75f, true); // access-order for LRU
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    /**
+     * Result of a cache lookup.
+     */
+    public static class Result {
+        public final boolean hasPath;
+        public final String path;
+
+        private Result(boolean hasPath, String path) {
+            this.hasPath = hasPath;
+            this.path = path;
+        }
+    }
+
+    public ConnectionCache(int maxNumEntries) {
+        stripes = new Stripe[NUM_STRIPES];
+        int stripeCapacity = Math.max(1, maxNumEntries / NUM_STRIPES);
+        for (int i=0; i<NUM_STRIPES; ++i) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    private ConnectionCache(ConnectionCache c) {
+        stripes = c.stripes;
+    }
+
+    /**
+     * A view of this cache for one sample of a pool. The view shares all
+     * cached paths with this cache, but it counts its own hits and misses.
+     */
+    public ConnectionCache newSampleView() {
+        return new ConnectionCache(this);
+    }
+
+    private Stripe getStripe(Key key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (NUM_STRIPES-1)];
+    }
+
+    /**
+     * @param left  hash value of the left k-mer
+     * @param right hash value of the right k-mer
+     * @param bound
+     * @return null if not cached
+     */
+    public Result get(long left, long right, int bound) {
+        Key key = new Key(left, right, bound);
+        Stripe stripe = getStripe(key);
+
+        byte[] bytes;
+        synchronized (stripe) {
+            bytes = stripe.get(key);
+        }
+
+        if (bytes == null) {
+            numMisses.incrementAndGet();
+            return null;
+        }
+
+        numHits.incrementAndGet();
+
+        if (bytes == NO_PATH) {
+            return new Result(false, null);
+        }
+
+        if (bytes == EMPTY_PATH) {
+            return new Result(true, "");
+        }
+
+        int seqLen = ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+        return new Result(true, byteArrayToSeq(seqLen, Arrays.copyOfRange(bytes, 4, bytes.length)));
+    }
+
+    /**
+     * @param left  hash value of the left k-mer
+     * @param right hash value of the right k-mer
+     * @param bound
+     * @param path  bases of the connecting path, or null if there is no path
+     */
+    public void put(long left, long right, int bound, String path) {
+        byte[] bytes;
+        if (path == null) {
+            bytes = NO_PATH;
+        }
+        else if (path.isEmpty()) {
+            bytes = EMPTY_PATH;
+        }
+        else {
+            bytes = seqToByteArray(path);
+        }
+
+        Key key = new Key(left, right, bound);
+        Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            stripe.put(key, bytes);
+        }
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        resetStats();
+    }
+
+    public void resetStats() {
+        numHits.set(0);
+        numMisses.set(0);
+    }
+
+    public long getNumHits() {
+        return numHits.get();
+    }
+
+    public long getNumMisses() {
+        return numMisses.get();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+}
@@ -16,6 +16,8 @@
  */
 package rnabloom.util;
 
+import java.util.Arrays;
+
 /**
  *
  * @author Ka Ming Nip
@@ -25,9 +27,18 @@ public class FloatRollingWindow {
     private int index;
     private int size;
     
+    // median tracking; slots of the lower half in a max-heap and slots of the
+    // upper half in a min-heap, built on the first call to `getMedian`
+    private int[] loHeap = null;
+    private int[] hiHeap = null;
+    private int[] heapPos = null;
+    private boolean[] inLo = null;
+    private int loSize;
+    private int hiSize;
+    
     public FloatRollingWindow(float[] window) {
         this.window = window;
-        this.index = 0;
+        this.index = window.length - 1;
         this.size = window.length;
     }
     
@@ -37,6 +48,10 @@ public class FloatRollingWindow {
         }
         
         window[index] = newVal;
+        
+        if (loHeap != null) {
+            update(index);
+        }
     }
     
     public float getMin() {
@@ -56,4 +71,143 @@ public class FloatRollingWindow {
         
         return max;
     }
+    
+    public float getMedian() {
+        if (loHeap == null) {
+            buildHeaps();
+        }
+        
+        if (loSize == hiSize) {
+            return (window[loHeap[0]] + window[hiHeap[0]])/2.0f;
+        }
+        
+        return window[loHeap[0]];
+    }
+    
+    private void buildHeaps() {
+        loSize = (size + 1)/2;
+        hiSize = size - loSize;
+        loHeap = new int[loSize];
+        hiHeap = new int[Math.max(hiSize, 1)];
+        heapPos = new int[size];
+        inLo = new boolean[size];
+        
+        // sort slots by value; float bits are mapped to order-preserving ints
+        long[] keys = new long[size];
+        for (int i=0; i<size; ++i) {
+            int bits = Float.floatToIntBits(window[i]);
+            bits ^= (bits >> 31) & 0x7fffffff;
+            keys[i] = ((long) bits << 32) | i;
+        }
+        Arrays.sort(keys);
+        
+        int[] slots = new int[size];
+        for (int i=0; i<size; ++i) {
+            slots[i] = (int) keys[i];
+        }
+        
+        // descending order is a valid max-heap; ascending order is a valid min-heap
+        for (int i=0; i<loSize; ++i) {
+            int s = slots[loSize-1-i];
+            loHeap[i] = s;
+            heapPos[s] = i;
+            inLo[s] = true;
+        }
+        for (int i=0; i<hiSize; ++i) {
+            int s = slots[loSize+i];
+            hiHeap[i] = s;
+            heapPos[s] = i;
+            inLo[s] = false;
+        }
+    }
+    
+    private void update(int slot) {
+        if (inLo[slot]) {
+            siftDownLo(siftUpLo(heapPos[slot]));
+        }
+        else {
+            siftDownHi(siftUpHi(heapPos[slot]));
+        }
+        
+        if (hiSize > 0 && window[loHeap[0]] > window[hiHeap[0]]) {
+            // exchange the two tops
+            int a = loHeap[0];
+            int b = hiHeap[0];
+            loHeap[0] = b;
+            hiHeap[0] = a;
+            inLo[a] = false;
+            inLo[b] = true;
+            heapPos[a] = 0;
+            heapPos[b] = 0;
+            siftDownLo(0);
+            siftDownHi(0);
+        }
+    }
+    
+    private void swap(int[] heap, int i, int j) {
+        int a = heap[i];
+        int b = heap[j];
+        heap[i] = b;
+        heap[j] = a;
+        heapPos[a] = j;
+        heapPos[b] = i;
+    }
+    
+    private int siftUpLo(int i) {
+        while (i > 0) {
+            int p = (i-1)/2;
+            if (window[loHeap[i]] <= window[loHeap[p]]) {
+                break;
+            }
+            swap(loHeap, i, p);
+            i = p;
+        }
+        return i;
+    }
+    
+    private void siftDownLo(int i) {
+        while (true) {
+            int c = 2*i + 1;
+            if (c >= loSize) {
+                break;
+            }
+            if (c+1 < loSize && window[loHeap[c+1]] > window[loHeap[c]]) {
+                ++c;
+            }
+            if (window[loHeap[c]] <= window[loHeap[i]]) {
+                break;
+            }
+            swap(loHeap, i, c);
+            i = c;
+        }
+    }
+    
+    private int siftUpHi(int i) {
+        while (i > 0) {
+            int p = (i-1)/2;
+            if (window[hiHeap[i]] >= window[hiHeap[p]]) {
+                break;
+            }
+            swap(hiHeap, i, p);
+            i = p;
+        }
+        return i;
+    }
+    
+    private void siftDownHi(int i) {
+        while (true) {
+            int c = 2*i + 1;
+            if (c >= hiSize) {
+                break;
+            }
+            if (c+1 < hiSize && window[hiHeap[c+1]] < window[hiHeap[c]]) {
+                ++c;
+            }
+            if (window[hiHeap[c]] >= window[hiHeap[i]]) {
+                break;
+            }
+            swap(hiHeap, i, c);
+            i = c;
+        }
+    }
 }
@@ -22,17 +22,23 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import rnabloom.RNABloom.ReadPair;
 import rnabloom.bloom.BloomFilter;
 import rnabloom.bloom.hash.NTHashIterator;
 import rnabloom.graph.BloomFilterDeBruijnGraph;
 import rnabloom.graph.Kmer;
+import rnabloom.graph.PairedKmerSupport;
+import rnabloom.graph.ScreeningFeatures;
+import rnabloom.graph.UnitigIndex;
 import rnabloom.io.FastaReader;
 import rnabloom.io.FastaWriter;
 import static rnabloom.util.SeqUtils.*;
@@ -230,15 +236,8 @@ public final class GraphUtils {
         for (int i=0; i<numKmers; ++i) {
             counts[i] = itr.next().count;
         }
-        Arrays.sort(counts);
         
-        int halfNumKmers = numKmers/2;
-        
-        if (numKmers % 2 == 0) {
-            return (counts[halfNumKmers] + counts[halfNumKmers-1])/2.0f;
-        }
-        
-        return counts[halfNumKmers];
+        return getMedian(counts);
     }
     
     public static float getMedianKmerCoverage(final ArrayDeque<Kmer>... kmers) {
@@ -256,15 +255,7 @@ public final class GraphUtils {
             }
         }
         
-        Arrays.sort(counts);
-        
-        int halfNumKmers = numKmers/2;
-        
-        if (numKmers % 2 == 0) {
-            return (counts[halfNumKmers] + counts[halfNumKmers-1])/2.0f;
-        }
-        
-        return counts[halfNumKmers];
+        return getMedian(counts);
     }
     
     public static float getMaxMedianCoverageRight(final BloomFilterDeBruijnGraph graph, final Kmer source, final int lookahead) {
@@ -730,6 +721,17 @@ public final class GraphUtils {
                                     final int maxIndelSize,
                                     final int maxEdgeClipLength,
                                     final float percentIdentity) {
+        return represented(new ScreeningFeatures(kmers, graph, bf), graph, lookahead, maxIndelSize, maxEdgeClipLength, percentIdentity);
+    }
+    
+    public static boolean represented(final ScreeningFeatures features,
+                                    final BloomFilterDeBruijnGraph graph,
+                                    final int lookahead,
+                                    final int maxIndelSize,
+                                    final int maxEdgeClipLength,
+                                    final float percentIdentity) {
+        final ArrayList<Kmer> kmers = features.getKmers();
+        final BloomFilter bf = features.getAssembledKmersBloomFilter();
         int numKmers = kmers.size();
         int maxIndex = numKmers - 1;
         
@@ -740,11 +742,11 @@ public final class GraphUtils {
         
         for (int i=0; i<numKmers; ++i) {
             
-            if (bf.lookup(kmers.get(i).getHash())) {
+            if (features.isAssembled(i)) {
                 int startIndex = i;
                 int endIndex = i;
                 for (int j=i+1; j<numKmers; ++j) {
-                    if (bf.lookup(kmers.get(j).getHash())) {
+                    if (features.isAssembled(j)) {
                         endIndex = j;
                     }
                     else {
@@ -782,13 +784,13 @@ public final class GraphUtils {
                             
                             if (numMissing > 0) {
                                 for (int j=0; j<numMissing; ++j) {
-                                    if (left == 0 || !bf.lookup(kmers.get(--left).getHash())) {
+                                    if (left == 0 || !features.isAssembled(--left)) {
                                         break;
                                     }
                                 }
 
                                 for (int j=0; j<numMissing; ++j) {
-                                    if (right == maxIndex || !bf.lookup(kmers.get(++right).getHash())) {
+                                    if (right == maxIndex || !features.isAssembled(++right)) {
                                         break;
                                     }
                                 }
@@ -1807,16 +1809,169 @@ public final class GraphUtils {
         
         return null;
     }
+
+    /**
+     * Working space of `getBestFirstMaxCoveragePath`, which may be kept by a worker and reused across searches.
+     */
+    public static class PathSearchBuffers {
+        private final int maxNumVisits;
+        private final ArrayList<Kmer> nodes = new ArrayList<>();
+        private final HashMap<Kmer, Integer> nodeIndexes = new HashMap<>();
+        private final int[] parents;
+        private final int[] depths;
+        private final float[] costs;
+        private final BoundedMinHeap frontier;
+        private final ArrayDeque<Kmer> neighbors = new ArrayDeque<>(4);
+        
+        public PathSearchBuffers(int maxNumVisits) {
+            this.maxNumVisits = maxNumVisits;
+            parents = new int[maxNumVisits];
+            depths = new int[maxNumVisits];
+            costs = new float[maxNumVisits];
+            
+            // each k-mer has at most 4 predecessors, so it can be queued at most 4 times
+            frontier = new BoundedMinHeap(4 * maxNumVisits);
+        }
+        
+        private void clear() {
+            nodes.clear();
+            nodeIndexes.clear();
+            frontier.clear();
+            neighbors.clear();
+        }
+    }
+
+    /**
+     * Best-first search for the path between `left` and `right` with the lowest
+     * sum of inverse k-mer coverage, ie. the path favoring high-coverage k-mers.
+     * @param graph
+     * @param left
+     * @param right
+     * @param bound         maximum number of k-mers between `left` and `right`
+     * @param minKmerCov
+     * @param maxNumVisits  maximum number of k-mers visited before giving up
+     * @return k-mers between `left` and `right`, or null if no path is found within the limits
+     */
+    public static ArrayDeque<Kmer> getBestFirstMaxCoveragePath(final BloomFilterDeBruijnGraph graph,
+                                                    final Kmer left,
+                                                    final Kmer right,
+                                                    final int bound,
+                                                    final float minKmerCov,
+                                                    final int maxNumVisits) {
+        return getBestFirstMaxCoveragePath(graph, left, right, bound, minKmerCov, new PathSearchBuffers(maxNumVisits));
+    }
+    
+    /**
+     * Same as above, but the search is limited to `buffers.maxNumVisits` k-mers and it runs in `buffers`.
+     */
+    public static ArrayDeque<Kmer> getBestFirstMaxCoveragePath(final BloomFilterDeBruijnGraph graph,
+                                                    final Kmer left,
+                                                    final Kmer right,
+                                                    final int bound,
+                                                    final float minKmerCov,
+                                                    final PathSearchBuffers buffers) {
+        int k = graph.getK();
+        int numHash = graph.getMaxNumHash();
         
+        buffers.clear();
+        final int maxNumVisits = buffers.maxNumVisits;
+        final ArrayList<Kmer> nodes = buffers.nodes;
+        final HashMap<Kmer, Integer> nodeIndexes = buffers.nodeIndexes;
+        final int[] parents = buffers.parents;
+        final int[] depths = buffers.depths;
+        final float[] costs = buffers.costs;
+        final BoundedMinHeap frontier = buffers.frontier;
+        final ArrayDeque<Kmer> neighbors = buffers.neighbors;
+
+        nodes.add(left);
+        nodeIndexes.put(left, 0);
+        parents[0] = -1;
+        depths[0] = 0;
+        costs[0] = 0;
+        frontier.push(0, 0);
+
+        int rightIndex = -1;
+
+        while (!frontier.isEmpty()) {
+            float cost = frontier.peekKey();
+            int i = frontier.pop();
+
+            if (cost > costs[i]) {
+                // stale entry; a cheaper path to this k-mer was found later
+                continue;
+            }
+
+            if (i == rightIndex) {
+                ArrayDeque<Kmer> path = new ArrayDeque<>(depths[i]);
+                for (int p = parents[i]; p > 0; p = parents[p]) {
+                    path.addFirst(nodes.get(p));
+                }
+                return path;
+            }
+
+            int depth = depths[i];
+            neighbors.clear();
+            nodes.get(i).getSuccessors(k, numHash, graph, neighbors, minKmerCov);
+
+            for (Kmer n : neighbors) {
+                boolean isRight = n.equals(right);
+
+                // only `right` may follow a k-mer at the maximum depth
+                if (!isRight && (depth >= bound || isHomopolymer(n.bytes))) {
+                    continue;
+                }
+
+                float c = n.count > 0 ? n.count : minKmerCov;
+                float newCost = cost + 1f/c;
+                int newDepth = isRight ? depth : depth + 1;
+
+                Integer j = nodeIndexes.get(n);
+                if (j == null) {
+                    int numNodes = nodes.size();
+                    if (numNodes >= maxNumVisits) {
+                        return null;
+                    }
+
+                    j = numNodes;
+                    nodes.add(n);
+                    nodeIndexes.put(n, j);
+
+                    if (isRight) {
+                        rightIndex = j;
+                    }
+                }
+                else if (j == 0 || newCost >= costs[j]) {
+                    continue;
+                }
+
+                parents[j] = i;
+                depths[j] = newDepth;
+                costs[j] = newCost;
+
+                if (!frontier.push(newCost, j)) {
+                    return null;
+                }
+            }
+        }
+
+        return null;
+    }
+
     private static float[] getMinMedMax(float[] a) {
         int len = a.length;
-        Arrays.sort(a);
-        int halfLen = len/2;
-        if (len % 2 == 0) {
-            return new float[]{a[0], (a[halfLen-1] + a[halfLen])/2.0f, a[len-1]};
+        float min = a[0];
+        float max = a[0];
+        for (int i=1; i<len; ++i) {
+            float c = a[i];
+            if (c < min) {
+                min = c;
+            }
+            else if (c > max) {
+                max = c;
+            }
         }
         
-        return new float[]{a[0], a[halfLen], a[len-1]};
+        return new float[]{min, getMedian(a), max};
     }
     
 //    public static float getMedian(float[] arr) {
@@ -1831,15 +1986,69 @@ public final class GraphUtils {
 //        return a[halfLen];
 //    }
     
+    /**
+     * Partially reorders `arr` in linear expected time.
+     */
     private static float getMedian(float[] arr) {
         int len = arr.length;
-        Arrays.sort(arr);
         int halfLen = len/2;
+        float upper = select(arr, halfLen);
         if (len % 2 == 0) {
-            return (arr[halfLen-1] + arr[halfLen])/2.0f;
+            // the lower middle value is the largest value left of `halfLen`
+            float lower = arr[0];
+            for (int i=1; i<halfLen; ++i) {
+                lower = Math.max(lower, arr[i]);
+            }
+            return (lower + upper)/2.0f;
         }
         
-        return arr[halfLen];
+        return upper;
+    }
+    
+    /**
+     * Quickselect; on return `arr[k]` holds the k-th smallest value, with
+     * smaller or equal values to its left and larger or equal values to its right.
+     */
+    private static float select(float[] arr, int k) {
+        int left = 0;
+        int right = arr.length - 1;
+        
+        while (left < right) {
+            // median-of-three pivot
+            int mid = (left + right) >>> 1;
+            float a = arr[left], b = arr[mid], c = arr[right];
+            float pivot = a < b ? (b < c ? b : (a < c ? c : a)) : (a < c ? a : (b < c ? c : b));
+            
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (arr[i] < pivot) {
+                    ++i;
+                }
+                while (arr[j] > pivot) {
+                    --j;
+                }
+                if (i <= j) {
+                    float tmp = arr[i];
+                    arr[i] = arr[j];
+                    arr[j] = tmp;
+                    ++i;
+                    --j;
+                }
+            }
+            
+            if (k <= j) {
+                right = j;
+            }
+            else if (k >= i) {
+                left = i;
+            }
+            else {
+                break;
+            }
+        }
+        
+        return arr[k];
     }
     
     public static float getMinium(float[] arr) {
@@ -2566,250 +2775,32 @@ public final class GraphUtils {
         sketch[i] = newVal;
     }
     
-    public static long[] getMinimizersWithCompressedHomoPolymers(String seq, int k, NTHashIterator itr, int windowSize) {
-        String chpSeq = compressHomoPolymers(seq);
-        return getMinimizers(chpSeq, getNumKmers(chpSeq, k), itr, windowSize);
-    }
-
-    public static HashSet<Long> getMinimizersSetWithCompressedHomoPolymers(String seq, int k, NTHashIterator itr, int windowSize) {
-        String chpSeq = compressHomoPolymers(seq);
-        return getMinimizersSet(chpSeq, getNumKmers(chpSeq, k), itr, windowSize);
+    public static long[] getMinimizersWithCompressedHomoPolymers(String seq, NTHashIterator itr, int windowSize) {
+        MinimizerSketcher sketcher = new MinimizerSketcher();
+        sketcher.sketchWithCompressedHomoPolymers(seq, itr, windowSize);
+        return sketcher.toArray();
     }
     
-    public static long[] getMinimizers(String seq, int numKmers, NTHashIterator itr, int windowSize) {        
-        HashSet<Long> minimizers = getMinimizersSet(seq, numKmers, itr, windowSize);
-        
-        long[] minimizersArr = new long[minimizers.size()];
-        int i=0;
-        for (Long m : minimizers) {
-            minimizersArr[i++] = m;
-        }
-        
-        Arrays.sort(minimizersArr);
-        
-        return minimizersArr;
+    public static long[] getMinimizersWithCompressedHomoPolymers(String seq, NTHashIterator itr, int windowSize, MinimizerSketcher sketcher) {
+        sketcher.sketchWithCompressedHomoPolymers(seq, itr, windowSize);
+        return sketcher.toArray();
     }
     
-    public static HashSet<Long> getMinimizersSet(String seq, int numKmers, NTHashIterator itr, int windowSize) {
-        itr.start(seq);
-        long[] hvals = itr.hVals;
-
-        if (numKmers <= windowSize) {
-            long minimizer = hvals[0];
-            while(itr.hasNext()) {
-                itr.next();
-                long h = hvals[0];
-                if (h < minimizer) {
-                    minimizer = h;
-                }
-            }
-            
-            HashSet<Long> set = new HashSet<>();
-            set.add(minimizer);
-            return set;
-        }
-        
-        HashSet<Long> minimizers = new HashSet<>();
-        
-        // find minimizer in the first window
-        ArrayDeque<Long> window = new ArrayDeque<>(windowSize);
-        
-        itr.next();
-        long minimizer = hvals[0];
-        int minmizerWindowPos = 0;
-        window.add(minimizer);
-        
-        for (int i=1; i<windowSize; ++i) {
-            itr.next();
-            long h = hvals[0];
-            window.add(h);
-            
-            if (h < minimizer) {
-                minimizer = h;
-                minmizerWindowPos = i;
-            }
-        }
-        minimizers.add(minimizer);
-        
-        // find minimizers as window shifts
-        while (itr.hasNext()) {
-            window.removeFirst();
-            
-            itr.next();
-            long h = hvals[0];
-            window.add(h);
-            
-            if (--minmizerWindowPos < 0) {
-                Iterator<Long> wItr = window.iterator();
-                
-                minimizer = wItr.next();
-                minmizerWindowPos = 0;
-                
-                for(int i=1; i<windowSize; ++i) {
-                    h = wItr.next();
-                    if (h < minimizer) {
-                        minimizer = h;
-                        minmizerWindowPos = i;
-                    }
-                }
-                
-                minimizers.add(minimizer);
-            }
-            else if (h < minimizer) {
-                minimizer = h;
-                minmizerWindowPos = windowSize-1;
-                minimizers.add(minimizer);
-            }
-        }
-        
-        return minimizers;
+    public static long[] getMinimizers(String seq, NTHashIterator itr, int windowSize, MinimizerSketcher sketcher) {
+        sketcher.sketch(seq, itr, windowSize);
+        return sketcher.toArray();
     }
     
-    public static long[] getMinimizers(String seq, int numKmers, NTHashIterator itr, int windowSize, BloomFilterDeBruijnGraph graph, float minCoverage) {        
-        HashSet<Long> minimizers = getMinimizersSet(seq, numKmers, itr, windowSize, graph, minCoverage);
-        
-        long[] minimizersArr = new long[minimizers.size()];
-        int i=0;
-        for (Long m : minimizers) {
-            minimizersArr[i++] = m;
-        }
-        
-        Arrays.sort(minimizersArr);
-        
-        return minimizersArr;
+    public static long[] getMinimizers(String seq, NTHashIterator itr, int windowSize) {
+        MinimizerSketcher sketcher = new MinimizerSketcher();
+        sketcher.sketch(seq, itr, windowSize);
+        return sketcher.toArray();
     }
     
-    public static HashSet<Long> getMinimizersSet(String seq, int numKmers, NTHashIterator itr, int windowSize, BloomFilterDeBruijnGraph graph, float minCoverage) {        
-        itr.start(seq);
-        long[] hvals = itr.hVals;
-
-        if (numKmers <= windowSize) {
-            long minimizer = hvals[0];
-            boolean hasMinimizer = graph.getCount(hvals) >= minCoverage;
-            
-            while(itr.hasNext()) {
-                itr.next();
-                long h = hvals[0];
-                
-                if (!hasMinimizer) {
-                    if (graph.getCount(hvals) >= minCoverage) {
-                        minimizer = h;
-                        hasMinimizer = true;
-                    }
-                }
-                else if (h < minimizer) {
-                    if (graph.getCount(hvals) >= minCoverage) {
-                        minimizer = h;
-                    }
-                }
-            }
-            
-            HashSet<Long> set = new HashSet<>();
-            if (hasMinimizer) {
-                set.add(minimizer);
-            }
-            return set;
-        }
-        
-        HashSet<Long> minimizers = new HashSet<>();
-        ArrayDeque<Long> window = new ArrayDeque<>(windowSize);
-        ArrayDeque<Float> covWindow = new ArrayDeque<>(windowSize);
-        
-        // find minimizer in the first window
-        itr.next();
-        int minimizerWindowPos = 0;
-        long minimizer = hvals[0];
-        window.add(minimizer);
-        float c = graph.getCount(hvals);
-        covWindow.add(c);
-        boolean hasMinimizer = c >= minCoverage;
-        
-        for (int i=1; i<windowSize; ++i) {
-            itr.next();
-            
-            long h = hvals[0];
-            window.add(h);
-            
-            c = graph.getCount(hvals);
-            covWindow.add(c);
-            
-            if (c >= minCoverage) {
-                if (!hasMinimizer) {
-                    minimizer = h;
-                    minimizerWindowPos = i;
-                    hasMinimizer = true;
-                }
-                else if (h < minimizer) {
-                    minimizer = h;
-                    minimizerWindowPos = i;
-                }
-            }
-        }
-        
-        if (hasMinimizer) {
-            minimizers.add(minimizer);
-        }
-        
-        // find minimizers as window shifts
-        while (itr.hasNext()) {
-            window.removeFirst();
-            covWindow.removeFirst();
-            --minimizerWindowPos;
-            
-            itr.next();
-            
-            long h = hvals[0];
-            window.add(h);
-            
-            c = graph.getCount(hvals);
-            covWindow.add(c);
-            
-            if (c >= minCoverage) {
-                if (!hasMinimizer) {
-                    minimizer = h;
-                    minimizerWindowPos = windowSize-1;
-                    minimizers.add(minimizer);
-                    hasMinimizer = true;
-                }
-                else if (minimizerWindowPos < 0) {
-                    Iterator<Long> wItr = window.iterator();
-                    Iterator<Float> cItr = covWindow.iterator();
-                    
-                    minimizerWindowPos = 0;
-                    minimizer = wItr.next();
-                    c = cItr.next();
-                    hasMinimizer = c >= minCoverage;
-                    
-                    for(int i=1; i<windowSize; ++i) {
-                        h = wItr.next();
-                        c = cItr.next();
-                        
-                        if (c >= minCoverage) {
-                            if (!hasMinimizer) {
-                                minimizer = h;
-                                minimizerWindowPos = i;
-                                hasMinimizer = true;
-                            }
-                            else if (h < minimizer) {
-                                minimizer = h;
-                                minimizerWindowPos = i;
-                            }
-                        }
-                    }
-                    
-                    if (hasMinimizer) {
-                        minimizers.add(minimizer);
-                    }
-                }
-                else if (h < minimizer) {
-                    minimizer = h;
-                    minimizerWindowPos = windowSize-1;
-                    minimizers.add(minimizer);
-                }
-            }
-        }
-        
-        return minimizers;
+    public static long[] getMinimizers(String seq, NTHashIterator itr, int windowSize, BloomFilterDeBruijnGraph graph, float minCoverage) {
+        MinimizerSketcher sketcher = new MinimizerSketcher();
+        sketcher.sketch(seq, itr, windowSize, graph, minCoverage);
+        return sketcher.toArray();
     }
     
     public static long[] getAscendingHashValuesWithCompressedHomoPolymers(String seq, NTHashIterator itr, int k) {
@@ -2947,32 +2938,67 @@ public final class GraphUtils {
         return sketch;
     }
         
-    public static int getNumIntersection(long[] sketch1, long[] sketch2) {
-        int sketchSize1 = sketch1.length;
-        int sketchSize2 = sketch2.length;
+    /**
+     * Size ratios of two sketches at which the intersection switches from a
+     * branch-free merge to a merge that skips runs in the larger sketch, and
+     * then to galloping through the larger sketch.
+     */
+    private static final int SKEWED_SIZE_RATIO = 4;
+    private static final int GALLOP_SIZE_RATIO = 16;
+    
+    /**
+     * Find the first index in sorted array `a` at or after `from` whose value is not less than `key`.
+     */
+    private static int gallop(long[] a, int from, long key) {
+        int len = a.length;
+        
+        // exponential search for an upper bound
+        int step = 1;
+        int lo = from;
+        int hi = from;
+        while (hi < len && a[hi] < key) {
+            lo = hi + 1;
+            hi = from + step;
+            step <<= 1;
+        }
+        
+        if (hi > len) {
+            hi = len;
+        }
+        
+        // binary search within (lo, hi]
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        
+        return lo;
+    }
+    
+    private static int getNumIntersectionGallop(long[] small, long[] large, int minIntersection, boolean stopAtMin) {
+        int smallSize = small.length;
+        int largeSize = large.length;
         int intersectionSize = 0;
         int j = 0;
         
-        long hash1, hash2;
-        for (int i=0; i<sketchSize1 && j<sketchSize2; ++i) {
-            hash1 = sketch1[i];
-            hash2 = sketch2[j];
+        for (int i=0; i<smallSize && j<largeSize; ++i) {
+            if (intersectionSize + smallSize - i < minIntersection) {
+                // not enough elements remaining
+                break;
+            }
             
-            if (hash1 == hash2) {
-                ++intersectionSize;
+            long h = small[i];
+            j = gallop(large, j, h);
+            
+            if (j < largeSize && large[j] == h) {
                 ++j;
-            }
-            else if (hash1 > hash2) {
-                for (++j; j<sketchSize2; ++j) {
-                    hash2 = sketch2[j];
-                    if (hash1 == hash2) {
-                        ++intersectionSize;
-                        ++j;
-                        break;
-                    }
-                    else if (hash1 < hash2) {
-                        break;
-                    }
+                if (++intersectionSize >= minIntersection && stopAtMin) {
+                    break;
                 }
             }
         }
@@ -2980,49 +3006,115 @@ public final class GraphUtils {
         return intersectionSize;
     }
     
-    public static boolean hasNumIntersection(long[] sketch1, long[] sketch2, int minIntersection) {
+    private static int getNumIntersectionMerge(long[] sketch1, long[] sketch2, int minIntersection, boolean stopAtMin) {
         int sketchSize1 = sketch1.length;
-        if (sketchSize1 < minIntersection) {
-            return false;
-        }
-        
         int sketchSize2 = sketch2.length;
-        if (sketchSize2 < minIntersection) {
-            return false;
+        int intersectionSize = 0;
+        int i = 0;
+        int j = 0;
+        
+        while (i < sketchSize1 && j < sketchSize2) {
+            if (intersectionSize + Math.min(sketchSize1 - i, sketchSize2 - j) < minIntersection) {
+                // not enough elements remaining
+                break;
+            }
+            
+            long hash1 = sketch1[i];
+            long hash2 = sketch2[j];
+            
+            // branch-free advance; the conditional increments compile to conditional moves
+            intersectionSize += hash1 == hash2 ? 1 : 0;
+            i += hash1 <= hash2 ? 1 : 0;
+            j += hash1 >= hash2 ? 1 : 0;
+            
+            if (stopAtMin && intersectionSize >= minIntersection) {
+                break;
+            }
         }
         
+        return intersectionSize;
+    }
+    
+    private static int getNumIntersectionSkewed(long[] sketch1, long[] sketch2, int minIntersection, boolean stopAtMin) {
+        int sketchSize1 = sketch1.length;
+        int sketchSize2 = sketch2.length;
         int intersectionSize = 0;
+        int i = 0;
         int j = 0;
         
-        long hash1, hash2;
-        for (int i=0; i<sketchSize1 && j<sketchSize2; ++i) {
-            hash1 = sketch1[i];
-            hash2 = sketch2[j];
+        while (i < sketchSize1 && j < sketchSize2) {
+            long hash1 = sketch1[i];
+            long hash2 = sketch2[j];
             
-            if (hash1 == hash2) {
-                if (++intersectionSize >= minIntersection) {
-                    return true;
-                }
-                ++j;
+            if (hash1 < hash2) {
+                for (++i; i < sketchSize1 && sketch1[i] < hash2; ++i);
             }
             else if (hash1 > hash2) {
-                for (++j; j<sketchSize2; ++j) {
-                    hash2 = sketch2[j];
-                    if (hash1 == hash2) {
-                        if (++intersectionSize >= minIntersection) {
-                            return true;
-                        }
-                        ++j;
-                        break;
-                    }
-                    else if (hash1 < hash2) {
-                        break;
-                    }
+                for (++j; j < sketchSize2 && sketch2[j] < hash1; ++j);
+            }
+            else {
+                ++i;
+                ++j;
+                if (++intersectionSize >= minIntersection && stopAtMin) {
+                    break;
                 }
             }
+            
+            if (intersectionSize + Math.min(sketchSize1 - i, sketchSize2 - j) < minIntersection) {
+                // not enough elements remaining
+                break;
+            }
+        }
+        
+        return intersectionSize;
+    }
+    
+    /**
+     * @param sketch1   sorted hash values
+     * @param sketch2   sorted hash values
+     * @param minIntersection
+     * @param stopAtMin stop counting once `minIntersection` is reached
+     * @return the intersection size; any value less than `minIntersection` means it cannot be reached
+     */
+    private static int getNumIntersection(long[] sketch1, long[] sketch2, int minIntersection, boolean stopAtMin) {
+        int sketchSize1 = sketch1.length;
+        int sketchSize2 = sketch2.length;
+        
+        if (sketchSize1 == 0 || sketchSize2 == 0 ||
+                sketch1[sketchSize1-1] < sketch2[0] || sketch2[sketchSize2-1] < sketch1[0]) {
+            // ranges do not overlap
+            return 0;
+        }
+        
+        if (sketchSize1 * (long) GALLOP_SIZE_RATIO <= sketchSize2) {
+            return getNumIntersectionGallop(sketch1, sketch2, minIntersection, stopAtMin);
+        }
+        
+        if (sketchSize2 * (long) GALLOP_SIZE_RATIO <= sketchSize1) {
+            return getNumIntersectionGallop(sketch2, sketch1, minIntersection, stopAtMin);
+        }
+        
+        if (sketchSize1 * (long) SKEWED_SIZE_RATIO <= sketchSize2 ||
+                sketchSize2 * (long) SKEWED_SIZE_RATIO <= sketchSize1) {
+            return getNumIntersectionSkewed(sketch1, sketch2, minIntersection, stopAtMin);
+        }
+        
+        return getNumIntersectionMerge(sketch1, sketch2, minIntersection, stopAtMin);
+    }
+    
+    public static int getNumIntersection(long[] sketch1, long[] sketch2) {
+        return getNumIntersection(sketch1, sketch2, 0, false);
+    }
+    
+    public static boolean hasNumIntersection(long[] sketch1, long[] sketch2, int minIntersection) {
+        // at least one common element is required
+        minIntersection = Math.max(1, minIntersection);
+        
+        if (sketch1.length < minIntersection || sketch2.length < minIntersection) {
+            return false;
         }
         
-        return false;
+        return getNumIntersection(sketch1, sketch2, minIntersection, true) >= minIntersection;
     }
     
     public static int getNumIntersection(TreeSet<Long> sketch1, TreeSet<Long> sketch2) {
@@ -3176,6 +3268,8 @@ public final class GraphUtils {
                 int numKmers = testKmers.size();
                 ArrayList<Kmer> correctedKmers = new ArrayList<>();
 
+                // window boundaries of this iteration
+                ArrayList<int[]> bounds = new ArrayList<>(numKmers/windowSize + 1);
                 int end = 0;
                 for (int i=0; i<numKmers; i=end) {
                     if (i == 0 && toShift) { 
@@ -3188,28 +3282,46 @@ public final class GraphUtils {
                     if (end + shift >= numKmers) {
                         end = numKmers;
                     }
-
-                    ArrayList<Kmer> window = new ArrayList<>(testKmers.subList(i, end));
-                    ArrayList<Kmer> windowCorrected = null;
-
-                    if (end-i >= lookahead) {
-                        CoverageStats covStat = getCoverageStats(window, maxCovGradient, lookahead, true);
-                        float threshold = covStat.median;
-                        if (covStat.dropoff > 0) {
-                            threshold = Math.max(covStat.dropoff, minKmerCov);
-                        }
-
-                        windowCorrected = correctInternalErrors(window,
-                                                                    graph, 
-                                                                    lookahead,
-                                                                    maxIndelSize,
-                                                                    threshold,
-                                                                    percentIdentity,
-                                                                    minKmerCov);
+                    
+                    bounds.add(new int[]{i, end});
+                }
+                
+                int numWindows = bounds.size();
+                ArrayList<ArrayList<Kmer>> windowsCorrected = new ArrayList<>(numWindows);
+                
+                if (numWindows > 1 && ForkJoinTask.inForkJoinPool()) {
+                    // windows are independent; idle workers of the pool may steal them
+                    ArrayList<RecursiveTask<ArrayList<Kmer>>> tasks = new ArrayList<>(numWindows);
+                    for (int[] b : bounds) {
+                        final ArrayList<Kmer> window = new ArrayList<>(testKmers.subList(b[0], b[1]));
+                        tasks.add(new RecursiveTask<ArrayList<Kmer>>() {
+                            @Override
+                            protected ArrayList<Kmer> compute() {
+                                return correctLongSequenceWindow(window, graph, maxCovGradient, lookahead, 
+                                        maxIndelSize, percentIdentity, minKmerCov);
+                            }
+                        });
                     }
                     
+                    ForkJoinTask.invokeAll(tasks);
+                    
+                    for (RecursiveTask<ArrayList<Kmer>> t : tasks) {
+                        windowsCorrected.add(t.join());
+                    }
+                }
+                else {
+                    for (int[] b : bounds) {
+                        ArrayList<Kmer> window = new ArrayList<>(testKmers.subList(b[0], b[1]));
+                        windowsCorrected.add(correctLongSequenceWindow(window, graph, maxCovGradient, lookahead, 
+                                maxIndelSize, percentIdentity, minKmerCov));
+                    }
+                }
+                
+                for (int w=0; w<numWindows; ++w) {
+                    ArrayList<Kmer> windowCorrected = windowsCorrected.get(w);
                     if (windowCorrected == null) {
-                        correctedKmers.addAll(window);
+                        int[] b = bounds.get(w);
+                        correctedKmers.addAll(testKmers.subList(b[0], b[1]));
                     }
                     else {
                         corrected = true;
@@ -3253,6 +3365,32 @@ public final class GraphUtils {
         return null;
     }
     
+    private static ArrayList<Kmer> correctLongSequenceWindow(ArrayList<Kmer> window, 
+                                                            BloomFilterDeBruijnGraph graph, 
+                                                            float maxCovGradient, 
+                                                            int lookahead, 
+                                                            int maxIndelSize, 
+                                                            float percentIdentity, 
+                                                            int minKmerCov) {
+        if (window.size() < lookahead) {
+            return null;
+        }
+        
+        CoverageStats covStat = getCoverageStats(window, maxCovGradient, lookahead, true);
+        float threshold = covStat.median;
+        if (covStat.dropoff > 0) {
+            threshold = Math.max(covStat.dropoff, minKmerCov);
+        }
+
+        return correctInternalErrors(window,
+                                    graph, 
+                                    lookahead,
+                                    maxIndelSize,
+                                    threshold,
+                                    percentIdentity,
+                                    minKmerCov);
+    }
+    
     public static ArrayList<Kmer> trimLowCoverageEdgeKmers(ArrayList<Kmer> kmers,
                                                         BloomFilterDeBruijnGraph graph, 
                                                         int lookahead,
@@ -4068,229 +4206,19 @@ public final class GraphUtils {
     }
     
     public static ArrayDeque<int[]> breakWithReadPairedKmers(ArrayList<Kmer> kmers, BloomFilterDeBruijnGraph graph, int numPairsRequired, int rangeStart, int rangeEnd) {
-        int interlockDistance = 0;
-        
-        ArrayDeque<int[]> segments = new ArrayDeque<>();
-        
-        int d = graph.getReadPairedKmerDistance();
-        int lastIndex = rangeEnd - 1 - d;
-        
-        int start = -1;
-        int end = -1;
-        
-        if (numPairsRequired == 1) {
-            for (int i=rangeStart; i<=lastIndex; ++i) {
-                if (graph.lookupReadKmerPair(kmers.get(i), kmers.get(i+d))) {
-                    if (start < 0) {
-                        start = i;
-                    }
-
-                    end = i+d;
-                }
-                else if (start >= 0 && i >= end-interlockDistance) {
-                    segments.add(new int[]{start,end+1});
-                    
-                    start = -1;
-                    end = -1;
-                }
-            }
-
-            if (start >= 0) {
-                segments.add(new int[]{start,end+1});
-            }
-        }
-        else {
-            int numPreviousKmerPairs = 0;
-            for (int i=rangeStart; i<=lastIndex; ++i) {
-                if (graph.lookupReadKmerPair(kmers.get(i), kmers.get(i+d))) {
-                    if (++numPreviousKmerPairs >= numPairsRequired) {
-                        if (start < 0) {
-                            start = i-numPairsRequired+1;
-                        }
-                        
-                        end = i+d;
-                    }
-                }
-                else {
-                    if (start >= 0 && i >= end-interlockDistance) {
-                        segments.add(new int[]{start,end+1});
-
-                        start = -1;
-                        end = -1;
-                    }
-                    
-                    numPreviousKmerPairs = 0;
-                }
-            }
-            
-            if (start >= 0) {
-                segments.add(new int[]{start,end+1});
-            }
-        }
-        
-        return segments;
+        return new PairedKmerSupport(kmers, graph, false, rangeStart, rangeEnd).getSegments(numPairsRequired, rangeStart, rangeEnd);
     }
     
     public static ArrayDeque<int[]> breakWithReadPairedKmers(ArrayList<Kmer> kmers, BloomFilterDeBruijnGraph graph, int numPairsRequired) {
-        int interlockDistance = 0;
-        
-        ArrayDeque<int[]> segments = new ArrayDeque<>();
-        
-        int d = graph.getReadPairedKmerDistance();
-        int lastIndex = kmers.size() - 1 - d;
-        
-        int start = -1;
-        int end = -1;
-        
-        if (numPairsRequired == 1) {
-            for (int i=0; i<=lastIndex; ++i) {
-                if (graph.lookupReadKmerPair(kmers.get(i), kmers.get(i+d))) {
-                    if (start < 0) {
-                        start = i;
-                    }
-
-                    end = i+d;
-                }
-                else if (start >= 0 && i >= end-interlockDistance) {
-                    segments.add(new int[]{start,end+1});
-                    
-                    start = -1;
-                    end = -1;
-                }
-            }
-
-            if (start >= 0) {
-                segments.add(new int[]{start,end+1});
-            }
-        }
-        else {
-            int numPreviousKmerPairs = 0;
-            for (int i=0; i<=lastIndex; ++i) {
-                if (graph.lookupReadKmerPair(kmers.get(i), kmers.get(i+d))) {
-                    if (++numPreviousKmerPairs >= numPairsRequired) {
-                        if (start < 0) {
-                            start = i-numPairsRequired+1;
-                        }
-                        
-                        end = i+d;
-                    }
-                }
-                else {
-                    if (start >= 0 && i >= end-interlockDistance) {
-                        segments.add(new int[]{start,end+1});
-
-                        start = -1;
-                        end = -1;
-                    }
-                    
-                    numPreviousKmerPairs = 0;
-                }
-            }
-            
-            if (start >= 0) {
-                segments.add(new int[]{start,end+1});
-            }
-        }
-        
-        return segments;
+        return new PairedKmerSupport(kmers, graph, false).getSegments(numPairsRequired);
     }
     
     public static ArrayDeque<int[]> breakWithFragPairedKmers(ArrayList<Kmer> kmers, BloomFilterDeBruijnGraph graph, int numPairsRequired) {
-        int interlockDistance = 0;
-        
-        ArrayDeque<int[]> segments = new ArrayDeque<>();
-        
-        int d = graph.getFragPairedKmerDistance();
-        int lastIndex = kmers.size() - 1 - d;
-        
-        int start = -1;
-        int end = -1;
-        
-        if (numPairsRequired == 1) {
-            for (int i=0; i<=lastIndex; ++i) {
-                if (graph.lookupFragmentKmerPair(kmers.get(i), kmers.get(i+d))) {
-                    if (start < 0) {
-                        start = i;
-                    }
-
-                    end = i+d;
-                }
-                else if (start >= 0 && i >= end-interlockDistance) {
-                    segments.add(new int[]{start, end+1});
-
-                    start = -1;
-                    end = -1;
-                }
-            }
-
-            if (start >= 0) {
-                segments.add(new int[]{start, end+1});
-            }
-        }
-        else {
-            int numPreviousKmerPairs = 0;
-            for (int i=0; i<=lastIndex; ++i) {
-                if (graph.lookupFragmentKmerPair(kmers.get(i), kmers.get(i+d))) {
-                    if (++numPreviousKmerPairs >= numPairsRequired) {
-                        if (start < 0) {
-                            start = i-numPairsRequired+1;
-                        }
-                        
-                        end = i+d;
-                    }
-                }
-                else {
-                    if (start >= 0 && i >= end-interlockDistance) {
-                        segments.add(new int[]{start, end+1});
-
-                        start = -1;
-                        end = -1;
-                    }
-                    
-                    numPreviousKmerPairs = 0;
-                }
-            }
-            
-            if (start >= 0) {
-                segments.add(new int[]{start, end+1});
-            }
-        }
-        
-        return segments;
+        return new PairedKmerSupport(kmers, graph, true).getSegments(numPairsRequired);
     }
     
     public static ArrayDeque<int[]> breakWithFragPairedKmers(ArrayList<Kmer> kmers, BloomFilterDeBruijnGraph graph) {
-        int interlockDistance = 0;
-        
-        ArrayDeque<int[]> segments = new ArrayDeque<>();
-        
-        int d = graph.getFragPairedKmerDistance();
-        int lastIndex = kmers.size() - 1 - d;
-        
-        int start = -1;
-        int end = -1;
-        
-        for (int i=0; i<=lastIndex; ++i) {
-            if (graph.lookupFragmentKmerPair(kmers.get(i), kmers.get(i+d))) {
-                if (start < 0) {
-                    start = i;
-                }
-                
-                end = i+d;
-            }
-            else if (start >= 0 && i >= end-interlockDistance) {
-                segments.add(new int[]{start, end+1});
-                
-                start = -1;
-                end = -1;
-            }
-        }
-        
-        if (start >= 0) {
-            segments.add(new int[]{start, end+1});
-        }
-        
-        return segments;
+        return new PairedKmerSupport(kmers, graph, true).getSegments(1);
     }
     
 //    public static String correctErrors(String seq, BloomFilterDeBruijnGraph graph, int lookahead, int errorsAllowed) {
@@ -4635,20 +4563,20 @@ public final class GraphUtils {
             return path.get(pathLen/2);
         }
                 
-        ArrayDeque<Float> window = new ArrayDeque<>();
+        float[] windowCounts = new float[windowSize];
         for (int i=0; i<windowSize; ++i) {
-            window.addFirst(path.get(i).count);
+            windowCounts[i] = path.get(i).count;
         }
+        FloatRollingWindow window = new FloatRollingWindow(windowCounts);
         
         int start = 0;
         int end = windowSize;
-        float maxCov = getMedian(window);
+        float maxCov = window.getMedian();
         
         float cov;
         for (int i=windowSize; i<pathLen; ++i) {
-            window.removeLast();
-            window.addFirst(path.get(i).count);
-            cov = getMedian(window);
+            window.roll(path.get(i).count);
+            cov = window.getMedian();
             if (cov > maxCov) {
                 maxCov = cov;
                 end = i+1;
@@ -4959,11 +4887,104 @@ public final class GraphUtils {
                                                     int maxIndelLen,
                                                     float minPercentIdentity,
                                                     float minKmerCov) {
+        return overlapAndConnect(leftKmers, rightKmers, graph, bound, lookahead, minOverlap, maxCovGradient,
+                                    maxTipLen, maxIndelLen, minPercentIdentity, minKmerCov, 0);
+    }
+    
+    public static ArrayList<Kmer> overlapAndConnect(ArrayList<Kmer> leftKmers, 
+                                                    ArrayList<Kmer> rightKmers, 
+                                                    BloomFilterDeBruijnGraph graph,
+                                                    int bound, 
+                                                    int lookahead,
+                                                    int minOverlap,
+                                                    float maxCovGradient,
+                                                    int maxTipLen,
+                                                    int maxIndelLen,
+                                                    float minPercentIdentity,
+                                                    float minKmerCov,
+                                                    int pathSearchLimit) {
+        return overlapAndConnect(leftKmers, rightKmers, graph, bound, lookahead, minOverlap, maxCovGradient,
+                                    maxTipLen, maxIndelLen, minPercentIdentity, minKmerCov, pathSearchLimit, null);
+    }
+    
+    public static ArrayList<Kmer> overlapAndConnect(ArrayList<Kmer> leftKmers, 
+                                                    ArrayList<Kmer> rightKmers, 
+                                                    BloomFilterDeBruijnGraph graph,
+                                                    int bound, 
+                                                    int lookahead,
+                                                    int minOverlap,
+                                                    float maxCovGradient,
+                                                    int maxTipLen,
+                                                    int maxIndelLen,
+                                                    float minPercentIdentity,
+                                                    float minKmerCov,
+                                                    int pathSearchLimit,
+                                                    ConnectionCache cache) {
+        return overlapAndConnect(leftKmers, rightKmers, graph, bound, lookahead, minOverlap, maxCovGradient,
+                                    maxTipLen, maxIndelLen, minPercentIdentity, minKmerCov, pathSearchLimit, cache, null);
+    }
+    
+    /**
+     * @param buffers   working space of the path search, or null to allocate it for this call
+     */
+    public static ArrayList<Kmer> overlapAndConnect(ArrayList<Kmer> leftKmers, 
+                                                    ArrayList<Kmer> rightKmers, 
+                                                    BloomFilterDeBruijnGraph graph,
+                                                    int bound, 
+                                                    int lookahead,
+                                                    int minOverlap,
+                                                    float maxCovGradient,
+                                                    int maxTipLen,
+                                                    int maxIndelLen,
+                                                    float minPercentIdentity,
+                                                    float minKmerCov,
+                                                    int pathSearchLimit,
+                                                    ConnectionCache cache,
+                                                    PathSearchBuffers buffers) {
 
         // 1. Attempt simple overlap
         ArrayList<Kmer> fragmentKmers = overlap(leftKmers, rightKmers, graph, minOverlap, minKmerCov);
         
-        if (fragmentKmers == null) {
+        if (fragmentKmers == null && pathSearchLimit > 0) {
+            // 2. Best-first search for the max coverage path between mates
+            Kmer leftEnd = leftKmers.get(leftKmers.size()-1);
+            Kmer rightStart = rightKmers.get(0);
+            ArrayDeque<Kmer> path = null;
+            
+            ConnectionCache.Result cached = cache == null ? null : cache.get(leftEnd.getHash(), rightStart.getHash(), bound);
+            
+            if (cached == null) {
+                if (buffers == null || buffers.maxNumVisits != pathSearchLimit) {
+                    buffers = new PathSearchBuffers(pathSearchLimit);
+                }
+                path = getBestFirstMaxCoveragePath(graph, leftEnd, rightStart, bound, minKmerCov, buffers);
+                
+                if (cache != null) {
+                    String bases = null;
+                    if (path != null) {
+                        int kMinus1 = graph.getK() - 1;
+                        StringBuilder sb = new StringBuilder(path.size());
+                        for (Kmer kmer : path) {
+                            sb.append((char) kmer.bytes[kMinus1]);
+                        }
+                        bases = sb.toString();
+                    }
+                    cache.put(leftEnd.getHash(), rightStart.getHash(), bound, bases);
+                }
+            }
+            else if (cached.hasPath) {
+                ArrayList<Kmer> kmers = graph.getKmers(leftEnd.toString() + cached.path);
+                path = new ArrayDeque<>(kmers.subList(1, kmers.size()));
+            }
+            
+            if (path != null) {
+                fragmentKmers = new ArrayList<>(leftKmers.size() + path.size() + rightKmers.size());
+                fragmentKmers.addAll(leftKmers);
+                fragmentKmers.addAll(path);
+                fragmentKmers.addAll(rightKmers);
+            }
+        }
+        else if (fragmentKmers == null) {
 
             fragmentKmers = join(graph, leftKmers, rightKmers, bound, lookahead, maxCovGradient,
                                     maxTipLen, maxIndelLen, minPercentIdentity, minKmerCov);
@@ -6721,6 +6742,7 @@ public final class GraphUtils {
     public static ArrayDeque<Kmer> naiveExtendRight(Kmer kmer, BloomFilterDeBruijnGraph graph, int maxTipLength, int bound, float minKmerCov) {        
         int k = graph.getK();
         int numHash = graph.getMaxNumHash();
+        UnitigIndex unitigs = graph.getUnitigIndex();
         
         ArrayDeque<Kmer> result = new ArrayDeque<>();
         int extensionLength = 0;
@@ -6729,6 +6751,22 @@ public final class GraphUtils {
         kmer.getSuccessors(k, numHash, graph, neighbors, minKmerCov);
         Kmer best = kmer;
         while (!neighbors.isEmpty()) {
+            if (unitigs != null) {
+                /** jump to the end of the unitig; there are no branches within */
+                int numJumped = unitigs.extendRight(best, graph, bound + 1 - extensionLength, minKmerCov, result);
+                if (numJumped > 0) {
+                    extensionLength += numJumped;
+                    if (extensionLength > bound) {
+                        break;
+                    }
+                    
+                    best = result.peekLast();
+                    neighbors.clear();
+                    best.getSuccessors(k, numHash, graph, neighbors, minKmerCov);
+                    continue;
+                }
+            }
+            
             /** look for back branches*/
             for (Kmer s : best.getLeftVariants(k, numHash, graph)) {
                 if (s.hasDepthLeft(k, numHash, graph, maxTipLength)) {
@@ -6818,6 +6856,72 @@ public final class GraphUtils {
         return result;
     }
     
+    /**
+     * Find the unitig containing `seed`, ie. the maximal path in which every
+     * k-mer except the last has one successor and every k-mer except the first
+     * has one predecessor.
+     * @param seed
+     * @param graph
+     * @return k-mers of the unitig, from first to last
+     */
+    public static ArrayList<Kmer> getUnitig(Kmer seed, BloomFilterDeBruijnGraph graph) {
+        int k = graph.getK();
+        int numHash = graph.getMaxNumHash();
+        
+        ArrayDeque<Kmer> neighbors = new ArrayDeque<>(4);
+        
+        /** walk left to the first k-mer */
+        Kmer first = seed;
+        while (true) {
+            neighbors.clear();
+            first.getPredecessors(k, numHash, graph, neighbors, 1);
+            if (neighbors.size() != 1) {
+                break;
+            }
+            
+            Kmer p = neighbors.pop();
+            if (p.equals(seed)) {
+                // cycle
+                break;
+            }
+            
+            p.getSuccessors(k, numHash, graph, neighbors, 1);
+            if (neighbors.size() != 1) {
+                break;
+            }
+            
+            first = p;
+        }
+        
+        /** walk right to the last k-mer */
+        ArrayList<Kmer> unitig = new ArrayList<>();
+        unitig.add(first);
+        Kmer last = first;
+        while (true) {
+            neighbors.clear();
+            last.getSuccessors(k, numHash, graph, neighbors, 1);
+            if (neighbors.size() != 1) {
+                break;
+            }
+            
+            Kmer n = neighbors.pop();
+            if (n.equals(first)) {
+                // cycle
+                break;
+            }
+            
+            n.getPredecessors(k, numHash, graph, neighbors, 1);
+            if (neighbors.size() != 1) {
+                break;
+            }
+            
+            unitig.add(n);
+            last = n;
+        }
+        
+        return unitig;
+    }
+    
     public static ArrayList<Kmer> naiveExtend(ArrayList<Kmer> kmers, BloomFilterDeBruijnGraph graph, int maxTipLength, float minKmerCov) {
         HashSet<Kmer> usedKmers = new HashSet<>(kmers);
         
@@ -6900,6 +7004,7 @@ public final class GraphUtils {
     public static ArrayDeque<Kmer> naiveExtendLeft(Kmer kmer, BloomFilterDeBruijnGraph graph, int maxTipLength, int bound, float minKmerCov) {        
         int k = graph.getK();
         int numHash = graph.getMaxNumHash();
+        UnitigIndex unitigs = graph.getUnitigIndex();
         
         ArrayDeque<Kmer> result = new ArrayDeque<>();
         int extensionLength = 0;
@@ -6908,6 +7013,22 @@ public final class GraphUtils {
         kmer.getPredecessors(k, numHash, graph, neighbors, minKmerCov);
         Kmer best = kmer;
         while (!neighbors.isEmpty()) {
+            if (unitigs != null) {
+                /** jump to the start of the unitig; there are no branches within */
+                int numJumped = unitigs.extendLeft(best, graph, bound + 1 - extensionLength, minKmerCov, result);
+                if (numJumped > 0) {
+                    extensionLength += numJumped;
+                    if (extensionLength > bound) {
+                        break;
+                    }
+                    
+                    best = result.peekLast();
+                    neighbors.clear();
+                    best.getPredecessors(k, numHash, graph, neighbors, minKmerCov);
+                    continue;
+                }
+            }
+            
             /** look for back branches*/
             for (Kmer s : best.getRightVariants(k, numHash, graph)) {
                 if (s.hasDepthRight(k, numHash, graph, maxTipLength)) {
@@ -7535,21 +7656,35 @@ public final class GraphUtils {
     }
     
     public static boolean isBranchFree(ArrayList<Kmer> seqKmers, BloomFilterDeBruijnGraph graph, int maxTipLength) {
+        return isBranchFree(new ScreeningFeatures(seqKmers, graph, null), graph, maxTipLength);
+    }
+    
+    public static boolean isBranchFree(ScreeningFeatures features, BloomFilterDeBruijnGraph graph, int maxTipLength) {
+        ArrayList<Kmer> seqKmers = features.getKmers();
         int k = graph.getK();
         int numHash = graph.getMaxNumHash();
+        int numKmers = seqKmers.size();
         
-        for (Kmer kmer : seqKmers) {
-            for (Kmer var : kmer.getRightVariants(k, numHash, graph)) {
-//                if (hasDepthRight(var, graph, maxTipLength)) {
-                if (var.hasDepthRight(k, numHash, graph, maxTipLength)) {
-                    return false;
+        for (int i=0; i<numKmers; ++i) {
+            Kmer kmer = seqKmers.get(i);
+            
+            // right variants are the other successors of the previous k-mer
+            if (i == 0 || !features.isNonBranching(i-1)) {
+                for (Kmer var : kmer.getRightVariants(k, numHash, graph)) {
+//                    if (hasDepthRight(var, graph, maxTipLength)) {
+                    if (var.hasDepthRight(k, numHash, graph, maxTipLength)) {
+                        return false;
+                    }
                 }
             }
             
-            for (Kmer var : kmer.getLeftVariants(k, numHash, graph)) {
-//                if (hasDepthLeft(var, graph, maxTipLength)) {
-                if (var.hasDepthLeft(k, numHash, graph, maxTipLength)) {
-                    return false;
+            // left variants are the other predecessors of the next k-mer
+            if (i == numKmers-1 || !features.isNonBranching(i+1)) {
+                for (Kmer var : kmer.getLeftVariants(k, numHash, graph)) {
+//                    if (hasDepthLeft(var, graph, maxTipLength)) {
+                    if (var.hasDepthLeft(k, numHash, graph, maxTipLength)) {
+                        return false;
+                    }
                 }
             }
         }
@@ -7558,22 +7693,27 @@ public final class GraphUtils {
     }
     
     public static boolean isChimera(ArrayList<Kmer> seqKmers, BloomFilterDeBruijnGraph graph, BloomFilter assembledKmers, int lookahead) {
+        return isChimera(new ScreeningFeatures(seqKmers, graph, assembledKmers), graph, lookahead);
+    }
+    
+    public static boolean isChimera(ScreeningFeatures features, BloomFilterDeBruijnGraph graph, int lookahead) {
+        ArrayList<Kmer> seqKmers = features.getKmers();
+        BloomFilter assembledKmers = features.getAssembledKmersBloomFilter();
         int k = graph.getK();   
         int numKmers = seqKmers.size();
         int maxGap = 2*k;
         
-        if (assembledKmers.lookup(seqKmers.get(0).getHash()) &&
-                assembledKmers.lookup(seqKmers.get(numKmers-1).getHash())) {
+        if (features.isAssembled(0) && features.isAssembled(numKmers-1)) {
             
             int i = 1;
             for (; i < numKmers-1; ++i) {
-                if (!assembledKmers.lookup(seqKmers.get(i).getHash())) {
+                if (!features.isAssembled(i)) {
                     Kmer left = seqKmers.get(i-1);
                     
                     // check to see if this is a small gap
                     int t=i+1;
                     for (; t <numKmers-1; ++t) {
-                        if (assembledKmers.lookup(seqKmers.get(t).getHash())) {
+                        if (features.isAssembled(t)) {
                             break;
                         }
                     }
@@ -7599,13 +7739,13 @@ public final class GraphUtils {
             
             int j = numKmers-2;
             for (; j > i; --j) {
-                if (!assembledKmers.lookup(seqKmers.get(j).getHash())) {
+                if (!features.isAssembled(j)) {
                     Kmer right = seqKmers.get(j+1);
                     
                     // check to see if this is a small gap
                     int t=j-1;
                     for (; t > i; --t) {
-                        if (assembledKmers.lookup(seqKmers.get(t).getHash())) {
+                        if (features.isAssembled(t)) {
                             break;
                         }
                     }
@@ -8419,21 +8559,27 @@ public final class GraphUtils {
     }
     
     public static boolean isBluntEndArtifact(ArrayList<Kmer> seqKmers, BloomFilterDeBruijnGraph graph, BloomFilter assembledKmers, int maxDepth) {
+        return isBluntEndArtifact(new ScreeningFeatures(seqKmers, graph, assembledKmers), graph, maxDepth);
+    }
+    
+    public static boolean isBluntEndArtifact(ScreeningFeatures features, BloomFilterDeBruijnGraph graph, int maxDepth) {
         if (maxDepth <= 0) {
             return false;
         }
         
+        ArrayList<Kmer> seqKmers = features.getKmers();
+        BloomFilter assembledKmers = features.getAssembledKmersBloomFilter();
         int numKmers = seqKmers.size();
         int d = graph.getReadPairedKmerDistance();
         
         float leftEdgeCov = getMinimumKmerCoverage(seqKmers, 0, Math.min(maxDepth, numKmers));
         float rightEdgeCov = getMinimumKmerCoverage(seqKmers, Math.max(0, numKmers-maxDepth), numKmers);
         
-        if (assembledKmers.lookup(seqKmers.get(0).getHash()) &&
-                (!assembledKmers.lookup(seqKmers.get(numKmers-1).getHash()) || leftEdgeCov > rightEdgeCov)) {
+        if (features.isAssembled(0) &&
+                (!features.isAssembled(numKmers-1) || leftEdgeCov > rightEdgeCov)) {
             int i = 1;
             for (; i < numKmers; ++i) {
-                if (!assembledKmers.lookup(seqKmers.get(i).getHash())) {
+                if (!features.isAssembled(i)) {
                     break;
                 }
             }
@@ -8448,11 +8594,11 @@ public final class GraphUtils {
                 return true;
             }
         }
-        else if (assembledKmers.lookup(seqKmers.get(numKmers-1).getHash()) &&
-                (!assembledKmers.lookup(seqKmers.get(0).getHash()) || leftEdgeCov < rightEdgeCov)) {
+        else if (features.isAssembled(numKmers-1) &&
+                (!features.isAssembled(0) || leftEdgeCov < rightEdgeCov)) {
             int j = numKmers-2;
             for (; j >= 0; --j) {
-                if (!assembledKmers.lookup(seqKmers.get(j).getHash())) {
+                if (!features.isAssembled(j)) {
                     break;
                 }
             }
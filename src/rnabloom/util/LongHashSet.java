@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-capacity, thread-safe open-addressing hash set of primitive longs.
+ *
+ * @author Ka Ming Nip
+ */
+public class LongHashSet {
+    private static final long EMPTY = 0;
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final int maxSize;
+    private final AtomicInteger size = new AtomicInteger(0);
+    private volatile boolean hasEmptyKey = false;
+
+    public LongHashSet(long expectedSize) {
+        int capacity = Integer.highestOneBit((int) Math.max(16, Math.min(expectedSize * 2, 1 << 30)) - 1) << 1;
+        this.table = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        this.maxSize = capacity / 4 * 3;
+    }
+
+    private static int getSlot(long key) {
+        key ^= (key >>> 33);
+        key *= 0xff51afd7ed558ccdL;
+        key ^= (key >>> 33);
+        return (int) key;
+    }
+
+    /**
+     * @param key
+     * @return true if `key` was not already in the set
+     * @throws RuntimeException if the set is full
+     */
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            boolean added = !hasEmptyKey;
+            hasEmptyKey = true;
+            return added;
+        }
+
+        int i = getSlot(key) & mask;
+        while (true) {
+            long v = table.get(i);
+
+            if (v == key) {
+                return false;
+            }
+
+            if (v == EMPTY) {
+                if (size.get() >= maxSize) {
+                    throw new RuntimeException("Hash set is full (" + maxSize + " entries)");
+                }
+
+                if (table.compareAndSet(i, EMPTY, key)) {
+                    size.incrementAndGet();
+                    return true;
+                }
+
+                // slot was taken by another thread; check it again
+                continue;
+            }
+
+            i = (i + 1) & mask;
+        }
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY) {
+            return hasEmptyKey;
+        }
+
+        int i = getSlot(key) & mask;
+        long v;
+        while ((v = table.get(i)) != EMPTY) {
+            if (v == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+
+        return false;
+    }
+
+    public int size() {
+        return size.get() + (hasEmptyKey ? 1 : 0);
+    }
+
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false)))) {
+            out.writeInt(size());
+
+            if (hasEmptyKey) {
+                out.writeLong(EMPTY);
+            }
+
+            int capacity = table.length();
+            for (int i=0; i<capacity; ++i) {
+                long v = table.get(i);
+                if (v != EMPTY) {
+                    out.writeLong(v);
+                }
+            }
+        }
+    }
+
+    public static LongHashSet load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int n = in.readInt();
+            LongHashSet set = new LongHashSet(n);
+            for (int i=0; i<n; ++i) {
+                set.add(in.readLong());
+            }
+            return set;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded blocking queue that records how long producers and consumers
+ * were blocked and how full the queue was whenever an item was taken.
+ *
+ * @author Ka Ming Nip
+ */
+public class MeteredBlockingQueue<E> {
+    private final ArrayBlockingQueue<E> queue;
+    private final int capacity;
+    private final AtomicLong putStallNanos = new AtomicLong(0);
+    private final AtomicLong takeStallNanos = new AtomicLong(0);
+    private final AtomicLong occupancySum = new AtomicLong(0);
+    private final AtomicLong numTaken = new AtomicLong(0);
+
+    public MeteredBlockingQueue(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+    }
+
+    public void put(E e) throws InterruptedException {
+        if (!queue.offer(e)) {
+            long start = System.nanoTime();
+            queue.put(e);
+            putStallNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    public E take() throws InterruptedException {
+        occupancySum.addAndGet(queue.size());
+        numTaken.incrementAndGet();
+
+        E e = queue.poll();
+        if (e == null) {
+            long start = System.nanoTime();
+            e = queue.take();
+            takeStallNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        return e;
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return total time in seconds that producers were blocked on a full queue
+     */
+    public float getPutStallSeconds() {
+        return putStallNanos.get() / 1e9f;
+    }
+
+    /**
+     * @return total time in seconds that consumers were blocked on an empty queue
+     */
+    public float getTakeStallSeconds() {
+        return takeStallNanos.get() / 1e9f;
+    }
+
+    /**
+     * @return mean number of queued items seen by consumers
+     */
+    public float getMeanOccupancy() {
+        long n = numTaken.get();
+        return n > 0 ? (float) occupancySum.get() / n : 0;
+    }
+}
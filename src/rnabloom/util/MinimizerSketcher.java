@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.util;
+
+import java.util.Arrays;
+import rnabloom.bloom.hash.NTHashIterator;
+import rnabloom.graph.BloomFilterDeBruijnGraph;
+import static rnabloom.util.SeqUtils.compressHomoPolymers;
+
+/**
+ * Extracts the minimizers of a sequence in linear time.
+ * Window minima are tracked with a monotone deque backed by primitive ring
+ * buffers, and minimizers are written to a reusable buffer that is sorted and
+ * deduplicated at the end. An instance is not thread-safe.
+ *
+ * @author Ka Ming Nip
+ */
+public class MinimizerSketcher {
+    private long[] dequeHashVals = new long[0];
+    private int[] dequePositions = new int[0];
+    private int dequeHead = 0;
+    private int dequeSize = 0;
+
+    private long[] buffer = new long[256];
+    private int bufferSize = 0;
+
+    private void resetDeque(int windowSize) {
+        if (dequeHashVals.length < windowSize) {
+            dequeHashVals = new long[windowSize];
+            dequePositions = new int[windowSize];
+        }
+        dequeHead = 0;
+        dequeSize = 0;
+    }
+
+    private void push(long h, int pos, int windowSize) {
+        int capacity = dequeHashVals.length;
+
+        // expire the front if it has left the window
+        if (dequeSize > 0 && dequePositions[dequeHead] <= pos - windowSize) {
+            if (++dequeHead == capacity) {
+                dequeHead = 0;
+            }
+            --dequeSize;
+        }
+
+        // drop larger values from the back; they can never be a window minimum
+        while (dequeSize > 0) {
+            int back = dequeHead + dequeSize - 1;
+            if (back >= capacity) {
+                back -= capacity;
+            }
+
+            if (dequeHashVals[back] <= h) {
+                break;
+            }
+            --dequeSize;
+        }
+
+        int tail = dequeHead + dequeSize;
+        if (tail >= capacity) {
+            tail -= capacity;
+        }
+        dequeHashVals[tail] = h;
+        dequePositions[tail] = pos;
+        ++dequeSize;
+    }
+
+    private void emit(long h) {
+        if (bufferSize > 0 && buffer[bufferSize-1] == h) {
+            // same minimizer as the previous window
+            return;
+        }
+
+        if (bufferSize == buffer.length) {
+            buffer = Arrays.copyOf(buffer, bufferSize * 2);
+        }
+
+        buffer[bufferSize++] = h;
+    }
+
+    private void sortAndDeduplicate() {
+        if (bufferSize > 1) {
+            Arrays.sort(buffer, 0, bufferSize);
+
+            int n = 1;
+            for (int i=1; i<bufferSize; ++i) {
+                long h = buffer[i];
+                if (h != buffer[n-1]) {
+                    buffer[n++] = h;
+                }
+            }
+            bufferSize = n;
+        }
+    }
+
+    /**
+     * @param seq
+     * @param itr
+     * @param windowSize
+     * @return number of distinct minimizers, available in ascending order from `getBuffer`
+     */
+    public int sketch(CharSequence seq, NTHashIterator itr, int windowSize) {
+        bufferSize = 0;
+
+        if (!itr.start(seq)) {
+            return 0;
+        }
+
+        resetDeque(windowSize);
+        long[] hVals = itr.hVals;
+        int pos = 0;
+
+        while (itr.hasNext()) {
+            itr.next();
+            push(hVals[0], pos, windowSize);
+
+            if (pos >= windowSize - 1) {
+                emit(dequeHashVals[dequeHead]);
+            }
+
+            ++pos;
+        }
+
+        if (pos < windowSize && dequeSize > 0) {
+            // sequence is shorter than one window
+            emit(dequeHashVals[dequeHead]);
+        }
+
+        sortAndDeduplicate();
+
+        return bufferSize;
+    }
+
+    /**
+     * Same as `sketch(seq, itr, windowSize)` but k-mers with coverage below
+     * `minCoverage` are not eligible to be minimizers.
+     * @param seq
+     * @param itr
+     * @param windowSize
+     * @param graph
+     * @param minCoverage
+     * @return number of distinct minimizers, available in ascending order from `getBuffer`
+     */
+    public int sketch(CharSequence seq, NTHashIterator itr, int windowSize, BloomFilterDeBruijnGraph graph, float minCoverage) {
+        bufferSize = 0;
+
+        if (!itr.start(seq)) {
+            return 0;
+        }
+
+        resetDeque(windowSize);
+        long[] hVals = itr.hVals;
+        int pos = 0;
+
+        while (itr.hasNext()) {
+            itr.next();
+
+            if (graph.getCount(hVals) >= minCoverage) {
+                push(hVals[0], pos, windowSize);
+            }
+            else if (dequeSize > 0 && dequePositions[dequeHead] <= pos - windowSize) {
+                // expire the front
+                if (++dequeHead == dequeHashVals.length) {
+                    dequeHead = 0;
+                }
+                --dequeSize;
+            }
+
+            if (pos >= windowSize - 1 && dequeSize > 0) {
+                emit(dequeHashVals[dequeHead]);
+            }
+
+            ++pos;
+        }
+
+        if (pos < windowSize && dequeSize > 0) {
+            // sequence is shorter than one window
+            emit(dequeHashVals[dequeHead]);
+        }
+
+        sortAndDeduplicate();
+
+        return bufferSize;
+    }
+
+    public int sketchWithCompressedHomoPolymers(String seq, NTHashIterator itr, int windowSize) {
+        return sketch(compressHomoPolymers(seq), itr, windowSize);
+    }
+
+    /**
+     * @return the internal buffer; only the first `sketch(...)` values are valid
+     */
+    public long[] getBuffer() {
+        return buffer;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(buffer, bufferSize);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2018 BC Cancer Genome Sciences Centre
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rnabloom.util;
+
+import java.util.Arrays;
+
+/**
+ * An append-only store of reads packed in 2 bits per base in a single arena.
+ * Non-ACGT bases are stored as `A`. Reads may be retrieved concurrently once
+ * all reads have been added.
+ *
+ * @author Ka Ming Nip
+ */
+public class PackedReadStore {
+    private static final char[] BASES = new char[]{'A', 'C', 'G', 'T'};
+
+    private long[] arena = new long[1024];
+    private long[] starts = new long[1024];
+    private int[] lengths = new int[1024];
+    private long numBases = 0;
+    private int numReads = 0;
+
+    /**
+     * @param seq
+     * @return id of the read
+     */
+    public int add(CharSequence seq) {
+        int len = seq.length();
+
+        if (numReads == lengths.length) {
+            starts = Arrays.copyOf(starts, numReads * 2);
+            lengths = Arrays.copyOf(lengths, numReads * 2);
+        }
+
+        long numWords = (numBases + len + 31) / 32;
+        if (numWords > arena.length) {
+            arena = Arrays.copyOf(arena, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(numWords, arena.length * 2L)));
+        }
+
+        long pos = numBases;
+        for (int i=0; i<len; ++i) {
+            int code;
+            switch (seq.charAt(i)) {
+                case 'C': case 'c':
+                    code = 1;
+                    break;
+                case 'G': case 'g':
+                    code = 2;
+                    break;
+                case 'T': case 't': case 'U': case 'u':
+                    code = 3;
+                    break;
+                default:
+                    code = 0;
+            }
+            arena[(int) (pos >>> 5)] |= ((long) code) << ((pos & 31) << 1);
+            ++pos;
+        }
+
+        starts[numReads] = numBases;
+        lengths[numReads] = len;
+        numBases = pos;
+
+        return numReads++;
+    }
+
+    public String get(int id) {
+        long pos = starts[id];
+        int len = lengths[id];
+        char[] chars = new char[len];
+        for (int i=0; i<len; ++i, ++pos) {
+            chars[i] = BASES[(int) (arena[(int) (pos >>> 5)] >>> ((pos & 31) << 1)) & 3];
+        }
+        return new String(chars);
+    }
+
+    public int getLength(int id) {
+        return lengths[id];
+    }
+
+    public int size() {
+        return numReads;
+    }
+
+    public long getNumBases() {
+        return numBases;
+    }
+}